@@ -14,7 +14,6 @@ import static net.sourceforge.pmd.util.fxdesigner.util.AuxLanguageRegistry.plain
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,12 +24,15 @@ import java.util.stream.Collectors;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.reactfx.Subscription;
+import org.reactfx.value.Val;
 import org.reactfx.value.Var;
 
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.util.fxdesigner.app.AbstractController;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
+import net.sourceforge.pmd.util.fxdesigner.app.services.HighlightingScheduler;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingRecord;
 import net.sourceforge.pmd.util.fxdesigner.popups.EventLogController;
 import net.sourceforge.pmd.util.fxdesigner.popups.SimplePopups;
 import net.sourceforge.pmd.util.fxdesigner.util.AuxLanguageRegistry;
@@ -99,6 +101,14 @@ public class MainDesignerController extends AbstractController {
     @FXML
     private Tab metricResultsTab;
 
+    /* Status bar */
+    @FXML
+    private Label parseTimingLabel;
+    @FXML
+    private Tooltip parseTimingTooltip;
+    @FXML
+    private Label highlightingQueueLabel;
+
 
     /* Children */
     @FXML
@@ -158,9 +168,26 @@ public class MainDesignerController extends AbstractController {
         );
 
         initLanguageChoicebox();
+        initStatusBar();
 
     }
 
+    private void initStatusBar() {
+        Val<ParseTimingRecord> latestTiming = getService(DesignerRoot.PARSE_TIMING).latestRecordProperty();
+        parseTimingLabel.textProperty().bind(latestTiming.map(ParseTimingRecord::getSummary).orElseConst(""));
+        parseTimingTooltip.textProperty().bind(
+            latestTiming.map(r -> r.getSourceLength() + " chars, " + r.getTotalTime().toMillis() + " ms in total")
+                        .orElseConst("Timings of the last parse of the editor")
+        );
+
+        HighlightingScheduler scheduler = getService(DesignerRoot.HIGHLIGHTING_SCHEDULER);
+        if (isDeveloperMode() && scheduler != null) {
+            highlightingQueueLabel.setVisible(true);
+            highlightingQueueLabel.setManaged(true);
+            highlightingQueueLabel.textProperty().bind(scheduler.queueDepthProperty().map(n -> "Highlighting queue: " + n));
+        }
+    }
+
     private void initLanguageChoicebox() {
         languageChoicebox.getItems().addAll(getSupportedLanguages().sorted().collect(Collectors.toList()));
         languageChoicebox.setConverter(DesignerUtil.stringConverter(Language::getName, AuxLanguageRegistry::findLanguageByNameOrDefault));
@@ -217,7 +244,7 @@ public class MainDesignerController extends AbstractController {
     private void loadSourceFromFile(File file) {
         if (file != null) {
             try {
-                String source = ResourceUtil.readToString(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8);
+                String source = ResourceUtil.readFile(file.toPath(), StandardCharsets.UTF_8);
                 sourceEditorController.setText(source);
                 LanguageVersion guess = getLanguageVersionFromExtension(file.getName());
                 if (guess == null) {
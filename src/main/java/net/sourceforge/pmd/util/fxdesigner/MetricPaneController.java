@@ -4,10 +4,12 @@
 
 package net.sourceforge.pmd.util.fxdesigner;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.reactfx.EventSource;
 import org.reactfx.EventStreams;
 import org.reactfx.value.Val;
 import org.reactfx.value.Var;
@@ -19,6 +21,7 @@ import net.sourceforge.pmd.lang.metrics.MetricOptions;
 import net.sourceforge.pmd.util.fxdesigner.app.AbstractController;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
 import net.sourceforge.pmd.util.fxdesigner.app.NodeSelectionSource;
+import net.sourceforge.pmd.util.fxdesigner.app.services.LargeFileModeService;
 import net.sourceforge.pmd.util.fxdesigner.model.MetricResult;
 import net.sourceforge.pmd.util.fxdesigner.util.DataHolder;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.ToolbarTitledPane;
@@ -37,6 +40,11 @@ import javafx.scene.control.ListView;
  */
 public class MetricPaneController extends AbstractController implements NodeSelectionSource {
 
+    /**
+     * In large-file mode, metrics are computed once the selection has been
+     * stable for that long, since metrics of big nodes are expensive.
+     */
+    private static final Duration LARGE_FILE_METRICS_DELAY = Duration.ofMillis(400);
 
     @FXML
     private ToolbarTitledPane metricsTitledPane;
@@ -44,6 +52,8 @@ public class MetricPaneController extends AbstractController implements NodeSele
     private ListView<MetricResult<?>> metricResultsListView;
 
     private final Var<Integer> numAvailableMetrics = Var.newSimpleVar(0);
+    private final EventSource<Node> deferredFocusNodes = new EventSource<>();
+    private Node latestFocusNode;
 
 
     public MetricPaneController(DesignerRoot designerRoot) {
@@ -57,6 +67,10 @@ public class MetricPaneController extends AbstractController implements NodeSele
 
         metricsTitledPane.titleProperty().bind(numAvailableMetrics().map(i -> "Metrics\t(" + (i == 0 ? "none" : i) + " available)"));
 
+        deferredFocusNodes.successionEnds(LARGE_FILE_METRICS_DELAY)
+                          // the selection may have been handled without delay since
+                          .filter(node -> node == latestFocusNode)
+                          .subscribe(this::displayMetrics);
     }
 
 
@@ -68,7 +82,18 @@ public class MetricPaneController extends AbstractController implements NodeSele
      */
     @Override
     public void setFocusNode(final Node node, DataHolder options) {
+        latestFocusNode = node;
+
+        LargeFileModeService largeFileMode = getService(DesignerRoot.LARGE_FILE_MODE);
+        if (node != null && largeFileMode != null && largeFileMode.isActive()) {
+            deferredFocusNodes.push(node);
+        } else {
+            displayMetrics(node);
+        }
+    }
+
 
+    private void displayMetrics(Node node) {
         ObservableList<MetricResult<?>> metrics = evaluateAllMetrics(node);
         metricResultsListView.setItems(metrics);
 
@@ -67,9 +67,14 @@ public class RuleEditorsController extends AbstractController {
 
         selectedEditorProperty().changes()
                                 .subscribe(ch -> {
-                                    // only the results of the currently opened tab are displayed
+                                    // only the results of the currently opened tab are displayed,
+                                    // the others are suspended until they're selected again
+                                    if (ch.getOldValue() != null) {
+                                        ch.getOldValue().setActive(false);
+                                    }
                                     currentlySelectedController.clear();
                                     if (ch.getNewValue() != null) {
+                                        ch.getNewValue().setActive(true);
                                         currentlySelectedController.add(ch.getNewValue());
                                     }
                                 });
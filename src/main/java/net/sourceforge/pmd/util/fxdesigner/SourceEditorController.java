@@ -33,6 +33,11 @@ import net.sourceforge.pmd.util.fxdesigner.app.AbstractController;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
 import net.sourceforge.pmd.util.fxdesigner.app.services.ASTManager;
 import net.sourceforge.pmd.util.fxdesigner.app.services.ASTManagerImpl;
+import net.sourceforge.pmd.util.fxdesigner.app.services.LargeFileModeService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.NodeKindIndexService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingRecord;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingRecord.Phase;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.TestCreatorService;
 import net.sourceforge.pmd.util.fxdesigner.model.ObservableRuleBuilder;
 import net.sourceforge.pmd.util.fxdesigner.model.testing.LiveTestCase;
@@ -51,18 +56,28 @@ import net.sourceforge.pmd.util.fxdesigner.util.controls.AstTreeView;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.DragAndDropUtil;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.DynamicWidthChoicebox;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.NodeEditionCodeArea;
+import net.sourceforge.pmd.util.fxdesigner.util.controls.NodeKindStatsView;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.NodeParentageCrumbBar;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.PopOverWrapper;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.PropertyMapView;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.ToolbarTitledPane;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.ViolationCollectionView;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.scene.Parent;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuButton;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.AnchorPane;
 
 
@@ -85,7 +100,10 @@ public class SourceEditorController extends AbstractController {
     /** Contains the loaded *user-defined* test case. */
     private final SuspendableVar<LiveTestCase> currentlyOpenTestCase = Var.suspendable(Var.newSimpleVar(null));
     private static final Duration AST_REFRESH_DELAY = Duration.ofMillis(100);
+    /** Parse budgets offered in the menu, in seconds. */
+    private static final long[] PARSE_BUDGET_CHOICES = {1, 2, 5, 10, 30, 60};
     private final ASTManager astManager;
+    private final LargeFileModeService largeFileMode = new LargeFileModeService();
     private final Var<List<ClasspathEntry>> auxclasspath = Var.newSimpleVar(emptyList());
 
     @FXML
@@ -121,6 +139,14 @@ public class SourceEditorController extends AbstractController {
     private Var<LanguageVersion> languageVersionUIProperty;
     @FXML
     private Button exportTreeButton;
+    @FXML
+    private Button nodeStatsButton;
+    @FXML
+    private ToggleButton largeFileModeToggle;
+    @FXML
+    private Tooltip largeFileModeTooltip;
+    @FXML
+    private Label unhighlightedResultsLabel;
 
 
     public SourceEditorController(DesignerRoot designerRoot) {
@@ -128,6 +154,7 @@ public class SourceEditorController extends AbstractController {
         this.astManager = new ASTManagerImpl(designerRoot);
 
         designerRoot.registerService(DesignerRoot.AST_MANAGER, astManager);
+        designerRoot.registerService(DesignerRoot.LARGE_FILE_MODE, largeFileMode);
         designerRoot.registerService(DesignerRoot.TREE_EXPORT_WIZARD, new SoftReferenceCache<>(() -> new TreeExportWizardController(designerRoot)));
 
         violationsPopover = new PopOverWrapper<>(this::rebindPopover);
@@ -185,10 +212,14 @@ public class SourceEditorController extends AbstractController {
 
         ((ASTManagerImpl) astManager).classpathProperty().bind(auxclasspath);
 
+        initLargeFileMode();
+
         // default text, will be overwritten by settings restore
         setText(getDefaultText());
 
         searchButton.setOnAction(e -> astTreeView.focusSearchField());
+        nodeStatsButton.setOnAction(e -> showNodeKindStats());
+        nodeStatsButton.disableProperty().bind(astManager.compilationUnitProperty().map(it -> false).orElseConst(true));
         exportTreeButton.setOnAction(
             e -> getService(DesignerRoot.TREE_EXPORT_WIZARD).apply(x -> x.showYourself(x.bindToTree(getService(DesignerRoot.AST_MANAGER))))
         );
@@ -259,7 +290,7 @@ public class SourceEditorController extends AbstractController {
         nodeEditionCodeArea.moveCaret(0, 0);
 
         editorTitledPane.errorTypeProperty().setValue("Syntax error");
-        initTreeView(astManager, astTreeView, editorTitledPane.errorMessageProperty());
+        initTreeView(astManager, astTreeView, editorTitledPane.errorMessageProperty(), getService(DesignerRoot.PARSE_TIMING), largeFileMode);
 
         getDesignerRoot().registerService(DesignerRoot.RICH_TEXT_MAPPER, nodeEditionCodeArea);
 
@@ -275,6 +306,58 @@ public class SourceEditorController extends AbstractController {
 
     }
 
+    private void initLargeFileMode() {
+        astManager.sourceCodeProperty()
+                  .values()
+                  .subscribe(code -> largeFileMode.setSourceLength(code == null ? 0 : code.length()));
+
+        nodeEditionCodeArea.largeFileModeProperty().bind(largeFileMode.activeProperty());
+
+        // when the highlighting follows the viewport, tell how many matches aren't shown
+        Val<Integer> unhighlighted = nodeEditionCodeArea.unhighlightedResultCountProperty();
+        unhighlightedResultsLabel.textProperty().bind(unhighlighted.map(n -> n + " more matches"));
+        unhighlightedResultsLabel.visibleProperty().bind(unhighlighted.map(n -> n > 0));
+        unhighlightedResultsLabel.managedProperty().bind(unhighlightedResultsLabel.visibleProperty());
+
+        largeFileMode.activeProperty().values().subscribe(largeFileModeToggle::setSelected);
+        // clicking forces the mode, the thresholds decide again when the override is reset
+        largeFileModeToggle.setOnAction(e -> largeFileMode.setUserOverride(largeFileModeToggle.isSelected()));
+
+        MenuItem resetItem = new MenuItem("Decide automatically");
+        resetItem.setOnAction(e -> largeFileMode.setUserOverride(null));
+        resetItem.disableProperty().bind(largeFileMode.userOverrideProperty().map(it -> false).orElseConst(true));
+        largeFileModeToggle.setContextMenu(new ContextMenu(resetItem, parseBudgetMenu()));
+
+        largeFileModeTooltip.textProperty().bind(
+            Val.create(largeFileMode::getDescription, largeFileMode.activeProperty(), largeFileMode.userOverrideProperty())
+        );
+
+        // a forced change rebuilds the tree, threshold changes are followed by a new tree anyway
+        largeFileMode.userOverrideProperty()
+                     .changes()
+                     .subscribe(change -> {
+                         Node root = astManager.compilationUnitProperty().getValue();
+                         if (root != null) {
+                             astTreeView.setAstRoot(root, largeFileMode.isActive());
+                         }
+                     });
+    }
+
+    /** Menu to choose the parse budget of the editor, which the test cases follow. */
+    private Menu parseBudgetMenu() {
+        Menu menu = new Menu("Parse budget");
+        ToggleGroup group = new ToggleGroup();
+        for (long seconds : PARSE_BUDGET_CHOICES) {
+            Duration budget = Duration.ofSeconds(seconds);
+            RadioMenuItem item = new RadioMenuItem(seconds + " s");
+            item.setToggleGroup(group);
+            item.setOnAction(e -> astManager.parseBudgetProperty().setValue(budget));
+            astManager.parseBudgetProperty().values().subscribe(current -> item.setSelected(budget.equals(current)));
+            menu.getItems().add(item);
+        }
+        return menu;
+    }
+
     private void toggleTestEditMode(boolean isTestCaseMode) {
         if (isTestCaseMode) {
             AnchorPane pane = emptyPane();
@@ -408,6 +491,42 @@ public class SourceEditorController extends AbstractController {
     }
 
 
+    /** Length of the source in chars above which large-file mode is triggered. */
+    @PersistentProperty
+    public int getLargeFileCharThreshold() {
+        return largeFileMode.charThresholdProperty().getValue();
+    }
+
+
+    public void setLargeFileCharThreshold(int threshold) {
+        largeFileMode.charThresholdProperty().setValue(threshold);
+    }
+
+
+    /** Number of nodes of the tree above which large-file mode is triggered. */
+    @PersistentProperty
+    public int getLargeFileNodeThreshold() {
+        return largeFileMode.nodeThresholdProperty().getValue();
+    }
+
+
+    public void setLargeFileNodeThreshold(int threshold) {
+        largeFileMode.nodeThresholdProperty().setValue(threshold);
+    }
+
+
+    /** Maximum duration of a parse, in milliseconds. */
+    @PersistentProperty
+    public long getParseBudgetMillis() {
+        return astManager.parseBudgetProperty().getValue().toMillis();
+    }
+
+
+    public void setParseBudgetMillis(long millis) {
+        astManager.parseBudgetProperty().setValue(millis > 0 ? Duration.ofMillis(millis) : ASTManagerImpl.DEFAULT_PARSE_BUDGET);
+    }
+
+
     @Override
     public List<? extends SettingsOwner> getChildrenSettingsNodes() {
         return Collections.singletonList(defaultTestCase);
@@ -424,7 +543,9 @@ public class SourceEditorController extends AbstractController {
      */
     private static void initTreeView(ASTManager manager,
                                      AstTreeView treeView,
-                                     Var<String> errorMessageProperty) {
+                                     Var<String> errorMessageProperty,
+                                     ParseTimingService timingService,
+                                     LargeFileModeService largeFileMode) {
 
         manager.sourceCodeProperty()
                .values()
@@ -446,8 +567,36 @@ public class SourceEditorController extends AbstractController {
                .filter(Objects::nonNull)
                .subscribe(node -> {
                    errorMessageProperty.setValue("");
-                   treeView.setAstRoot(node);
+                   largeFileMode.setNodeCount(countNodes(node, timingService));
+                   // the tree may be displayed later, once it's diffed with the previous one
+                   treeView.setAstRoot(node, largeFileMode.isActive())
+                           .thenAccept(buildTime -> {
+                               if (timingService != null) {
+                                   timingService.recordPhase(node, Phase.TREE_BUILD, buildTime);
+                               }
+                           });
                });
     }
 
+
+    /** Shows the number of nodes of each type, once the current tree is indexed. */
+    private void showNodeKindStats() {
+        Node root = astManager.compilationUnitProperty().getValue();
+        NodeKindIndexService indexer = getService(DesignerRoot.NODE_KIND_INDEX);
+        if (root == null || indexer == null) {
+            return;
+        }
+        indexer.index(root).thenAccept(index -> Platform.runLater(() -> NodeKindStatsView.makePopOver(index).show(nodeStatsButton)));
+    }
+
+
+    private static long countNodes(Node root, ParseTimingService timingService) {
+        ParseTimingRecord record = timingService == null ? null : timingService.latestRecordProperty().getValue();
+        if (record != null && record.getRoot() == root) {
+            // already counted by the AST manager
+            return record.getNodeCount();
+        }
+        return root.descendantsOrSelf().count();
+    }
+
 }
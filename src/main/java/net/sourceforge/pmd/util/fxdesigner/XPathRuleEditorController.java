@@ -8,42 +8,65 @@ package net.sourceforge.pmd.util.fxdesigner;
 import static net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil.sanitizeExceptionMessage;
 
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
+import org.controlsfx.control.PopOver;
 import org.controlsfx.validation.ValidationSupport;
 import org.controlsfx.validation.Validator;
 import org.kordamp.ikonli.javafx.FontIcon;
 import org.reactfx.EventStreams;
 import org.reactfx.Subscription;
 import org.reactfx.SuspendableEventStream;
-import org.reactfx.collection.LiveArrayList;
+import org.reactfx.collection.LiveList;
 import org.reactfx.util.FxTimer;
 import org.reactfx.value.Val;
 import org.reactfx.value.Var;
 
 import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 import net.sourceforge.pmd.util.fxdesigner.app.AbstractController;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
 import net.sourceforge.pmd.util.fxdesigner.app.NodeSelectionSource;
 import net.sourceforge.pmd.util.fxdesigner.app.XPathUpdateSubscriber;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ASTManager;
 import net.sourceforge.pmd.util.fxdesigner.app.services.CloseableService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.LogEntry.Category;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseRequest;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSession;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseWorkerPool;
+import net.sourceforge.pmd.util.fxdesigner.app.services.RichTextMapper;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathEvaluationPool;
+import net.sourceforge.pmd.util.fxdesigner.model.CorpusRun;
 import net.sourceforge.pmd.util.fxdesigner.model.ObservableRuleBuilder;
 import net.sourceforge.pmd.util.fxdesigner.model.ObservableXPathRuleBuilder;
+import net.sourceforge.pmd.util.fxdesigner.model.PropertyDescriptorSpec;
 import net.sourceforge.pmd.util.fxdesigner.model.VersionedXPathQuery;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathBenchmark;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathComparison;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathProfiler;
 import net.sourceforge.pmd.util.fxdesigner.model.testing.LiveTestCase;
+import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
 import net.sourceforge.pmd.util.fxdesigner.popups.ExportXPathWizardController;
 import net.sourceforge.pmd.util.fxdesigner.util.DataHolder;
 import net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil;
@@ -54,13 +77,19 @@ import net.sourceforge.pmd.util.fxdesigner.util.autocomplete.XPathAutocompletePr
 import net.sourceforge.pmd.util.fxdesigner.util.autocomplete.XPathCompletionSource;
 import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlightingCodeArea;
 import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.XPathSyntaxHighlighter;
+import net.sourceforge.pmd.util.fxdesigner.util.controls.CorpusRunView;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.HelpfulPlaceholder;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.PopOverWrapper;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.PropertyCollectionView;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.TitleOwner;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.ToolbarTitledPane;
+import net.sourceforge.pmd.util.fxdesigner.util.controls.XPathBenchmarkView;
+import net.sourceforge.pmd.util.fxdesigner.util.controls.XPathComparisonView;
+import net.sourceforge.pmd.util.fxdesigner.util.controls.XPathProfileView;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.XpathViolationListCell;
 
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -97,12 +126,18 @@ public final class XPathRuleEditorController extends AbstractController implemen
 
     private static final String NO_MATCH_MESSAGE = "No match in text";
     private static final Duration XPATH_REFRESH_DELAY = Duration.ofMillis(100);
+    /** Delay after which the results of a background tab are refreshed. */
+    private static final Duration BACKGROUND_REFRESH_DELAY = Duration.ofSeconds(2);
     private static final Pattern SAXON_MISSING_PROPERTY_EXTRACTOR = Pattern.compile("Undeclared variable in XPath expression: \\$(\\w+)");
     private final SoftReferenceCache<ExportXPathWizardController> exportWizard;
     private final ObservableXPathRuleBuilder ruleBuilder;
     private final Var<ObservableList<Node>> myXpathResults = Var.newSimpleVar(null);
     private final Var<List<Node>> currentResults = Var.newSimpleVar(Collections.emptyList());
+    /** Results whose wrappers are the items of the list view, which is updated after {@link #currentResults}. */
+    private List<Node> displayedResults = Collections.emptyList();
     private final PopOverWrapper<ObservableXPathRuleBuilder> propertiesPopover;
+    /** Whether this editor is the focused tab, only that one is evaluated eagerly. Set when the tab is selected. */
+    private final Var<Boolean> isActive = Var.newSimpleVar(false);
 
     @FXML
     public TestCollectionController testCollectionController;
@@ -111,6 +146,14 @@ public final class XPathRuleEditorController extends AbstractController implemen
     @FXML
     private Button exportXpathToRuleButton;
     @FXML
+    private Button profileXPathButton;
+    @FXML
+    private Button benchmarkXPathButton;
+    @FXML
+    private Button compareXPathButton;
+    @FXML
+    private Button corpusRunButton;
+    @FXML
     private Button showPropertiesButton;
     @FXML
     private MenuButton xpathVersionMenuButton;
@@ -123,6 +166,12 @@ public final class XPathRuleEditorController extends AbstractController implemen
     // ui property
     private Var<XPathVersion> xpathVersionUIProperty = Var.newSimpleVar(XPathVersion.DEFAULT);
     private SuspendableEventStream<TextAwareNodeWrapper> selectionEvents;
+    private PopOver profilePopover;
+    private PopOver benchmarkPopover;
+    private PopOver comparisonPopover;
+    /** Kept when hidden, so that a running corpus run can be followed again. */
+    private CorpusRunView corpusRunView;
+    private PopOver corpusRunPopover;
 
     public XPathRuleEditorController(DesignerRoot root) {
         this(root, new ObservableXPathRuleBuilder());
@@ -147,6 +196,7 @@ public final class XPathRuleEditorController extends AbstractController implemen
     @Override
     protected void beforeParentInit() {
 
+        xpathExpressionArea.setHighlightingScheduler(getService(DesignerRoot.HIGHLIGHTING_SCHEDULER));
         initGenerateXPathFromStackTrace();
         initialiseVersionSelection();
 
@@ -155,6 +205,15 @@ public final class XPathRuleEditorController extends AbstractController implemen
         xpathResultListView.setCellFactory(v -> new XpathViolationListCell(getDesignerRoot()));
 
         exportXpathToRuleButton.setOnAction(e -> showExportXPathToRuleWizard());
+        profileXPathButton.setOnAction(e -> profileXPath());
+        benchmarkXPathButton.setOnAction(e -> benchmarkXPath());
+        compareXPathButton.setOnAction(e -> showComparison());
+        corpusRunButton.setOnAction(e -> showCorpusRun());
+        benchmarkXPathButton.addEventHandler(MouseEvent.MOUSE_CLICKED, e -> {
+            if (e.getButton() == MouseButton.SECONDARY) {
+                showBenchmarkHistory();
+            }
+        });
 
         // this is the source of xpath results
         getRuleBuilder().modificationsTicks().successionEnds(XPATH_REFRESH_DELAY)
@@ -188,13 +247,11 @@ public final class XPathRuleEditorController extends AbstractController implemen
 
     @Override
     public void setFocusNode(Node node, DataHolder options) {
-        Optional<TextAwareNodeWrapper> firstResult = xpathResultListView.getItems().stream()
-                                                                        .filter(wrapper -> wrapper.getNode().equals(node))
-                                                                        .findFirst();
+        // look up the raw results, so that the wrappers aren't all created
+        int index = displayedResults.indexOf(node);
 
-        // with Java 9, Optional#ifPresentOrElse can be used
-        if (firstResult.isPresent()) {
-            selectionEvents.suspendWhile(() -> xpathResultListView.getSelectionModel().select(firstResult.get()));
+        if (index >= 0) {
+            selectionEvents.suspendWhile(() -> xpathResultListView.getSelectionModel().select(index));
         } else {
             xpathResultListView.getSelectionModel().clearSelection();
         }
@@ -298,6 +355,206 @@ public final class XPathRuleEditorController extends AbstractController implemen
     }
 
 
+    /**
+     * Profiles the current expression on the current compilation unit
+     * in the background, and shows the result next to the expression.
+     */
+    private void profileXPath() {
+        runInBackground(profileXPathButton, (compil, version, expression, values, properties) ->
+            XPathProfiler.profile(compil, version, expression, values, properties, XPathProfiler.DEFAULT_RUNS), profile -> {
+                if (profilePopover != null) {
+                    profilePopover.hide();
+                }
+                profilePopover = XPathProfileView.makePopOver(profile, xpathExpressionArea);
+                profilePopover.show(profileXPathButton);
+            });
+    }
+
+
+    /**
+     * Benchmarks the current expression on the current compilation unit
+     * in the background, and adds the result to the history of the rule.
+     */
+    private void benchmarkXPath() {
+        runInBackground(benchmarkXPathButton, (compil, version, expression, values, properties) ->
+            XPathBenchmark.run(compil, version, expression, values, properties,
+                               XPathBenchmark.DEFAULT_WARMUP_ITERATIONS, XPathBenchmark.DEFAULT_ITERATIONS), bench -> {
+                getRuleBuilder().addBenchmark(bench);
+                showBenchmarkHistory();
+            });
+    }
+
+
+    private void showBenchmarkHistory() {
+        if (benchmarkPopover == null) {
+            benchmarkPopover = XPathBenchmarkView.makePopOver(getRuleBuilder().getBenchmarkHistory());
+        }
+        if (!benchmarkPopover.isShowing()) {
+            benchmarkPopover.show(benchmarkXPathButton);
+        }
+    }
+
+
+    private void showComparison() {
+        if (comparisonPopover != null && comparisonPopover.isShowing()) {
+            return;
+        }
+        XPathComparisonView view = new XPathComparisonView(getRuleBuilder().getXpathExpression());
+        view.setOnCompare(this::compareXPath);
+        comparisonPopover = XPathComparisonView.makePopOver(view);
+        comparisonPopover.show(compareXPathButton);
+    }
+
+
+    /**
+     * Compares the two expressions of the view on the current compilation
+     * unit, and optionally on the test cases of the rule. The test cases
+     * are parsed on the parse worker pool, then both queries are evaluated
+     * on the measurement thread of the XPath evaluation pool.
+     */
+    private void compareXPath(XPathComparisonView view) {
+        ASTManager astManager = getService(DesignerRoot.AST_MANAGER);
+        Node compil = astManager.compilationUnitProperty().getOrElse(null);
+        XPathEvaluationPool pool = getService(DesignerRoot.XPATH_EVALUATION_POOL);
+        if (compil == null || pool == null) {
+            return;
+        }
+
+        // snapshot the parameters on the FX thread
+        String expressionA = view.getExpressionA();
+        String expressionB = view.getExpressionB();
+        XPathVersion version = getRuleBuilder().getXpathVersion();
+        List<PropertyDescriptorSpec> properties = getRuleBuilder().getRuleProperties().stream().map(PropertyDescriptorSpec::deepCopy).collect(Collectors.toList());
+        Map<String, String> values = new HashMap<>(astManager.ruleProperties().getOrElse(Collections.emptyMap()));
+
+        List<CompletableFuture<XPathComparison.Subject>> subjects = new ArrayList<>();
+        subjects.add(CompletableFuture.completedFuture(new XPathComparison.Subject("Current source", compil)));
+
+        ParseWorkerPool parsePool = getService(DesignerRoot.PARSE_WORKER_POOL);
+        // the trees of the test cases are kept until the comparison is done
+        List<ParseSession> retained = Collections.synchronizedList(new ArrayList<>());
+        if (view.isIncludeTestCases() && parsePool != null) {
+            int i = 0;
+            for (LiveTestCase testCase : getRuleBuilder().getTestCollection().getStash()) {
+                i++;
+                if (testCase.isIgnored()) {
+                    continue;
+                }
+                String label = "Test " + i + ": " + StringUtils.abbreviate(StringUtils.defaultString(testCase.getDescription()), 30);
+                LanguageVersion langVersion = testCase.getLanguageVersion() != null ? testCase.getLanguageVersion()
+                                                                                     : astManager.languageVersionProperty().getValue();
+                ParseRequest request = new ParseRequest(testCase.getSource(), langVersion, astManager.classpathProperty().getValue(), astManager.parseBudgetProperty().getValue());
+                // a test case that doesn't parse is left out of the comparison
+                subjects.add(parsePool.submit(request)
+                                      .thenApply(parsed -> {
+                                          if (!parsed.getSession().retain()) {
+                                              return null;
+                                          }
+                                          retained.add(parsed.getSession());
+                                          return new XPathComparison.Subject(label, parsed.getRoot());
+                                      })
+                                      .exceptionally(e -> null));
+            }
+        }
+
+        view.setRunning(true);
+        CompletableFuture.allOf(subjects.toArray(new CompletableFuture[0]))
+                         .thenCompose(done -> pool.submitMeasurement(() -> {
+                             List<XPathComparison.Subject> parsed = subjects.stream().map(CompletableFuture::join).filter(Objects::nonNull).collect(Collectors.toList());
+                             return XPathComparison.compare(parsed, version, expressionA, expressionB, values, properties, XPathComparison.DEFAULT_RUNS);
+                         }))
+                         .whenComplete((result, error) -> Platform.runLater(() -> {
+                             retained.forEach(ParseSession::release);
+                             view.setRunning(false);
+                             if (error != null) {
+                                 logUserException(error, Category.XPATH_EVALUATION_EXCEPTION);
+                             } else {
+                                 view.showResult(result);
+                             }
+                         }));
+    }
+
+
+    private void showCorpusRun() {
+        if (corpusRunView == null) {
+            corpusRunView = new CorpusRunView(getRuleBuilder().getLanguage().getName());
+            corpusRunView.setOnRun(this::runOnCorpus);
+            corpusRunPopover = CorpusRunView.makePopOver(corpusRunView);
+        }
+        if (!corpusRunPopover.isShowing()) {
+            corpusRunPopover.show(corpusRunButton);
+        }
+    }
+
+
+    /**
+     * Evaluates the current expression on every file of the directory of
+     * the view. The files are parsed with the language version of the
+     * current source if it has the language of the rule, and with the
+     * classpath of the current source.
+     */
+    private void runOnCorpus(CorpusRunView view) {
+        String expression = getRuleBuilder().getXpathExpression();
+        if (StringUtils.isBlank(expression)) {
+            return;
+        }
+        Path directory;
+        try {
+            directory = Paths.get(view.getDirectory());
+        } catch (InvalidPathException e) {
+            view.finished(e);
+            return;
+        }
+
+        // snapshot the parameters on the FX thread
+        ASTManager astManager = getService(DesignerRoot.AST_MANAGER);
+        LanguageVersion current = astManager.languageVersionProperty().getValue();
+        Language language = getRuleBuilder().getLanguage();
+        LanguageVersion version = current != null && current.getLanguage().equals(language) ? current : language.getDefaultVersion();
+        List<ClasspathEntry> classpath = astManager.classpathProperty().getOrElse(Collections.emptyList());
+        Duration parseBudget = astManager.parseBudgetProperty().getValue();
+
+        XPathVersion xpathVersion = getRuleBuilder().getXpathVersion();
+        List<PropertyDescriptorSpec> properties = getRuleBuilder().getRuleProperties().stream().map(PropertyDescriptorSpec::deepCopy).collect(Collectors.toList());
+        Map<String, String> values = new HashMap<>(astManager.ruleProperties().getOrElse(Collections.emptyMap()));
+
+        // the session is set up on the run's pool, since that stats the classpath
+        view.runStarted(CorpusRun.start(directory, version, classpath, getService(DesignerRoot.PARSE_SESSIONS), parseBudget,
+                                        xpathVersion, expression, values, properties, view));
+    }
+
+
+    /**
+     * Runs a measurement task on the current query and compilation unit,
+     * on the measurement thread of the XPath evaluation pool. The button is
+     * disabled while the task runs.
+     */
+    private <T> void runInBackground(Button trigger, XPathTask<T> task, Consumer<T> onSuccess) {
+        Node compil = getService(DesignerRoot.AST_MANAGER).compilationUnitProperty().getOrElse(null);
+        XPathEvaluationPool pool = getService(DesignerRoot.XPATH_EVALUATION_POOL);
+        String expression = getRuleBuilder().getXpathExpression();
+        if (compil == null || pool == null || StringUtils.isBlank(expression)) {
+            return;
+        }
+
+        // snapshot the parameters on the FX thread
+        XPathVersion version = getRuleBuilder().getXpathVersion();
+        List<PropertyDescriptorSpec> properties = getRuleBuilder().getRuleProperties().stream().map(PropertyDescriptorSpec::deepCopy).collect(Collectors.toList());
+        Map<String, String> values = new HashMap<>(getService(DesignerRoot.AST_MANAGER).ruleProperties().getOrElse(Collections.emptyMap()));
+
+        trigger.setDisable(true);
+        pool.submitMeasurement(() -> task.run(compil, version, expression, values, properties))
+            .whenComplete((result, error) -> Platform.runLater(() -> {
+                trigger.setDisable(false);
+                if (error != null) {
+                    logUserException(error, Category.XPATH_EVALUATION_EXCEPTION);
+                } else {
+                    onSuccess.accept(result);
+                }
+            }));
+    }
+
+
     /**
      * Binds the properties of the panel to the export wizard.
      *
@@ -342,6 +599,21 @@ public final class XPathRuleEditorController extends AbstractController implemen
         return currentResults;
     }
 
+
+    /**
+     * Sets whether this editor is displayed. Inactive editors only evaluate
+     * their query in the background, once the sources stop changing.
+     */
+    public void setActive(boolean active) {
+        isActive.setValue(active);
+    }
+
+
+    @Override
+    public Val<String> titleSuffixProperty() {
+        return currentResults.map(List::size).map(n -> " (" + n + ")");
+    }
+
     public Var<ObservableList<Node>> xpathResultsProperty() {
         return myXpathResults;
     }
@@ -358,13 +630,26 @@ public final class XPathRuleEditorController extends AbstractController implemen
         xpathResultListView.setPlaceholder(emptyLabel);
 
         // we wait a bit to do that, so that the rich text is up to date
-        FxTimer.runLater(Duration.ofMillis(100), () -> xpathResultListView.setItems(results.stream().map(getDesignerRoot().getService(DesignerRoot.RICH_TEXT_MAPPER)::wrapNode).collect(Collectors.toCollection(LiveArrayList::new))));
+        FxTimer.runLater(Duration.ofMillis(100), () -> {
+            displayedResults = results;
+            xpathResultListView.setItems(wrapLazily(results));
+        });
 
         this.currentResults.setValue(results);
         // only show the error label here when it's an xpath error
         expressionTitledPane.errorMessageProperty().setValue(xpathError ? emptyResultsPlaceholder : "");
     }
 
+    /**
+     * Wraps the results on demand, as their cells are displayed. Result sets
+     * may be huge, eg for {@code //*}, but only the wrappers of the scrolled-to
+     * cells are ever created.
+     */
+    private ObservableList<TextAwareNodeWrapper> wrapLazily(List<Node> results) {
+        RichTextMapper mapper = getDesignerRoot().getService(DesignerRoot.RICH_TEXT_MAPPER);
+        return LiveList.map(FXCollections.observableList(results), mapper::wrapNode).memoize();
+    }
+
     private void addProperty(String name) {
         propertiesPopover.showOrFocus(pop -> pop.show(showPropertiesButton));
         propertiesPopover.getUserData().map(it -> (PropertyCollectionView) it).ifPresent(it -> it.addNewProperty(name));
@@ -402,6 +687,16 @@ public final class XPathRuleEditorController extends AbstractController implemen
             super(root);
         }
 
+        @Override
+        public Val<Boolean> activeProperty() {
+            return isActive;
+        }
+
+        @Override
+        public Duration backgroundRefreshDelay() {
+            return BACKGROUND_REFRESH_DELAY;
+        }
+
         @Override
         public void handleNoCompilationUnit() {
             updateResults(false, true, Collections.emptyList(), "Compilation unit is invalid");
@@ -426,4 +721,11 @@ public final class XPathRuleEditorController extends AbstractController implemen
             logUserException(e, Category.XPATH_EVALUATION_EXCEPTION);
         }
     }
+
+
+    @FunctionalInterface
+    private interface XPathTask<T> {
+
+        T run(Node compil, XPathVersion version, String expression, Map<String, String> values, List<PropertyDescriptorSpec> properties) throws Exception;
+    }
 }
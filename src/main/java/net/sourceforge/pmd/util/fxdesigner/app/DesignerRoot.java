@@ -12,12 +12,23 @@ import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.util.fxdesigner.app.NodeSelectionSource.NodeSelectionEvent;
 import net.sourceforge.pmd.util.fxdesigner.app.services.ASTManager;
 import net.sourceforge.pmd.util.fxdesigner.app.services.AppServiceDescriptor;
+import net.sourceforge.pmd.util.fxdesigner.app.services.AstCache;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ClasspathService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.CloseableService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.EventLogger;
 import net.sourceforge.pmd.util.fxdesigner.app.services.GlobalDiskManager;
+import net.sourceforge.pmd.util.fxdesigner.app.services.HighlightingScheduler;
+import net.sourceforge.pmd.util.fxdesigner.app.services.LargeFileModeService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.NodeKindIndexService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSessionService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseWorkerPool;
 import net.sourceforge.pmd.util.fxdesigner.app.services.PersistenceManager;
 import net.sourceforge.pmd.util.fxdesigner.app.services.RichTextMapper;
 import net.sourceforge.pmd.util.fxdesigner.app.services.TestCreatorService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathEvaluationPool;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathQueryCache;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathResultMemo;
 import net.sourceforge.pmd.util.fxdesigner.model.VersionedXPathQuery;
 import net.sourceforge.pmd.util.fxdesigner.model.export.TreeRendererRegistry;
 import net.sourceforge.pmd.util.fxdesigner.model.testing.LiveTestCase;
@@ -47,6 +58,27 @@ public interface DesignerRoot {
 
     AppServiceDescriptor<GlobalDiskManager> DISK_MANAGER = new AppServiceDescriptor<>(GlobalDiskManager.class);
 
+    /** Compilation units shared by all AST managers. */
+    AppServiceDescriptor<AstCache> AST_CACHE = new AppServiceDescriptor<>(AstCache.class);
+    /** Class loaders of the auxclasspaths, shared by all AST managers. */
+    AppServiceDescriptor<ClasspathService> CLASSPATH_SERVICE = new AppServiceDescriptor<>(ClasspathService.class);
+    /** Parse sessions of the recent language versions and classpaths, shared by all AST managers. */
+    AppServiceDescriptor<ParseSessionService> PARSE_SESSIONS = new AppServiceDescriptor<>(ParseSessionService.class);
+    /** Timings of the parses of the main editor. */
+    AppServiceDescriptor<ParseTimingService> PARSE_TIMING = new AppServiceDescriptor<>(ParseTimingService.class);
+    /** Parse workers shared by the secondary AST managers, eg those of test cases. */
+    AppServiceDescriptor<ParseWorkerPool> PARSE_WORKER_POOL = new AppServiceDescriptor<>(ParseWorkerPool.class);
+    /** Compiled XPath queries, shared by all rule editors and test cases. */
+    AppServiceDescriptor<XPathQueryCache> XPATH_QUERY_CACHE = new AppServiceDescriptor<>(XPathQueryCache.class);
+    /** Evaluates XPath queries off the JavaFX thread. */
+    AppServiceDescriptor<XPathEvaluationPool> XPATH_EVALUATION_POOL = new AppServiceDescriptor<>(XPathEvaluationPool.class);
+    /** Indices of the nodes of the latest compilation units by XPath name, built in the background. */
+    AppServiceDescriptor<NodeKindIndexService> NODE_KIND_INDEX = new AppServiceDescriptor<>(NodeKindIndexService.class);
+    /** Results of the latest XPath evaluations, reused when their inputs didn't change. */
+    AppServiceDescriptor<XPathResultMemo> XPATH_RESULT_MEMO = new AppServiceDescriptor<>(XPathResultMemo.class);
+    /** Computes the syntax highlighting of all code areas. */
+    AppServiceDescriptor<HighlightingScheduler> HIGHLIGHTING_SCHEDULER = new AppServiceDescriptor<>(HighlightingScheduler.class);
+
     // Those are local to one edit session
 
     /** Maps a node to its rich text representation. */
@@ -55,6 +87,8 @@ public interface DesignerRoot {
     AppServiceDescriptor<MessageChannel<NodeSelectionEvent>> NODE_SELECTION_CHANNEL = new AppServiceDescriptor<>(MessageChannel.class);
     /** AST manager of the current code. */
     AppServiceDescriptor<ASTManager> AST_MANAGER = new AppServiceDescriptor<>(ASTManager.class);
+    /** Whether the current code is large enough to degrade the editor. */
+    AppServiceDescriptor<LargeFileModeService> LARGE_FILE_MODE = new AppServiceDescriptor<>(LargeFileModeService.class);
 
     /** Requests to load a test case in the editor. */
     AppServiceDescriptor<MessageChannel<@Nullable LiveTestCase>> TEST_LOADER = new AppServiceDescriptor<>(MessageChannel.class);
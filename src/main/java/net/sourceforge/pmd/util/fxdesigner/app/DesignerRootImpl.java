@@ -11,13 +11,23 @@ import org.reactfx.value.Val;
 import org.reactfx.value.Var;
 
 import net.sourceforge.pmd.util.fxdesigner.app.services.AppServiceDescriptor;
+import net.sourceforge.pmd.util.fxdesigner.app.services.AstCache;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ClasspathService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.CloseableService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.EventLoggerImpl;
 import net.sourceforge.pmd.util.fxdesigner.app.services.GlobalDiskManagerImpl;
+import net.sourceforge.pmd.util.fxdesigner.app.services.HighlightingScheduler;
 import net.sourceforge.pmd.util.fxdesigner.app.services.LogEntry;
 import net.sourceforge.pmd.util.fxdesigner.app.services.LogEntry.Category;
+import net.sourceforge.pmd.util.fxdesigner.app.services.NodeKindIndexService;
 import net.sourceforge.pmd.util.fxdesigner.app.services.OnDiskPersistenceManager;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSessionService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseWorkerPool;
 import net.sourceforge.pmd.util.fxdesigner.app.services.TestCreatorService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathEvaluationPool;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathQueryCache;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathResultMemo;
 import net.sourceforge.pmd.util.fxdesigner.model.export.TreeRendererRegistry;
 
 import javafx.application.HostServices;
@@ -68,6 +78,18 @@ public final class DesignerRootImpl implements DesignerRoot {
         registerService(TEST_CREATOR, new TestCreatorService());
         registerService(TREE_RENDERER_REGISTRY, new TreeRendererRegistry(this));
         registerService(IS_NODE_BEING_DRAGGED, Var.newSimpleVar(false));
+        AstCache astCache = new AstCache();
+        registerService(AST_CACHE, astCache);
+        ClasspathService classpathService = new ClasspathService();
+        registerService(CLASSPATH_SERVICE, classpathService);
+        registerService(PARSE_SESSIONS, new ParseSessionService(classpathService));
+        registerService(PARSE_TIMING, new ParseTimingService());
+        registerService(PARSE_WORKER_POOL, new ParseWorkerPool(this));
+        registerService(XPATH_QUERY_CACHE, new XPathQueryCache());
+        registerService(XPATH_EVALUATION_POOL, new XPathEvaluationPool(this));
+        registerService(NODE_KIND_INDEX, new NodeKindIndexService());
+        registerService(XPATH_RESULT_MEMO, new XPathResultMemo(astCache));
+        registerService(HIGHLIGHTING_SCHEDULER, new HighlightingScheduler());
     }
 
 
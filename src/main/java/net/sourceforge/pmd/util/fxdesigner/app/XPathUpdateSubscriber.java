@@ -4,17 +4,30 @@
 
 package net.sourceforge.pmd.util.fxdesigner.app;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.reactfx.EventStream;
 import org.reactfx.EventStreams;
 import org.reactfx.Subscription;
+import org.reactfx.util.Try;
+import org.reactfx.value.Val;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.util.fxdesigner.app.services.ASTManager;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathEvaluationPool;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathResultMemo;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathResultMemo.Fingerprint;
+import net.sourceforge.pmd.util.fxdesigner.model.PropertyDescriptorSpec;
 import net.sourceforge.pmd.util.fxdesigner.model.VersionedXPathQuery;
 import net.sourceforge.pmd.util.fxdesigner.model.XPathEvaluationException;
 import net.sourceforge.pmd.util.fxdesigner.model.XPathEvaluator;
@@ -23,6 +36,13 @@ public abstract class XPathUpdateSubscriber implements ApplicationComponent {
 
     private final DesignerRoot root;
     private Subscription subscription = () -> {};
+    private CompletableFuture<List<Node>> pendingEvaluation;
+    /** Whether some ticks were ignored while inactive. */
+    private boolean dirty;
+    /** Inputs of the displayed or pending results, null if there are no results. */
+    private @Nullable Fingerprint currentFingerprint;
+    /** Displayed results, null if they're pending or if there was an error. */
+    private @Nullable List<Node> currentResults;
 
     public XPathUpdateSubscriber(DesignerRoot root) {
         this.root = root;
@@ -39,39 +59,167 @@ public abstract class XPathUpdateSubscriber implements ApplicationComponent {
             astManager.ruleProperties().values().withDefaultEvent(Collections.emptyMap())
         );
 
-        subscription = merged.subscribe(
-            tick -> {
-                Node compil = astManager.compilationUnitProperty().getOrElse(null);
-                VersionedXPathQuery query = service.latestMessage().getOrElse(null);
-                Map<String, String> props = astManager.ruleProperties().getOrElse(Collections.emptyMap());
+        Val<Boolean> active = activeProperty();
+        Duration backgroundDelay = backgroundRefreshDelay();
 
-                if (compil == null) {
-                    handleNoCompilationUnit();
-                    return;
-                }
-                if (query == null || StringUtils.isBlank(query.getExpression())) {
-                    handleNoXPath();
-                    return;
+        // refresh an inactive subscriber once the ticks have settled down,
+        // so that it doesn't compete with the active ones
+        EventStream<?> backgroundTicks =
+            backgroundDelay == null
+            ? EventStreams.never()
+            : merged.filter(tick -> !active.getValue())
+                    .successionEnds(backgroundDelay)
+                    .filter(tick -> dirty && !active.getValue());
+
+        EventStream<?> ticks = EventStreams.merge(
+            merged.filter(tick -> {
+                if (active.getValue()) {
+                    return true;
                 }
+                // don't evaluate now, but remember that the results are outdated
+                dirty = true;
+                return false;
+            }),
+            // evaluate once when activated, if something changed in the meantime
+            active.values().filter(it -> it && dirty),
+            backgroundTicks
+        );
 
+        subscription =
+            ticks.map(tick -> {
+                      Node compil = astManager.compilationUnitProperty().getOrElse(null);
+                      VersionedXPathQuery query = service.latestMessage().getOrElse(null);
+                      Map<String, String> props = astManager.ruleProperties().getOrElse(Collections.emptyMap());
 
-                try {
-                    List<Node> results = XPathEvaluator.evaluateQuery(compil,
-                                                                      query.getVersion(),
-                                                                      query.getExpression(),
-                                                                      props,
-                                                                      query.getDefinedProperties());
+                      dirty = false;
+                      XPathResultMemo memo = root.getService(DesignerRoot.XPATH_RESULT_MEMO);
+                      Fingerprint fingerprint = compil == null || query == null || StringUtils.isBlank(query.getExpression())
+                                                ? null
+                                                : XPathResultMemo.fingerprint(compil, query, props);
 
-                    handleXPathSuccess(results);
-                } catch (XPathEvaluationException e) {
-                    handleXPathError(e);
-                }
+                      if (fingerprint != null && fingerprint.equals(currentFingerprint)
+                          && (pendingEvaluation != null || currentResults != null)) {
+                          // The inputs didn't change, the handlers are still called again
+                          // because the tick may be relevant to them, eg a test case was edited
+                          if (memo != null) {
+                              memo.recordSkipped();
+                          }
+                          return pendingEvaluation != null ? pendingEvaluation : CompletableFuture.completedFuture(currentResults);
+                      }
+
+                      cancelPendingEvaluation();
+                      currentFingerprint = fingerprint;
+                      currentResults = null;
 
-            });
+                      if (compil == null) {
+                          handleNoCompilationUnit();
+                          return noEvaluation();
+                      }
+                      if (query == null || StringUtils.isBlank(query.getExpression())) {
+                          handleNoXPath();
+                          return noEvaluation();
+                      }
+
+                      List<Node> memoized = memo == null ? null : memo.get(fingerprint);
+                      if (memoized != null) {
+                          logInternalDebugInfo(() -> "Reusing memoized XPath results", memo::toString);
+                          return CompletableFuture.completedFuture(memoized);
+                      }
+
+                      pendingEvaluation = evaluate(compil, query, props);
+                      return pendingEvaluation;
+                  })
+                  .<List<Node>>mapToCompletionStage(it -> it)
+                  // the result of a superseded evaluation is dropped
+                  .awaitLatest()
+                  .subscribe(this::handleResult);
 
         return this::unsubscribe;
     }
 
+
+    /**
+     * Starts evaluating the query off the JavaFX thread. The parameters
+     * are snapshotted here, on the JavaFX thread.
+     */
+    private CompletableFuture<List<Node>> evaluate(Node compil, VersionedXPathQuery query, Map<String, String> props) {
+        VersionedXPathQuery snapshot = new VersionedXPathQuery(
+            query.getVersion(),
+            query.getExpression(),
+            query.getDefinedProperties().stream().map(PropertyDescriptorSpec::deepCopy).collect(Collectors.toList())
+        );
+        Map<String, String> propsSnapshot = new HashMap<>(props);
+
+        XPathResultMemo memo = root.getService(DesignerRoot.XPATH_RESULT_MEMO);
+        if (memo != null) {
+            memo.recordEvaluation();
+        }
+
+        XPathEvaluationPool pool = root.getService(DesignerRoot.XPATH_EVALUATION_POOL);
+        if (pool != null) {
+            return pool.submit(compil, snapshot, propsSnapshot);
+        }
+
+        // no pool, eg in tests
+        CompletableFuture<List<Node>> result = new CompletableFuture<>();
+        try {
+            result.complete(XPathEvaluator.evaluateQuery(compil,
+                                                         snapshot.getVersion(),
+                                                         snapshot.getExpression(),
+                                                         propsSnapshot,
+                                                         snapshot.getDefinedProperties(),
+                                                         root.getService(DesignerRoot.XPATH_QUERY_CACHE)));
+        } catch (XPathEvaluationException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+
+    /** Supersedes the pending evaluation, without a result. */
+    private static CompletableFuture<List<Node>> noEvaluation() {
+        CompletableFuture<List<Node>> none = new CompletableFuture<>();
+        none.cancel(false);
+        return none;
+    }
+
+
+    /** Called on the JavaFX thread. */
+    private void handleResult(Try<List<Node>> result) {
+        pendingEvaluation = null;
+        if (result.isSuccess()) {
+            XPathResultMemo memo = root.getService(DesignerRoot.XPATH_RESULT_MEMO);
+            if (memo != null && currentFingerprint != null) {
+                // this is the result of the latest evaluation, so it corresponds to the current inputs
+                memo.put(currentFingerprint, result.get());
+            }
+            currentResults = result.get();
+            handleXPathSuccess(result.get());
+            return;
+        }
+
+        Throwable failure = result.getFailure();
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof CancellationException) {
+            // superseded
+            return;
+        }
+        // the next tick with the same inputs evaluates again
+        currentFingerprint = null;
+        handleXPathError(failure instanceof Exception ? (Exception) failure : new XPathEvaluationException(failure));
+    }
+
+
+    private void cancelPendingEvaluation() {
+        if (pendingEvaluation != null) {
+            pendingEvaluation.cancel(true);
+            pendingEvaluation = null;
+        }
+    }
+
+
     /**
      * Additional refresh ticks. By default, the changes of
      * {@link ASTManager#compilationUnitProperty()}, of the local XPath
@@ -83,6 +231,30 @@ public abstract class XPathUpdateSubscriber implements ApplicationComponent {
     }
 
 
+    /**
+     * Whether the results of this subscriber are currently displayed.
+     * While this is false, refresh ticks don't trigger an evaluation,
+     * the subscriber only marks itself as outdated. It evaluates once
+     * when it becomes active again, if it is outdated. By default, the
+     * subscriber is always active. This is called once, in {@link #init(ASTManager)}.
+     */
+    public Val<Boolean> activeProperty() {
+        return Val.constant(true);
+    }
+
+
+    /**
+     * If non-null, an inactive subscriber still evaluates the query,
+     * once no refresh tick has arrived for this delay. This keeps the
+     * results of inactive subscribers roughly up to date, without
+     * competing with the active ones. By default, this is null and
+     * inactive subscribers are only refreshed when they become active.
+     */
+    public @Nullable Duration backgroundRefreshDelay() {
+        return null;
+    }
+
+
     @Override
     public DesignerRoot getDesignerRoot() {
         return root;
@@ -100,6 +272,9 @@ public abstract class XPathUpdateSubscriber implements ApplicationComponent {
     public abstract void handleXPathError(Exception e);
 
     public void unsubscribe() {
+        cancelPendingEvaluation();
+        currentFingerprint = null;
+        currentResults = null;
         subscription.unsubscribe();
         subscription = Subscription.EMPTY;
     }
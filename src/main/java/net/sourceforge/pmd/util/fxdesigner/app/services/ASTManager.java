@@ -4,6 +4,7 @@
 
 package net.sourceforge.pmd.util.fxdesigner.app.services;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -60,4 +61,11 @@ public interface ASTManager extends ApplicationComponent, SettingsOwner {
 
     Var<Map<String, String>> ruleProperties();
 
+
+    /**
+     * Maximum duration of a parse. A parse that takes longer is abandoned
+     * and the previous compilation unit is kept.
+     */
+    Var<Duration> parseBudgetProperty();
+
 }
@@ -8,40 +8,35 @@ import static java.util.Collections.emptyList;
 import static net.sourceforge.pmd.util.fxdesigner.util.reactfx.ReactfxUtil.latestValue;
 import static net.sourceforge.pmd.util.fxdesigner.util.reactfx.VetoableEventStream.vetoableNull;
 
-import java.io.File;
 import java.time.Duration;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
-import org.reactfx.util.Either;
+import org.reactfx.EventStream;
+import org.reactfx.Subscription;
+import org.reactfx.util.Try;
 import org.reactfx.value.SuspendableVar;
 import org.reactfx.value.Val;
 import org.reactfx.value.Var;
 
-import net.sourceforge.pmd.PMDConfiguration;
-import net.sourceforge.pmd.PmdAnalysis;
-import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageProcessor;
-import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
-import net.sourceforge.pmd.lang.LanguagePropertyBundle;
-import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
-import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
-import net.sourceforge.pmd.lang.rule.AbstractRule;
-import net.sourceforge.pmd.lang.rule.RuleSet;
-import net.sourceforge.pmd.reporting.Report;
-import net.sourceforge.pmd.reporting.RuleContext;
 import net.sourceforge.pmd.util.fxdesigner.SourceEditorController;
-import net.sourceforge.pmd.util.fxdesigner.app.ApplicationComponent;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
 import net.sourceforge.pmd.util.fxdesigner.app.services.LogEntry.Category;
 import net.sourceforge.pmd.util.fxdesigner.model.ParseAbortedException;
@@ -49,19 +44,61 @@ import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
 import net.sourceforge.pmd.util.fxdesigner.util.AuxLanguageRegistry;
 import net.sourceforge.pmd.util.log.PmdReporter;
 
+import javafx.application.Platform;
+
 
 /**
  * Manages a compilation unit for {@link SourceEditorController}.
  *
+ * <p>Parsing is performed asynchronously, either on a dedicated worker
+ * thread, or on the shared {@link ParseWorkerPool} for secondary managers
+ * like those of test cases. Changes to the source, language version or
+ * classpath are debounced, and a parse that is still running when a newer
+ * change comes in is cancelled and its result discarded. The compilation
+ * unit is always published on the JavaFX application thread.
+ *
+ * <p>Parses go through a {@link ParseSession} of the {@link ParseSessionService},
+ * which keeps the language processors alive between parses, and across
+ * changes of the language version or the auxclasspath. The published
+ * compilation unit retains its session, which stays open as long as the
+ * tree is published. Compilation units are also shared through the
+ * {@link AstCache}, so that sources that were already parsed are not
+ * parsed again.
+ *
+ * <p>A parse that exceeds the {@linkplain #parseBudgetProperty() parse budget}
+ * is abandoned: its thread is dropped, the failure is reported
+ * as a {@link ParseAbortedException}, and the previous compilation unit is
+ * kept.
+ *
  * @author Clément Fournier
  * @since 6.0.0
  */
-public class ASTManagerImpl implements ASTManager {
+public class ASTManagerImpl implements ASTManager, CloseableService {
 
     public static final PmdReporter NOOP_REPORTER = PmdReporter.quiet();
 
+    /** Minimum delay between the last change and the start of a parse. Changes are coalesced until then. */
+    private static final Duration PARSE_DEBOUNCE_DELAY = Duration.ofMillis(50);
+    /** Default maximum duration of a parse. */
+    public static final Duration DEFAULT_PARSE_BUDGET = Duration.ofSeconds(5);
+
     private final DesignerRoot designerRoot;
 
+    /** Shared workers, null if this manager has its own. */
+    private final ParseWorkerPool workerPool;
+    /**
+     * Drives the parses, off the JavaFX thread, if this manager has its own
+     * workers. The parses themselves run on the {@link #parseRunner}, and
+     * this thread watches their budget.
+     */
+    private final ExecutorService parseExecutor;
+    /** Only accessed on the parser thread. Replaced when a parse is abandoned. */
+    private ParseRunner parseRunner;
+    /** Latest parse, cancelled by newer changes. Only accessed on the JavaFX thread. */
+    private CompletableFuture<ParseTimingRecord> pendingParse;
+
+    private final Subscription parseSubscription;
+
     private final Var<List<ClasspathEntry>> classpath = Var.newSimpleVar(emptyList());
 
     /**
@@ -77,40 +114,192 @@ public class ASTManagerImpl implements ASTManager {
      */
     private final SuspendableVar<String> sourceCode = Var.newSimpleVar("").suspendable();
     private final SuspendableVar<TextDocument> sourceDocument = Var.newSimpleVar(TextDocument.readOnlyString("", languageVersion.getValue())).suspendable();
-    private final SuspendableVar<LanguageProcessorRegistry> lpRegistry = Var.<LanguageProcessorRegistry>newSimpleVar(null).suspendable();
+    /** Processor of the latest compilation unit. */
+    private final Var<LanguageProcessor> languageProcessor = Var.newSimpleVar(null);
+    /**
+     * Session of the latest non-null compilation unit, retained until
+     * another tree replaces it. Only accessed on the JavaFX thread.
+     */
+    private ParseSession publishedSession;
 
     private final Var<ParseAbortedException> currentException = Var.newSimpleVar(null);
 
     private final Var<Map<String, String>> ruleProperties = Var.newSimpleVar(Collections.emptyMap());
 
+    private final Var<@NonNull Duration> parseBudget = Var.newSimpleVar(DEFAULT_PARSE_BUDGET);
+
+    /**
+     * Creates a manager that parses on its own thread.
+     */
     public ASTManagerImpl(DesignerRoot owner) {
+        this(owner, false);
+    }
+
+
+    /**
+     * Creates a manager.
+     *
+     * @param owner              Designer root
+     * @param sharedParseWorkers If true, parses are run on the {@link ParseWorkerPool} of the root
+     */
+    public ASTManagerImpl(DesignerRoot owner, boolean sharedParseWorkers) {
         this.designerRoot = owner;
+        this.workerPool = sharedParseWorkers ? owner.getService(DesignerRoot.PARSE_WORKER_POOL) : null;
+        this.parseExecutor = workerPool != null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "AST-manager-" + this.hashCode() + "-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         // Refresh the AST anytime the text, classloader, or language version changes
-        sourceCode.values()
-                  .or(classpathProperty().values())
-                  .or(languageVersionProperty().values())
-                  .subscribe(tick -> {
-                      // note: if either of these values would be null the optional is empty.
-                      Optional<LanguageVersion> changedLanguageVersion = Optional.of(tick).filter(Either::isRight).map(Either::getRight);
-
-                      Node updated;
-                      try {
-                          updated = refreshAST(this, getSourceCode(), getLanguageVersion(),
-                                  refreshRegistry(changedLanguageVersion.isPresent()),
-                                  classpathProperty().getValue()).orElse(null);
-                          currentException.setValue(null);
-                      } catch (ParseAbortedException e) {
-                          updated = null;
-                          currentException.setValue(e);
-                      } catch (LinkageError e) {
-                          // LinkageErrors might occur due to API incompatibilities with pmd-core at runtime.
-                          updated = null;
-                          logInternalException(e);
-                      }
-
-                      compilationUnit.setValue(updated);
-                  });
+        EventStream<?> ticks =
+            sourceCode.values()
+                      .or(classpathProperty().values())
+                      .or(languageVersionProperty().values());
+
+        parseSubscription =
+            ticks.successionEnds(PARSE_DEBOUNCE_DELAY)
+                 .mapToCompletionStage(tick -> parseLatestSnapshot())
+                 // the result of a superseded parse is dropped
+                 .awaitLatest(ticks)
+                 .subscribe(this::handleParseResult)
+                 // a newer change cancels the parse in progress
+                 .and(ticks.subscribe(tick -> cancelPendingParse()));
+    }
+
+
+    /**
+     * Starts parsing the current state of the model. The state is captured
+     * on the JavaFX thread, when the request is created. The cache is looked
+     * up on the worker, since that hashes the source.
+     */
+    private CompletableFuture<ParseTimingRecord> parseLatestSnapshot() {
+        ParseRequest request = new ParseRequest(getSourceCode(), getLanguageVersion(), classpathProperty().getValue(), parseBudget.getValue());
+
+        CompletableFuture<ParseTimingRecord> result = workerPool != null ? workerPool.submit(request)
+                                                                         : parseOnOwnThread(request);
+        pendingParse = result;
+        return result;
+    }
+
+
+    private void cancelPendingParse() {
+        if (pendingParse != null) {
+            pendingParse.cancel(true);
+            pendingParse = null;
+        }
+    }
+
+
+    private CompletableFuture<ParseTimingRecord> parseOnOwnThread(ParseRequest request) {
+        CompletableFuture<ParseTimingRecord> result = new CompletableFuture<>();
+        if (parseExecutor.isShutdown()) {
+            result.cancel(false);
+            return result;
+        }
+
+        Future<?> job = parseExecutor.submit(() -> {
+            try {
+                parseWithinBudget(request).deliver(result, Platform::runLater);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        // cancelling the result interrupts the parse
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                job.cancel(true);
+            }
+        });
+        return result;
+    }
+
+
+    /**
+     * Returns the result of the request, whose session reference is owned
+     * by the caller. Setting up the session (eg the type system) is not
+     * counted in the parse budget. Called on the parser thread.
+     */
+    private ParseTimingRecord parseWithinBudget(ParseRequest request) throws Exception {
+        ParseTimingRecord cached = request.lookup(getService(DesignerRoot.AST_CACHE));
+        if (cached != null) {
+            return cached;
+        }
+
+        ParseSession session = getService(DesignerRoot.PARSE_SESSIONS).acquire(request);
+        // the runner holds its own reference, since it may outlive this
+        // call if the parse is abandoned
+        session.retain();
+        Node root;
+        long start = System.nanoTime();
+        try {
+            root = runOnParseRunner(request.getBudget(), () -> session.parse(request.getSource()), session::release);
+        } catch (Exception | Error e) {
+            session.release();
+            throw e;
+        }
+        Duration parseTime = Duration.ofNanos(System.nanoTime() - start);
+
+        return request.complete(root, parseTime, session, getService(DesignerRoot.AST_CACHE));
+    }
+
+
+    /** Publishes the result of a parse. Called on the JavaFX thread. */
+    private void handleParseResult(Try<ParseTimingRecord> result) {
+        Node updated = null;
+        Throwable failure = result.isSuccess() ? null : unwrap(result.getFailure());
+        if (result.isSuccess()) {
+            ParseSession session = result.get().getSession();
+            if (!session.retain()) {
+                // closed before it could be published, a newer result will follow
+                return;
+            }
+            if (publishedSession != null) {
+                publishedSession.release();
+            }
+            publishedSession = session;
+            updated = result.get().getRoot();
+            languageProcessor.setValue(updated.getAstInfo().getLanguageProcessor());
+            NodeKindIndexService indexer = getService(DesignerRoot.NODE_KIND_INDEX);
+            if (indexer != null) {
+                // speeds up the following evaluations of queries like //Name[...]
+                indexer.index(updated);
+            }
+            publishTiming(result.get());
+            currentException.setValue(null);
+            // Notify that the parse went OK so we can avoid logging very recent exceptions
+            raiseParsableSourceFlag(() -> "Param hash: " + Objects.hash(getSourceCode(), getLanguageVersion(), classpathProperty().getValue()));
+        } else if (failure instanceof CancellationException) {
+            // superseded
+            return;
+        } else if (failure instanceof ParseAbortedException) {
+            ParseAbortedException e = (ParseAbortedException) failure;
+            logUserException(e.getCause(), Category.PARSE_EXCEPTION);
+            currentException.setValue(e);
+            if (e.isTimeout()) {
+                // keep the previous good compilation unit
+                return;
+            }
+        } else {
+            // LinkageErrors might occur due to API incompatibilities with pmd-core at runtime.
+            logInternalException(failure);
+        }
+
+        compilationUnit.setValue(updated);
+    }
+
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+
+    private void publishTiming(ParseTimingRecord record) {
+        ParseTimingService timingService = getService(DesignerRoot.PARSE_TIMING);
+        // only the main editor reports its timings, not eg the test cases
+        if (timingService != null && getService(DesignerRoot.AST_MANAGER) == this) {
+            timingService.publish(record);
+        }
     }
 
 
@@ -174,10 +363,7 @@ public class ASTManagerImpl implements ASTManager {
 
     @Override
     public Val<LanguageProcessor> languageProcessorProperty() {
-        return lpRegistry.mapDynamic(
-            languageVersionProperty().map(LanguageVersion::getLanguage)
-                                     .map(l -> lp -> lp.getProcessor(l))
-        );
+        return languageProcessor;
     }
 
 
@@ -205,98 +391,112 @@ public class ASTManagerImpl implements ASTManager {
         return currentException;
     }
 
-    // Note: This registry is used via languageProcessorProperty() to get access
-    // to DesignerBindings. It doesn't have and need the auxClasspath configuration.
-    // It is not used for generating the AST, see refreshAST() for that.
-    private LanguageProcessorRegistry createNewRegistry(LanguageVersion version) {
-        Map<Language, LanguagePropertyBundle> langProperties = new HashMap<>();
-        LanguagePropertyBundle bundle = version.getLanguage().newPropertyBundle();
-        bundle.setLanguageVersion(version.getVersion());
-        langProperties.put(version.getLanguage(), bundle);
-
-        LanguageRegistry languages =
-                AuxLanguageRegistry.supportedLangs()
-                        .getDependenciesOf(version.getLanguage());
-
-        return LanguageProcessorRegistry.create(languages,
-                langProperties,
-                NOOP_REPORTER);
+    @Override
+    public Var<@NonNull Duration> parseBudgetProperty() {
+        return parseBudget;
     }
 
-    private LanguageProcessorRegistry refreshRegistry(boolean changedLanguageVersion) {
-        LanguageProcessorRegistry current = lpRegistry.getValue();
-        if (current != null && !changedLanguageVersion) {
-            // the current one is fine
-            return current;
-        }
 
-        if (current != null) {
-            // current is invalid, recreate it
-            current.close();
+    /** Called on the parser thread. */
+    private ParseRunner getParseRunner() {
+        if (parseRunner == null) {
+            parseRunner = new ParseRunner();
         }
-
-        LanguageProcessorRegistry newRegistry = createNewRegistry(getLanguageVersion());
-        lpRegistry.setValue(newRegistry);
-        return newRegistry;
+        return parseRunner;
     }
 
-    public static class RootNodeCapturingRule extends AbstractRule {
-        private Node rootNode;
 
-        @Override
-        public void apply(Node target, RuleContext ctx) {
-            rootNode = target;
+    /**
+     * Runs the action on the parse runner and waits for it at most for the
+     * given budget. If the budget is exceeded, the runner is abandoned along
+     * with its thread, since parsers generally don't respond to interruption.
+     * Called on the parser thread.
+     *
+     * @param budget  Maximum duration
+     * @param cleanup Run on the runner after the action, even if it is abandoned or cancelled
+     *
+     * @throws ParseAbortedException If the parse fails or times out
+     * @throws InterruptedException  If the parse is cancelled by a newer change
+     */
+    private Node runOnParseRunner(Duration budget, ParseAction action, Runnable cleanup) throws Exception {
+        ParseRunner runner = getParseRunner();
+        long start = System.nanoTime();
+        Future<Node> future = runner.submit(action, cleanup);
+        try {
+            return future.get(budget.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            runner.abandon();
+            parseRunner = null;
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            throw ParseAbortedException.timeout(budget, elapsed);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
         }
+    }
 
-        public Node getRootNode() {
-            return rootNode;
+
+    @Override
+    public void close() {
+        parseSubscription.unsubscribe();
+        cancelPendingParse();
+        if (parseExecutor != null && !parseExecutor.isShutdown()) {
+            // queued after any running parse
+            parseExecutor.execute(() -> {
+                if (parseRunner != null) {
+                    parseRunner.abandon();
+                    parseRunner = null;
+                }
+            });
+            parseExecutor.shutdown();
+        }
+        if (publishedSession != null) {
+            publishedSession.release();
+            publishedSession = null;
         }
     }
 
-    /**
-     * Refreshes the compilation unit given the current state of the model.
-     *
-     * @throws ParseAbortedException if parsing fails and cannot recover
-     */
-    private static Optional<Node> refreshAST(ApplicationComponent component,
-                                             String source,
-                                             LanguageVersion version,
-                                             LanguageProcessorRegistry lpRegistry,
-                                             List<ClasspathEntry> classpath) throws ParseAbortedException {
-        PMDConfiguration config = new PMDConfiguration(lpRegistry.getLanguages());
-        config.setIgnoreIncrementalAnalysis(true);
-        config.setAnalysisCacheLocation(null);
-        config.setThreads(0); // important, so that the same RootNodeCapturingRule instance is used
-        config.setDefaultLanguageVersion(version);
-
-        if (classpath != null && !classpath.isEmpty()) {
-            config.prependAuxClasspath(classpath.stream()
-                    .map(ClasspathEntry::getEntry)
-                    .collect(Collectors.joining(File.pathSeparator)));
-        }
 
-        RootNodeCapturingRule rule = new RootNodeCapturingRule();
-        rule.setLanguage(version.getLanguage());
+    @FunctionalInterface
+    private interface ParseAction {
+
+        Node run() throws ParseAbortedException;
+    }
+
 
-        try (PmdAnalysis pmdAnalysis = PmdAnalysis.create(config)) {
-            pmdAnalysis.addRuleSet(RuleSet.forSingleRule(rule));
+    /**
+     * Thread on which parses are run.
+     */
+    private final class ParseRunner {
 
-            String dummyFilePath = "dummy." + version.getLanguage().getExtensions().get(0);
-            FileId fileId = FileId.fromPathLikeString(dummyFilePath);
-            pmdAnalysis.files().addSourceFile(fileId, source);
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "AST-manager-" + ASTManagerImpl.this.hashCode() + "-parse-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-            Report report = pmdAnalysis.performAnalysisAndCollectReport();
 
-            if (!report.getProcessingErrors().isEmpty()) {
-                Throwable e = report.getProcessingErrors().get(0).getError();
-                component.logUserException(e, Category.PARSE_EXCEPTION);
-                throw new ParseAbortedException(e);
-            }
+        /** Submits the action, then the cleanup, which runs even if the action is cancelled. */
+        Future<Node> submit(ParseAction action, Runnable cleanup) {
+            Future<Node> future = executor.submit(action::run);
+            executor.execute(cleanup);
+            return future;
+        }
 
-            // Notify that the parse went OK so we can avoid logging very recent exceptions
-            component.raiseParsableSourceFlag(() -> "Param hash: " + Objects.hash(source, version, classpath));
 
-            return Optional.ofNullable(rule.getRootNode());
+        /**
+         * Drops this runner. Its thread ends after the current parse
+         * and the pending cleanups finish, if they ever do.
+         */
+        void abandon() {
+            executor.shutdown();
         }
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.util.WeightedLruCache;
+
+
+/**
+ * Caches the compilation units parsed by the {@link ASTManagerImpl}s of
+ * the app, so that going back to a source that was already parsed (eg
+ * switching test cases, undo) doesn't parse it again. Entries are
+ * addressed by the hash of the source, the language version and the
+ * classpath. The weight of an entry is the number of nodes of its tree,
+ * which is closer to what the entry retains than the length of its source.
+ *
+ * <p>A tree is only valid as long as the {@link ParseSession} that parsed
+ * it, since it references its language processor. Each entry holds a
+ * {@linkplain ParseSession#retain() reference} to its session, which is
+ * released when the entry leaves the cache. A tree obtained from the cache
+ * is only safe to keep if the caller retains its session too.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class AstCache {
+
+    private static final int MAX_ENTRIES = 64;
+    /** Total number of nodes of the cached trees. */
+    private static final long MAX_NODES = 1L << 20;
+
+    /** Roots of the cached trees. */
+    private final Set<Node> cachedRoots = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final List<Consumer<Node>> removalListeners = new CopyOnWriteArrayList<>();
+
+    private final WeightedLruCache<Key, Entry> cache =
+        new WeightedLruCache<>(MAX_ENTRIES, MAX_NODES, Entry::getNodeCount, (k, e) -> {
+            cachedRoots.remove(e.root);
+            removalListeners.forEach(l -> l.accept(e.root));
+            e.session.release();
+        });
+
+
+    /**
+     * Returns the compilation unit parsed with the given key, or null if it
+     * was never parsed or was evicted. The entry may be evicted concurrently,
+     * so the caller must {@linkplain ParseSession#retain() retain} its session
+     * before using the tree, and treat a failure as a miss.
+     */
+    public @Nullable Entry get(Key key) {
+        return cache.get(key);
+    }
+
+
+    /**
+     * Records a tree. The entry retains the session until it leaves the cache.
+     *
+     * @param session Session that parsed the tree
+     */
+    public void put(Key key, ParseSession session, Node root, long nodeCount) {
+        if (nodeCount > MAX_NODES || !session.retain()) {
+            return;
+        }
+        cachedRoots.add(root);
+        cache.put(key, new Entry(session, root, nodeCount));
+    }
+
+
+    /** Returns true if the tree with this root is in the cache. */
+    public boolean containsRoot(Node root) {
+        return cachedRoots.contains(root);
+    }
+
+
+    /**
+     * Adds a listener that is called with the root of every tree that
+     * leaves the cache. It's called while holding the lock of the cache.
+     */
+    public void addRemovalListener(Consumer<Node> listener) {
+        removalListeners.add(listener);
+    }
+
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+
+    @Override
+    public String toString() {
+        return "AstCache(" + cache + ")";
+    }
+
+
+    /**
+     * Builds the key of a compilation unit.
+     *
+     * @param classpathFingerprint See {@link ClasspathService#fingerprint(java.util.List)}
+     */
+    public static Key keyFor(String source, LanguageVersion version, String classpathFingerprint) {
+        return new Key(sha256(source), version, classpathFingerprint);
+    }
+
+
+    /**
+     * Hashes the UTF-8 encoding of the source, which is encoded in chunks
+     * so that big sources are not copied.
+     */
+    private static byte[] sha256(String source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM must provide SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                                                       .onMalformedInput(CodingErrorAction.REPLACE)
+                                                       .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.wrap(source);
+        ByteBuffer out = ByteBuffer.allocate(8 * 1024);
+        boolean flushed = false;
+        while (!flushed) {
+            // the buffer is large enough for any char, so the results are overflow or underflow
+            if (in.hasRemaining()) {
+                encoder.encode(in, out, true);
+            } else {
+                flushed = encoder.flush(out).isUnderflow();
+            }
+            out.flip();
+            digest.update(out);
+            out.clear();
+        }
+        return digest.digest();
+    }
+
+
+    /**
+     * A cached compilation unit.
+     */
+    public static final class Entry {
+
+        private final ParseSession session;
+        private final Node root;
+        private final long nodeCount;
+
+
+        Entry(ParseSession session, Node root, long nodeCount) {
+            this.session = session;
+            this.root = root;
+            this.nodeCount = nodeCount;
+        }
+
+
+        public Node getRoot() {
+            return root;
+        }
+
+
+        /** Session that parsed the tree. */
+        public ParseSession getSession() {
+            return session;
+        }
+
+
+        public long getNodeCount() {
+            return nodeCount;
+        }
+    }
+
+
+    /**
+     * Identifies a parse: the source hash, the language version and the classpath.
+     */
+    public static final class Key {
+
+        private final byte[] sourceHash;
+        private final LanguageVersion languageVersion;
+        private final String classpathFingerprint;
+        private final int hashCode;
+
+
+        Key(byte[] sourceHash, LanguageVersion languageVersion, String classpathFingerprint) {
+            this.sourceHash = sourceHash;
+            this.languageVersion = languageVersion;
+            this.classpathFingerprint = classpathFingerprint;
+            this.hashCode = Objects.hash(Arrays.hashCode(sourceHash), languageVersion, classpathFingerprint);
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                && Arrays.equals(sourceHash, key.sourceHash)
+                && Objects.equals(languageVersion, key.languageVersion)
+                && Objects.equals(classpathFingerprint, key.classpathFingerprint);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
+import net.sourceforge.pmd.util.fxdesigner.util.AuxLanguageRegistry;
+
+
+/**
+ * Builds and caches the class loaders of auxclasspaths. A loader is built
+ * once per classpath fingerprint, which takes into account the modification
+ * time and size of the entries, and is then shared by all parse sessions
+ * of the app, across designer scopes. Jars are indexed once when the loader
+ * is built.
+ *
+ * <p>Loaders are {@linkplain #acquireClassLoader(List, String) acquired}
+ * by parse sessions and {@linkplain #releaseClassLoader(ClassLoader) released}
+ * when the session is closed. An evicted loader is closed as soon as no
+ * session uses it, so that it doesn't keep its jars open. A loader is
+ * evicted when the pool is full, or when one of its jars changed on disk.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class ClasspathService implements CloseableService {
+
+    /** Number of distinct classpaths whose loader is kept. */
+    private static final int MAX_LOADERS = 4;
+
+    private final Map<String, SharedLoader> loaders = new LinkedHashMap<>(16, 0.75f, true);
+    /** Loaders that were evicted but are still in use. */
+    private final List<SharedLoader> evicted = new ArrayList<>();
+
+
+    /**
+     * Returns the class loader for the given classpath, or null if it is empty.
+     * The loader is owned by this service, and must be released with
+     * {@link #releaseClassLoader(ClassLoader)} instead of being closed.
+     * This may be called on any thread, and may take some time if the loader
+     * doesn't exist yet.
+     *
+     * @param fingerprint Fingerprint of the classpath, see {@link #fingerprint(List)}
+     */
+    public synchronized @Nullable ClassLoader acquireClassLoader(List<ClasspathEntry> classpath, String fingerprint) {
+        if (classpath.isEmpty()) {
+            return null;
+        }
+
+        SharedLoader shared = loaders.get(fingerprint);
+        if (shared == null) {
+            List<String> paths = classpath.stream().map(ClasspathEntry::getEntry).collect(Collectors.toList());
+            for (Iterator<SharedLoader> iterator = loaders.values().iterator(); iterator.hasNext();) {
+                SharedLoader stale = iterator.next();
+                if (stale.paths.equals(paths)) {
+                    // a jar of the classpath was rebuilt, the old loader holds it open
+                    evict(stale);
+                    iterator.remove();
+                }
+            }
+            shared = new SharedLoader(createClassLoader(classpath), paths);
+            loaders.put(fingerprint, shared);
+            evictOldLoaders();
+        }
+        shared.users++;
+        return shared.loader;
+    }
+
+
+    /**
+     * Releases a loader returned by {@link #acquireClassLoader(List, String)}.
+     * The loader is closed if it was evicted and this was its last user.
+     */
+    public synchronized void releaseClassLoader(ClassLoader loader) {
+        for (SharedLoader shared : loaders.values()) {
+            if (shared.loader == loader) {
+                shared.users--;
+                return;
+            }
+        }
+        for (Iterator<SharedLoader> iterator = evicted.iterator(); iterator.hasNext();) {
+            SharedLoader shared = iterator.next();
+            if (shared.loader == loader) {
+                if (--shared.users == 0) {
+                    iterator.remove();
+                    closeLoader(loader);
+                }
+                return;
+            }
+        }
+    }
+
+
+    private void evictOldLoaders() {
+        Iterator<SharedLoader> iterator = loaders.values().iterator();
+        while (loaders.size() > MAX_LOADERS && iterator.hasNext()) {
+            evict(iterator.next());
+            iterator.remove();
+        }
+    }
+
+
+    /** Closes the loader if it's unused, otherwise once its last user releases it. */
+    private void evict(SharedLoader shared) {
+        if (shared.users == 0) {
+            closeLoader(shared.loader);
+        } else {
+            evicted.add(shared);
+        }
+    }
+
+
+    @Override
+    public synchronized void close() {
+        // sessions that are still open are closed with the app
+        evicted.addAll(loaders.values());
+        loaders.clear();
+        for (SharedLoader shared : evicted) {
+            closeLoader(shared.loader);
+        }
+        evicted.clear();
+    }
+
+
+    private static void closeLoader(ClassLoader loader) {
+        if (loader instanceof Closeable) {
+            try {
+                ((Closeable) loader).close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+
+    /**
+     * Returns a string that changes whenever the classpath, or one of
+     * its entries on disk, changes.
+     */
+    public static String fingerprint(List<ClasspathEntry> classpath) {
+        StringBuilder sb = new StringBuilder();
+        for (ClasspathEntry entry : classpath) {
+            File file = new File(entry.getEntry());
+            sb.append(entry.getEntry())
+              .append('@').append(file.lastModified())
+              .append(':').append(file.length())
+              .append(File.pathSeparatorChar);
+        }
+        return sb.toString();
+    }
+
+
+    private static ClassLoader createClassLoader(List<ClasspathEntry> classpath) {
+        ClassLoader parent = PMDConfiguration.class.getClassLoader();
+
+        List<File> files = classpath.stream().map(e -> new File(e.getEntry())).collect(Collectors.toList());
+        if (files.stream().allMatch(ClasspathService::isIndexable)) {
+            try {
+                return new IndexedClasspathLoader(files, parent);
+            } catch (IOException ignored) {
+                // let PMD report the problem
+            }
+        }
+
+        // other kinds of entries (eg jrt-fs.jar or classpath files) are handled by PMD
+        PMDConfiguration config = new PMDConfiguration(AuxLanguageRegistry.supportedLangs());
+        config.setClassLoader(parent);
+        config.prependAuxClasspath(classpath.stream()
+                                            .map(ClasspathEntry::getEntry)
+                                            .collect(Collectors.joining(File.pathSeparator)));
+        return config.getClassLoader();
+    }
+
+
+    private static boolean isIndexable(File file) {
+        if (file.isDirectory()) {
+            return true;
+        }
+        String name = file.getName();
+        return file.isFile() && (name.endsWith(".jar") || name.endsWith(".zip")) && !"jrt-fs.jar".equals(name);
+    }
+
+
+    /** A loader with the number of sessions that use it. */
+    private static final class SharedLoader {
+
+        private final ClassLoader loader;
+        /** Entries of the classpath. */
+        private final List<String> paths;
+        private int users;
+
+
+        SharedLoader(ClassLoader loader, List<String> paths) {
+            this.loader = loader;
+            this.paths = paths;
+        }
+    }
+}
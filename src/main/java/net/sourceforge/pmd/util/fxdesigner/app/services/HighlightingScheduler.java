@@ -0,0 +1,277 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.reactfx.value.Val;
+import org.reactfx.value.Var;
+
+import javafx.application.Platform;
+
+
+/**
+ * A bounded pool of threads that compute the syntax highlighting of all
+ * the code areas of the app. Each code area is a {@link Client} of the
+ * scheduler. A client has at most one pending request: a newer request
+ * replaces it. A client has at most one request running, since highlighting
+ * sessions reuse the result of the previous request. Pending requests of
+ * the clients with the highest {@link Priority} are served first, the
+ * others in the order they were submitted.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class HighlightingScheduler implements CloseableService {
+
+    private static HighlightingScheduler fallback;
+
+    private final int maxWorkers;
+    /** Executor of the JavaFX thread. */
+    private final Executor fxThread;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Highlighter-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // all of those are guarded by this
+    /** Clients that have a pending request, in submission order. */
+    private final List<Client> waiting = new ArrayList<>();
+    private int running;
+    private boolean closed;
+
+    private final Var<Integer> queueDepth = Var.newSimpleVar(0);
+    private final AtomicBoolean depthUpdateScheduled = new AtomicBoolean();
+
+
+    public HighlightingScheduler() {
+        this(Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)), Platform::runLater);
+    }
+
+
+    public HighlightingScheduler(int maxWorkers, Executor fxThread) {
+        this.maxWorkers = maxWorkers;
+        this.fxThread = fxThread;
+    }
+
+
+    /**
+     * Scheduler used by the code areas that are not given the one of
+     * their designer root, eg when they're used outside of the app.
+     * Created on first use.
+     */
+    public static synchronized HighlightingScheduler fallback() {
+        if (fallback == null) {
+            fallback = new HighlightingScheduler(1, Platform::runLater);
+        }
+        return fallback;
+    }
+
+
+    /** Returns a new client, with priority {@link Priority#HIDDEN}. */
+    public Client newClient() {
+        return new Client();
+    }
+
+
+    /** Number of pending requests. Updated on the JavaFX thread. */
+    public Val<Integer> queueDepthProperty() {
+        return queueDepth;
+    }
+
+
+    private synchronized void dispatch() {
+        while (!closed && running < maxWorkers) {
+            Client next = null;
+            for (Client client : waiting) {
+                if (!client.running && (next == null || client.priority.ordinal() > next.priority.ordinal())) {
+                    next = client;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            waiting.remove(next);
+            Job<?> job = next.pending;
+            next.pending = null;
+            next.running = true;
+            running++;
+            workers.execute(() -> run(job));
+        }
+        publishQueueDepth();
+    }
+
+
+    private void run(Job<?> job) {
+        try {
+            job.run();
+        } finally {
+            synchronized (this) {
+                running--;
+                job.client.running = false;
+            }
+            dispatch();
+        }
+    }
+
+
+    private void publishQueueDepth() {
+        // coalesced, there may be many requests while typing
+        if (depthUpdateScheduled.compareAndSet(false, true)) {
+            fxThread.execute(() -> {
+                depthUpdateScheduled.set(false);
+                synchronized (this) {
+                    queueDepth.setValue(waiting.size());
+                }
+            });
+        }
+    }
+
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Client client : waiting) {
+                client.pending.result.cancel(false);
+                client.pending = null;
+            }
+            waiting.clear();
+        }
+        workers.shutdownNow();
+    }
+
+
+    /** Priority of a client, from lowest to highest. */
+    public enum Priority {
+        /** The code area is not visible, eg in a background tab or a closed popup. */
+        HIDDEN,
+        VISIBLE,
+        FOCUSED
+    }
+
+
+    /** Submits the requests of a code area. */
+    public final class Client {
+
+        // guarded by the scheduler
+        private @Nullable Job<?> pending;
+        private boolean running;
+
+        private volatile Priority priority = Priority.HIDDEN;
+
+
+        private Client() {
+            // use newClient
+        }
+
+
+        /**
+         * Updates the priority of this client. This affects its pending
+         * request, if any.
+         */
+        public void setPriority(Priority priority) {
+            if (this.priority != priority) {
+                this.priority = priority;
+                dispatch();
+            }
+        }
+
+
+        /**
+         * Submits a request. The pending request of this client, if any,
+         * is cancelled. Cancelling the returned future drops the request
+         * if it hasn't started yet. A request that has started runs to
+         * completion.
+         */
+        public <T> CompletableFuture<T> submit(Supplier<T> computation) {
+            Job<T> job = new Job<>(this, computation);
+            Job<?> previous;
+            synchronized (HighlightingScheduler.this) {
+                if (closed) {
+                    job.result.cancel(false);
+                    return job.result;
+                }
+                previous = pending;
+                pending = job;
+                if (previous == null) {
+                    // otherwise the new request keeps the place of the previous one
+                    waiting.add(this);
+                }
+            }
+            if (previous != null) {
+                previous.result.cancel(false);
+            }
+            job.result.whenComplete((r, e) -> {
+                if (job.result.isCancelled()) {
+                    dropIfPending(job);
+                }
+            });
+            dispatch();
+            return job.result;
+        }
+
+
+        /** Cancels the pending request, if any. */
+        public void cancel() {
+            Job<?> job;
+            synchronized (HighlightingScheduler.this) {
+                job = pending;
+            }
+            if (job != null) {
+                job.result.cancel(false);
+            }
+        }
+
+
+        private void dropIfPending(Job<?> job) {
+            synchronized (HighlightingScheduler.this) {
+                if (pending == job) {
+                    pending = null;
+                    waiting.remove(this);
+                    publishQueueDepth();
+                }
+            }
+        }
+    }
+
+
+    private static final class Job<T> {
+
+        private final Client client;
+        private final Supplier<T> computation;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+
+        Job(Client client, Supplier<T> computation) {
+            this.client = client;
+            this.computation = computation;
+        }
+
+
+        void run() {
+            if (result.isDone()) {
+                // cancelled before it started
+                return;
+            }
+            try {
+                result.complete(computation.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
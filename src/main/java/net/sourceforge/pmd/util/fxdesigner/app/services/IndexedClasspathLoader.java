@@ -0,0 +1,360 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Class loader over an auxclasspath made of jars and directories. The
+ * entries of all jars are indexed when the loader is created, so that
+ * looking up a class or resource is a map lookup and doesn't scan the
+ * jars again. The jars are kept open until the loader is closed.
+ *
+ * <p>Like {@link java.net.URLClassLoader}, resources that are in several
+ * entries are all returned by {@link #getResources(String)}, in classpath
+ * order, and multi-release jars serve the entries under
+ * {@code META-INF/versions/N/} for the version of the running JVM.
+ *
+ * <p>Resources are looked up in the auxclasspath first, then in the
+ * parent, like PMD's own auxclasspath class loader does.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+final class IndexedClasspathLoader extends ClassLoader implements Closeable {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    /** Feature version of the running JVM, eg 8 or 17. */
+    private static final int RUNTIME_VERSION = runtimeVersion();
+
+    private final List<ZipFile> jars = new ArrayList<>();
+    private final List<File> directories = new ArrayList<>();
+    /** Entry name to the entries of the jars that contain it, in classpath order. */
+    private final Map<String, List<JarResource>> jarIndex = new HashMap<>();
+
+
+    /**
+     * @throws IOException If a jar cannot be read, in which case the ones already opened are closed
+     */
+    IndexedClasspathLoader(List<File> entries, ClassLoader parent) throws IOException {
+        super(parent);
+        try {
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    directories.add(entry);
+                } else {
+                    index(new ZipFile(entry));
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+
+    private void index(ZipFile jar) throws IOException {
+        jars.add(jar);
+        boolean multiRelease = isMultiRelease(jar);
+        // for multi-release jars, the resource of each name with the highest applicable version
+        Map<String, JarResource> versioned = new HashMap<>();
+        Map<String, Integer> versions = new HashMap<>();
+
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            JarResource resource = new JarResource(jar, name);
+            int version = multiRelease ? entryVersion(name) : 0;
+            if (version == 0) {
+                addToIndex(name, resource);
+                continue;
+            }
+            // the versioned entry is also reachable by its own name
+            addToIndex(name, resource);
+            String baseName = name.substring(name.indexOf('/', VERSIONS_PREFIX.length()) + 1);
+            if (version <= RUNTIME_VERSION && version > versions.getOrDefault(baseName, 0)) {
+                versioned.put(baseName, resource);
+                versions.put(baseName, version);
+            }
+        }
+
+        // versioned entries replace the base entry of the same jar
+        versioned.forEach((baseName, resource) -> {
+            List<JarResource> located = jarIndex.get(baseName);
+            if (located != null && located.get(located.size() - 1).jar == jar) {
+                if (located.size() == 1) {
+                    jarIndex.put(baseName, Collections.singletonList(resource));
+                } else {
+                    located.set(located.size() - 1, resource);
+                }
+            } else {
+                addToIndex(baseName, resource);
+            }
+        });
+    }
+
+
+    private void addToIndex(String name, JarResource resource) {
+        List<JarResource> located = jarIndex.get(name);
+        if (located == null) {
+            // most entries are in a single jar
+            jarIndex.put(name, Collections.singletonList(resource));
+        } else {
+            if (located.size() == 1) {
+                located = new ArrayList<>(located);
+                jarIndex.put(name, located);
+            }
+            located.add(resource);
+        }
+    }
+
+
+    private static boolean isMultiRelease(ZipFile jar) throws IOException {
+        ZipEntry manifestEntry = jar.getEntry(JarFile.MANIFEST_NAME);
+        if (RUNTIME_VERSION < 9 || manifestEntry == null) {
+            return false;
+        }
+        try (InputStream is = jar.getInputStream(manifestEntry)) {
+            return "true".equalsIgnoreCase(new Manifest(is).getMainAttributes().getValue("Multi-Release"));
+        }
+    }
+
+
+    /** Returns the version of an entry of a multi-release jar, or 0 if it's not versioned. */
+    private static int entryVersion(String name) {
+        if (!name.startsWith(VERSIONS_PREFIX)) {
+            return 0;
+        }
+        int slash = name.indexOf('/', VERSIONS_PREFIX.length());
+        if (slash < 0) {
+            return 0;
+        }
+        try {
+            int version = Integer.parseInt(name.substring(VERSIONS_PREFIX.length(), slash));
+            return version >= 9 ? version : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+    private static int runtimeVersion() {
+        String spec = System.getProperty("java.specification.version", "1.8");
+        try {
+            return spec.startsWith("1.") ? Integer.parseInt(spec.substring(2)) : Integer.parseInt(spec);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+
+    /** Number of indexed jar entries. */
+    int getIndexSize() {
+        return jarIndex.size();
+    }
+
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        try (InputStream is = openLocal(path)) {
+            if (is == null) {
+                throw new ClassNotFoundException(name);
+            }
+            byte[] bytes = readAll(is);
+            return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+
+    @Override
+    public URL getResource(String name) {
+        URL url = findResource(name);
+        return url != null ? url : super.getResource(name);
+    }
+
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        try {
+            InputStream is = openLocal(name);
+            if (is != null) {
+                return is;
+            }
+        } catch (IOException ignored) {
+            // fallback on the parent
+        }
+        return super.getResourceAsStream(name);
+    }
+
+
+    @Override
+    protected URL findResource(String name) {
+        List<JarResource> located = jarIndex.get(name);
+        if (located != null) {
+            return located.get(0).toUrl();
+        }
+
+        File file = findInDirectories(name);
+        return file == null ? null : fileUrl(file);
+    }
+
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<URL> urls = new ArrayList<>();
+        for (JarResource resource : jarIndex.getOrDefault(name, Collections.emptyList())) {
+            URL url = resource.toUrl();
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        for (File dir : directories) {
+            URL url = fileUrl(new File(dir, name));
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+
+    private InputStream openLocal(String name) throws IOException {
+        List<JarResource> located = jarIndex.get(name);
+        if (located != null) {
+            return located.get(0).open();
+        }
+        File file = findInDirectories(name);
+        return file == null ? null : file.toURI().toURL().openStream();
+    }
+
+
+    private static URL fileUrl(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return file.toURI().toURL();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+
+    private File findInDirectories(String name) {
+        for (File dir : directories) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+
+    @Override
+    public void close() {
+        for (ZipFile jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+        jars.clear();
+        jarIndex.clear();
+    }
+
+
+    /** An entry of a jar. */
+    private static final class JarResource {
+
+        private final ZipFile jar;
+        /** Name of the entry in the jar, which differs from the resource name for versioned entries. */
+        private final String entryName;
+
+
+        JarResource(ZipFile jar, String entryName) {
+            this.jar = jar;
+            this.entryName = entryName;
+        }
+
+
+        InputStream open() throws IOException {
+            return jar.getInputStream(jar.getEntry(entryName));
+        }
+
+
+        /**
+         * Builds a {@code jar:} URL for the entry that reads directly from
+         * the already open zip file, instead of opening the jar again.
+         * Returns null if the URL is malformed.
+         */
+        URL toUrl() {
+            String spec = "jar:" + new File(jar.getName()).toURI() + "!/" + entryName;
+            try {
+                return new URL(null, spec, new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL u) {
+                        return new URLConnection(u) {
+                            @Override
+                            public void connect() {
+                                // already open
+                            }
+
+
+                            @Override
+                            public InputStream getInputStream() throws IOException {
+                                return open();
+                            }
+                        };
+                    }
+                });
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+    }
+
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
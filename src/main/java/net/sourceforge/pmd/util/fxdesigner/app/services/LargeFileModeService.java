@@ -0,0 +1,111 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.reactfx.value.Val;
+import org.reactfx.value.Var;
+
+
+/**
+ * Decides whether the source editor is in large-file mode, in which the
+ * components of the editor trade completeness for responsiveness: the
+ * tree view builds its items lazily, syntax highlighting is turned off,
+ * only the nodes in the viewport are highlighted, and metrics are computed
+ * only once the selection settles.
+ *
+ * <p>The mode is triggered when the source or its tree exceed configurable
+ * thresholds. The user may force it on or off, which takes precedence until
+ * the override is reset. Must be used on the JavaFX thread.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class LargeFileModeService {
+
+    /** About 10k lines of Java. */
+    public static final int DEFAULT_CHAR_THRESHOLD = 400_000;
+    public static final int DEFAULT_NODE_THRESHOLD = 150_000;
+
+    private final Var<Integer> charThreshold = Var.newSimpleVar(DEFAULT_CHAR_THRESHOLD);
+    private final Var<Integer> nodeThreshold = Var.newSimpleVar(DEFAULT_NODE_THRESHOLD);
+
+    private final Var<Integer> sourceLength = Var.newSimpleVar(0);
+    private final Var<Long> nodeCount = Var.newSimpleVar(0L);
+
+    private final Var<@Nullable Boolean> userOverride = Var.newSimpleVar(null);
+
+    private final Val<Boolean> thresholdExceeded =
+        Val.combine(sourceLength, charThreshold, nodeCount, nodeThreshold,
+                    (len, maxLen, count, maxCount) -> len > maxLen || count > maxCount);
+
+    private final Val<Boolean> active = userOverride.orElse(thresholdExceeded);
+
+
+    /** Whether large-file mode is on, either because of the thresholds or because the user forced it. */
+    public Val<Boolean> activeProperty() {
+        return active;
+    }
+
+
+    public boolean isActive() {
+        return active.getValue();
+    }
+
+
+    /** Whether the current source exceeds one of the thresholds, regardless of the override. */
+    public Val<Boolean> thresholdExceededProperty() {
+        return thresholdExceeded;
+    }
+
+
+    /** Records the length of the source in the editor, called when it changes. */
+    public void setSourceLength(int length) {
+        sourceLength.setValue(length);
+    }
+
+
+    /** Records the size of the latest tree of the editor. */
+    public void setNodeCount(long count) {
+        nodeCount.setValue(count);
+    }
+
+
+    /**
+     * Forces the mode on or off. Null lets the thresholds decide again.
+     */
+    public void setUserOverride(@Nullable Boolean override) {
+        userOverride.setValue(override);
+    }
+
+
+    public Val<@Nullable Boolean> userOverrideProperty() {
+        return userOverride;
+    }
+
+
+    public Var<Integer> charThresholdProperty() {
+        return charThreshold;
+    }
+
+
+    public Var<Integer> nodeThresholdProperty() {
+        return nodeThreshold;
+    }
+
+
+    /** Explains the current state, for the indicator of the editor. */
+    public String getDescription() {
+        String state = isActive() ? "on" : "off";
+        if (userOverride.isPresent()) {
+            return "Large file mode " + state + " (set manually, right-click to decide automatically)";
+        } else if (isActive()) {
+            return "Large file mode on: the source exceeds " + charThreshold.getValue() + " chars or "
+                + nodeThreshold.getValue() + " nodes. The tree is built lazily, syntax highlighting is off, "
+                + "and only visible results are highlighted";
+        }
+        return "Large file mode off (click to force it)";
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.util.NodeKindIndex;
+import net.sourceforge.pmd.util.fxdesigner.util.WeightedLruCache;
+
+
+/**
+ * Builds the {@link NodeKindIndex} of compilation units in the background,
+ * when they're published by an {@link ASTManagerImpl}. Only the indices
+ * of the latest few compilation units are kept.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class NodeKindIndexService implements CloseableService {
+
+    /** Main editor, plus a few test cases. */
+    private static final int MAX_ENTRIES = 8;
+
+    private final WeightedLruCache<Node, CompletableFuture<NodeKindIndex>> indices =
+        new WeightedLruCache<>(MAX_ENTRIES, MAX_ENTRIES, f -> 1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Node-kind-indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+
+    /**
+     * Starts indexing the given tree, if it's not indexed already.
+     * Returns a future for the index.
+     */
+    public synchronized CompletableFuture<NodeKindIndex> index(Node root) {
+        CompletableFuture<NodeKindIndex> existing = indices.get(root);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<NodeKindIndex> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> NodeKindIndex.build(root), executor);
+        } catch (RejectedExecutionException e) {
+            // closed
+            result = new CompletableFuture<>();
+            result.cancel(false);
+            return result;
+        }
+        indices.put(root, result);
+        return result;
+    }
+
+
+    /**
+     * Returns the index of the given tree if it's ready, otherwise null.
+     * Does not start indexing the tree.
+     */
+    public @Nullable NodeKindIndex getIfReady(Node root) {
+        CompletableFuture<NodeKindIndex> future = indices.get(root);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
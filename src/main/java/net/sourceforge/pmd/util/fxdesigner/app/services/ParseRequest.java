@@ -0,0 +1,131 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
+
+
+/**
+ * Snapshot of the parameters of a parse, taken on the JavaFX thread
+ * and handed to a worker. The snapshot itself is cheap: the classpath
+ * fingerprint and the cache key, which hash the source and stat the
+ * classpath entries, are computed on first use, on the worker.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class ParseRequest {
+
+    private final String source;
+    private final LanguageVersion languageVersion;
+    private final List<ClasspathEntry> classpath;
+    private final Duration budget;
+
+    // computed lazily, off the JavaFX thread
+    private String classpathFingerprint;
+    private AstCache.Key cacheKey;
+
+
+    /**
+     * @param budget Maximum duration of the parse
+     */
+    public ParseRequest(String source, LanguageVersion languageVersion, List<ClasspathEntry> classpath, Duration budget) {
+        this.source = source;
+        this.languageVersion = languageVersion;
+        this.classpath = Collections.unmodifiableList(new ArrayList<>(classpath));
+        this.budget = budget;
+    }
+
+
+    public String getSource() {
+        return source;
+    }
+
+
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+
+    public List<ClasspathEntry> getClasspath() {
+        return classpath;
+    }
+
+
+    /**
+     * See {@link ClasspathService#fingerprint(List)}. Computed on first
+     * call, which should not happen on the JavaFX thread.
+     */
+    public synchronized String getClasspathFingerprint() {
+        if (classpathFingerprint == null) {
+            // the fingerprint changes if a jar is rebuilt on disk
+            classpathFingerprint = ClasspathService.fingerprint(classpath);
+        }
+        return classpathFingerprint;
+    }
+
+
+    public Duration getBudget() {
+        return budget;
+    }
+
+
+    /**
+     * Identifies the result of this request, requests with the same key
+     * may share their result. Computed on first call, which should not
+     * happen on the JavaFX thread.
+     */
+    public synchronized AstCache.Key getCacheKey() {
+        if (cacheKey == null) {
+            cacheKey = AstCache.keyFor(source, languageVersion, getClasspathFingerprint());
+        }
+        return cacheKey;
+    }
+
+
+    /**
+     * Looks up the result of the request in the cache, and builds its
+     * timing record if it is found. The caller owns a reference to the
+     * session of the record, see {@link ParseTimingRecord#deliver(java.util.concurrent.CompletableFuture, java.util.concurrent.Executor)}.
+     * The lookup time includes hashing the source. Called on the worker.
+     */
+    @Nullable ParseTimingRecord lookup(@Nullable AstCache cache) {
+        if (cache == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        AstCache.Entry cached = cache.get(getCacheKey());
+        if (cached == null || !cached.getSession().retain()) {
+            // evicted in the meantime, and its session closed
+            return null;
+        }
+        Duration lookupTime = Duration.ofNanos(System.nanoTime() - start);
+        return ParseTimingRecord.of(cached.getRoot(), cached.getSession(), languageVersion, source.length(), cached.getNodeCount(), true, lookupTime);
+    }
+
+
+    /**
+     * Records the result of the request in the cache, if there is one,
+     * and builds its timing record. Called on the worker.
+     *
+     * @param session Session that parsed the tree. The reference of the caller is transferred to the record
+     */
+    ParseTimingRecord complete(Node root, Duration parseTime, ParseSession session, AstCache cache) {
+        long nodeCount = root.descendantsOrSelf().count();
+        if (cache != null) {
+            cache.put(getCacheKey(), session, root, nodeCount);
+        }
+        return ParseTimingRecord.of(root, session, languageVersion, source.length(), nodeCount, false, parseTime);
+    }
+}
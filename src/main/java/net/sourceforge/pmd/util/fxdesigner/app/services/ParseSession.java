@@ -0,0 +1,238 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.JvmLanguagePropertyBundle;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguagePropertyBundle;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.Parser.ParserTask;
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.ast.SemanticException;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.util.fxdesigner.model.ParseAbortedException;
+import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
+import net.sourceforge.pmd.util.fxdesigner.util.AuxLanguageRegistry;
+
+
+/**
+ * A long-lived parsing context for a language version and an auxclasspath.
+ * The language processors (and whatever they keep warm, eg the type system
+ * of the Java module) are created once and reused for every parse. A session
+ * can only parse with its own language version and classpath, see
+ * {@link #isCompatible(LanguageVersion, String)}. The class loader of the
+ * classpath is shared through the {@link ClasspathService}, sessions
+ * {@linkplain #open(LanguageVersion, List, String, ClasspathService) opened}
+ * with the service release it when they're closed.
+ *
+ * <p>The trees parsed by a session reference its language processors, so
+ * the session must stay open as long as one of its trees is in use. Sessions
+ * are reference counted: whoever holds on to a tree {@linkplain #retain() retains}
+ * its session, and {@linkplain #release() releases} it when it drops the tree.
+ * The opener holds the first reference. The session is closed when the last
+ * reference is released.
+ *
+ * <p>Like in a PMD run, several files may be parsed concurrently with
+ * the same session.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class ParseSession implements AutoCloseable {
+
+    private final LanguageVersion languageVersion;
+    private final String classpathFingerprint;
+    private final LanguageProcessorRegistry lpRegistry;
+    private final FileId fileId;
+    /** Releases the class loader, run once when the session is closed. */
+    private final Runnable onClose;
+    // guarded by this
+    private int references = 1;
+    private volatile boolean closed;
+
+
+    /**
+     * @param languageVersion      Language version to parse
+     * @param classpathFingerprint Fingerprint of the classpath, see {@link ClasspathService#fingerprint(java.util.List)}
+     * @param auxClassLoader       Class loader of the classpath, null if the classpath is empty
+     */
+    public ParseSession(LanguageVersion languageVersion, String classpathFingerprint, @Nullable ClassLoader auxClassLoader) {
+        this(languageVersion, classpathFingerprint, auxClassLoader, () -> {});
+    }
+
+
+    private ParseSession(LanguageVersion languageVersion, String classpathFingerprint, @Nullable ClassLoader auxClassLoader, Runnable onClose) {
+        this.languageVersion = languageVersion;
+        this.classpathFingerprint = classpathFingerprint;
+        this.lpRegistry = createRegistry(languageVersion, auxClassLoader);
+        this.fileId = FileId.fromPathLikeString("dummy." + languageVersion.getLanguage().getExtensions().get(0));
+        this.onClose = onClose;
+    }
+
+
+    /**
+     * Opens a session whose class loader is acquired from the classpath
+     * service, and released when the session is closed. This may take some
+     * time if the loader doesn't exist yet.
+     *
+     * @param classpathService Service of the app, if null the classpath is ignored
+     */
+    public static ParseSession open(LanguageVersion languageVersion,
+                                    List<ClasspathEntry> classpath,
+                                    String classpathFingerprint,
+                                    @Nullable ClasspathService classpathService) {
+        ClassLoader loader = classpathService == null ? null : classpathService.acquireClassLoader(classpath, classpathFingerprint);
+        if (loader == null) {
+            return new ParseSession(languageVersion, classpathFingerprint, null);
+        }
+        Runnable release = () -> classpathService.releaseClassLoader(loader);
+        try {
+            return new ParseSession(languageVersion, classpathFingerprint, loader, release);
+        } catch (RuntimeException | Error e) {
+            release.run();
+            throw e;
+        }
+    }
+
+
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+
+    /**
+     * Returns the registry of this session. It is valid until the session is closed.
+     */
+    public LanguageProcessorRegistry getLanguageProcessorRegistry() {
+        return lpRegistry;
+    }
+
+
+    /**
+     * Returns true if this session can be used to parse sources with the given parameters.
+     */
+    public boolean isCompatible(LanguageVersion version, String classpathFingerprint) {
+        return languageVersion.equals(version) && this.classpathFingerprint.equals(classpathFingerprint);
+    }
+
+
+    /**
+     * Parses the source with the processors of this session.
+     *
+     * @throws ParseAbortedException if parsing fails and cannot recover
+     */
+    public Node parse(String source) throws ParseAbortedException {
+        LanguageProcessor processor = lpRegistry.getProcessor(languageVersion.getLanguage());
+        // read-only string documents hold no resource, and the document
+        // must stay open as long as the tree is in use. They wrap the source
+        // without copying it, as long as its line terminators are normalized,
+        // which is the case of the text of the code area
+        TextDocument document = TextDocument.readOnlyString(source, fileId, languageVersion);
+        SemanticErrorReporter reporter = SemanticErrorReporter.reportToLogger(ASTManagerImpl.NOOP_REPORTER);
+        ParserTask task = new ParserTask(document, reporter, lpRegistry);
+
+        Node root;
+        try {
+            root = processor.services().getParser().parse(task);
+        } catch (Exception e) {
+            throw new ParseAbortedException(e);
+        }
+
+        // PMD aborts the processing of the file in that case, so do we
+        SemanticException semanticError = reporter.getFirstError();
+        if (semanticError != null) {
+            throw new ParseAbortedException(semanticError);
+        }
+        return root;
+    }
+
+
+    /**
+     * Returns true if this session was closed. The trees it parsed must
+     * not be handed out anymore, since their processors are closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+
+    /**
+     * Adds a reference to this session, which must be {@linkplain #release() released}
+     * later. Returns false if the session is already closed, in which case
+     * its trees must not be used.
+     */
+    public synchronized boolean retain() {
+        if (closed) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+
+    /**
+     * Releases a reference to this session. The session is closed when
+     * its last reference is released.
+     */
+    public void release() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            references--;
+            if (references > 0) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            lpRegistry.close();
+        } finally {
+            onClose.run();
+        }
+    }
+
+
+    /**
+     * Releases the reference of the opener, see {@link #release()}. The
+     * session stays open as long as other references are held.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+
+    private static LanguageProcessorRegistry createRegistry(LanguageVersion version, ClassLoader auxClassLoader) {
+        LanguageRegistry languages =
+            AuxLanguageRegistry.supportedLangs()
+                               .getDependenciesOf(version.getLanguage());
+
+        Map<Language, LanguagePropertyBundle> langProperties = new HashMap<>();
+        for (Language language : languages) {
+            LanguagePropertyBundle bundle = language.newPropertyBundle();
+            if (language.equals(version.getLanguage())) {
+                bundle.setLanguageVersion(version.getVersion());
+            }
+            if (auxClassLoader != null && bundle instanceof JvmLanguagePropertyBundle) {
+                ((JvmLanguagePropertyBundle) bundle).setClassLoader(auxClassLoader);
+            }
+            langProperties.put(language, bundle);
+        }
+
+        return LanguageProcessorRegistry.create(languages, langProperties, ASTManagerImpl.NOOP_REPORTER);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
+
+
+/**
+ * Keeps the {@link ParseSession}s of the most recent language versions
+ * and classpaths, so that they're shared by all the AST managers and
+ * parse workers of the app, and so that toggling between language versions
+ * doesn't set up a new session each time. Sessions are keyed by their
+ * language version and classpath fingerprint.
+ *
+ * <p>The service holds a reference to each of its sessions, and releases
+ * it when the session is evicted. An evicted session is only closed when
+ * the trees it parsed are not in use anymore, see {@link ParseSession#retain()}.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class ParseSessionService implements CloseableService {
+
+    /** Number of distinct language versions and classpaths whose session is kept. */
+    private static final int MAX_SESSIONS = 4;
+
+    private final @Nullable ClasspathService classpathService;
+    private final Map<SessionKey, ParseSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean closed;
+
+
+    /**
+     * @param classpathService Service of the app, if null the classpath is ignored
+     */
+    public ParseSessionService(@Nullable ClasspathService classpathService) {
+        this.classpathService = classpathService;
+    }
+
+
+    /**
+     * Returns a session that parses with the given parameters. The caller
+     * owns a reference to the session, which it must {@linkplain ParseSession#release() release}.
+     * This may be called on any thread, and may take some time if the session
+     * doesn't exist yet.
+     *
+     * @param classpathFingerprint Fingerprint of the classpath, see {@link ClasspathService#fingerprint(List)}
+     */
+    public synchronized ParseSession acquire(LanguageVersion languageVersion, List<ClasspathEntry> classpath, String classpathFingerprint) {
+        if (closed) {
+            throw new IllegalStateException("Service is closed");
+        }
+        SessionKey key = new SessionKey(languageVersion, classpathFingerprint);
+        ParseSession session = sessions.get(key);
+        if (session == null) {
+            // the reference of the opener is the one of this service
+            session = ParseSession.open(languageVersion, classpath, classpathFingerprint, classpathService);
+            sessions.put(key, session);
+
+            Iterator<ParseSession> iterator = sessions.values().iterator();
+            while (sessions.size() > MAX_SESSIONS && iterator.hasNext()) {
+                ParseSession evicted = iterator.next();
+                iterator.remove();
+                evicted.release();
+            }
+        }
+        // the service holds a reference, so this succeeds
+        session.retain();
+        return session;
+    }
+
+
+    /** Shortcut for {@link #acquire(LanguageVersion, List, String)}. */
+    public ParseSession acquire(ParseRequest request) {
+        return acquire(request.getLanguageVersion(), request.getClasspath(), request.getClasspathFingerprint());
+    }
+
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        sessions.values().forEach(ParseSession::release);
+        sessions.clear();
+    }
+
+
+    private static final class SessionKey {
+
+        private final LanguageVersion languageVersion;
+        private final String classpathFingerprint;
+
+
+        SessionKey(LanguageVersion languageVersion, String classpathFingerprint) {
+            this.languageVersion = languageVersion;
+            this.classpathFingerprint = classpathFingerprint;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SessionKey that = (SessionKey) o;
+            return languageVersion.equals(that.languageVersion)
+                && classpathFingerprint.equals(that.classpathFingerprint);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(languageVersion, classpathFingerprint);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+
+
+/**
+ * Timings of the phases that produce and display a compilation unit,
+ * published on the {@link ParseTimingService}. Records are immutable,
+ * phases measured later (eg by the tree view) produce a new record.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class ParseTimingRecord {
+
+    private final Node root;
+    private final ParseSession session;
+    private final LanguageVersion languageVersion;
+    private final int sourceLength;
+    private final long nodeCount;
+    private final boolean fromCache;
+    private final Map<Phase, Duration> phases;
+
+
+    private ParseTimingRecord(Node root, ParseSession session, LanguageVersion languageVersion, int sourceLength, long nodeCount, boolean fromCache, Map<Phase, Duration> phases) {
+        this.root = root;
+        this.session = session;
+        this.languageVersion = languageVersion;
+        this.sourceLength = sourceLength;
+        this.nodeCount = nodeCount;
+        this.fromCache = fromCache;
+        this.phases = Collections.unmodifiableMap(phases);
+    }
+
+
+    /**
+     * Creates a record for a compilation unit.
+     *
+     * @param session   Session that parsed the tree
+     * @param parseTime Duration of the {@link Phase#PARSE} phase
+     * @param fromCache Whether the tree was found in the {@link AstCache}, in which case the parse time is the lookup time
+     */
+    public static ParseTimingRecord of(Node root, ParseSession session, LanguageVersion languageVersion, int sourceLength, long nodeCount, boolean fromCache, Duration parseTime) {
+        Map<Phase, Duration> phases = new EnumMap<>(Phase.class);
+        phases.put(Phase.PARSE, parseTime);
+        return new ParseTimingRecord(root, session, languageVersion, sourceLength, nodeCount, fromCache, phases);
+    }
+
+
+    /** Returns a copy of this record with the given phase. */
+    public ParseTimingRecord withPhase(Phase phase, Duration duration) {
+        Map<Phase, Duration> newPhases = new EnumMap<>(Phase.class);
+        newPhases.putAll(phases);
+        newPhases.put(phase, duration);
+        return new ParseTimingRecord(root, session, languageVersion, sourceLength, nodeCount, fromCache, newPhases);
+    }
+
+
+    /**
+     * Completes the future with this record. The caller holds a reference
+     * to the session of the tree, which is released once the JavaFX thread
+     * has run the tasks that the dependents of the future posted, so that
+     * a consumer on the JavaFX thread gets a chance to retain the session
+     * first. Consumers on other threads must retain it synchronously, in
+     * their dependent stage.
+     */
+    void deliver(CompletableFuture<ParseTimingRecord> future, Executor fxThread) {
+        if (!future.complete(this)) {
+            session.release();
+            return;
+        }
+        try {
+            fxThread.execute(session::release);
+        } catch (RuntimeException e) {
+            // the toolkit is gone
+            session.release();
+        }
+    }
+
+
+    /** The compilation unit. */
+    public Node getRoot() {
+        return root;
+    }
+
+
+    /**
+     * Session that parsed the tree. The tree may only be kept if the
+     * session is {@linkplain ParseSession#retain() retained}.
+     */
+    public ParseSession getSession() {
+        return session;
+    }
+
+
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+
+    /** Length of the source in chars. */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+
+    /** Number of nodes in the tree. */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+
+    /** Whether the tree was taken from the {@link AstCache}. */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+
+    /** Durations of the phases measured so far. */
+    public Map<Phase, Duration> getPhases() {
+        return phases;
+    }
+
+
+    public Duration getTotalTime() {
+        return phases.values().stream().reduce(Duration.ZERO, Duration::plus);
+    }
+
+
+    /** One-line summary, for the status bar. */
+    public String getSummary() {
+        String phaseTimes = phases.entrySet().stream()
+                                  .map(e -> e.getKey().getDisplayName() + " " + e.getValue().toMillis() + " ms")
+                                  .collect(Collectors.joining(", "));
+        return languageVersion.getName() + ": " + nodeCount + " nodes, " + phaseTimes + (fromCache ? " (cached)" : "");
+    }
+
+
+    @Override
+    public String toString() {
+        return "ParseTimingRecord{" + getSummary() + ", " + sourceLength + " chars}";
+    }
+
+
+    /**
+     * Phases of the production of a tree.
+     */
+    public enum Phase {
+        /**
+         * Parsing, including the language processing passes (eg symbol
+         * table and type resolution), which PMD runs as part of the parser
+         * and cannot be timed separately.
+         */
+        PARSE("parse"),
+        /** Displaying the tree in the tree view, including the diff with the previous tree. */
+        TREE_BUILD("tree view");
+
+        private final String displayName;
+
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+}
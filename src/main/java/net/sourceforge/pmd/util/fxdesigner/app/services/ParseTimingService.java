@@ -0,0 +1,61 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.time.Duration;
+
+import org.reactfx.EventSource;
+import org.reactfx.EventStream;
+import org.reactfx.value.Val;
+import org.reactfx.value.Var;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseTimingRecord.Phase;
+
+
+/**
+ * Collects the timings of the compilation units of the main editor, to
+ * tell whether a slow editor comes from PMD or from the designer. Must
+ * be used on the JavaFX thread.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class ParseTimingService {
+
+    private final Var<ParseTimingRecord> latestRecord = Var.newSimpleVar(null);
+    private final EventSource<ParseTimingRecord> records = new EventSource<>();
+
+
+    /** Publishes the record of a new compilation unit. */
+    public void publish(ParseTimingRecord record) {
+        latestRecord.setValue(record);
+        records.push(record);
+    }
+
+
+    /**
+     * Adds a phase to the record of the given compilation unit.
+     * Ignored if the root is not the one of the latest record.
+     */
+    public void recordPhase(Node root, Phase phase, Duration duration) {
+        ParseTimingRecord latest = latestRecord.getValue();
+        if (latest != null && latest.getRoot() == root) {
+            publish(latest.withPhase(phase, duration));
+        }
+    }
+
+
+    /** Latest record, updated when a phase is added. */
+    public Val<ParseTimingRecord> latestRecordProperty() {
+        return latestRecord;
+    }
+
+
+    /** Stream of all published records, including updates. */
+    public EventStream<ParseTimingRecord> records() {
+        return records;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
+import net.sourceforge.pmd.util.fxdesigner.model.ParseAbortedException;
+
+import javafx.application.Platform;
+
+
+/**
+ * A bounded pool of parse workers shared by the secondary AST managers
+ * of the app, eg those of the test cases. Requests for the same source,
+ * language version and classpath that are pending or running at the same
+ * time share a single parse. The most recent requests are served first.
+ * Parse sessions come from the {@link ParseSessionService} and are shared
+ * by all workers, since PMD language processors may parse several files
+ * concurrently.
+ *
+ * <p>The tree of a result is only guaranteed to stay valid until the
+ * JavaFX thread has run the tasks posted by the dependents of the future.
+ * A consumer that keeps it must {@linkplain ParseSession#retain() retain}
+ * its session by then.
+ *
+ * <p>A parse that exceeds its budget is abandoned: its worker no longer
+ * counts against the bound, and a new thread takes its place.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class ParseWorkerPool implements CloseableService {
+
+    private final DesignerRoot designerRoot;
+    private final int maxWorkers;
+    /** Executor of the JavaFX thread, on which results are consumed. */
+    private final Executor fxThread;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    /** Looks up the cache, which hashes the source. Bounded, unlike the workers. */
+    private final ExecutorService lookups;
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Parse-worker-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Parse-worker-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // all of those are guarded by this
+    private final Deque<Job> pending = new ArrayDeque<>();
+    private final Map<AstCache.Key, Job> jobsByKey = new HashMap<>();
+    private int running;
+    private boolean closed;
+
+
+    public ParseWorkerPool(DesignerRoot designerRoot) {
+        this(designerRoot, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), Platform::runLater);
+    }
+
+
+    /**
+     * @param fxThread Executor of the thread on which results are consumed
+     */
+    public ParseWorkerPool(DesignerRoot designerRoot, int maxWorkers, Executor fxThread) {
+        this.designerRoot = designerRoot;
+        this.maxWorkers = maxWorkers;
+        this.fxThread = fxThread;
+        this.lookups = Executors.newFixedThreadPool(Math.min(2, maxWorkers), r -> {
+            Thread thread = new Thread(r, "Parse-cache-lookup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Submits a parse. The returned future may be cancelled, in which case
+     * the parse is dropped if it hasn't started and no one else waits for it.
+     * The future completes exceptionally with a {@link ParseAbortedException}
+     * if the parse fails. The {@link AstCache} is looked up first, off the
+     * calling thread and on a small fixed number of threads, so this can be
+     * called on the JavaFX thread for many requests at once.
+     */
+    public CompletableFuture<ParseTimingRecord> submit(ParseRequest request) {
+        CompletableFuture<ParseTimingRecord> mine = new CompletableFuture<>();
+        try {
+            // the cache key hashes the source and stats the classpath
+            lookups.execute(() -> {
+                if (mine.isDone()) {
+                    // cancelled in the meantime
+                    return;
+                }
+                ParseTimingRecord cached;
+                try {
+                    cached = request.lookup(designerRoot.getService(DesignerRoot.AST_CACHE));
+                } catch (Throwable e) {
+                    mine.completeExceptionally(e);
+                    return;
+                }
+                if (cached != null) {
+                    cached.deliver(mine, fxThread);
+                } else {
+                    enqueue(request, mine);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            mine.cancel(false);
+        }
+        return mine;
+    }
+
+
+    private synchronized void enqueue(ParseRequest request, CompletableFuture<ParseTimingRecord> mine) {
+        if (closed) {
+            mine.cancel(false);
+            return;
+        }
+
+        Job job = jobsByKey.get(request.getCacheKey());
+        if (job == null) {
+            job = new Job(request);
+            jobsByKey.put(request.getCacheKey(), job);
+        } else {
+            // moved to the front
+            pending.remove(job);
+        }
+        if (!job.started) {
+            pending.addFirst(job);
+        }
+        job.interested++;
+
+        Job theJob = job;
+        job.result.whenComplete((r, e) -> {
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(r);
+            }
+        });
+        mine.whenComplete((r, e) -> {
+            if (mine.isCancelled()) {
+                lostInterest(theJob);
+            }
+        });
+
+        dispatch();
+    }
+
+
+    private synchronized void lostInterest(Job job) {
+        job.interested--;
+        if (job.interested == 0 && !job.started) {
+            pending.remove(job);
+            jobsByKey.remove(job.request.getCacheKey(), job);
+            job.result.cancel(false);
+        }
+    }
+
+
+    private synchronized void dispatch() {
+        while (!closed && running < maxWorkers && !pending.isEmpty()) {
+            Job job = pending.pollFirst();
+            job.started = true;
+            running++;
+            workers.execute(job);
+        }
+    }
+
+
+    private void release(Job job) {
+        synchronized (this) {
+            running--;
+            jobsByKey.remove(job.request.getCacheKey(), job);
+        }
+        dispatch();
+    }
+
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Job job : pending) {
+                job.result.cancel(false);
+            }
+            pending.clear();
+            jobsByKey.clear();
+        }
+        lookups.shutdownNow();
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+
+    private final class Job implements Runnable {
+
+        private final ParseRequest request;
+        private final CompletableFuture<ParseTimingRecord> result = new CompletableFuture<>();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        // guarded by the pool
+        private int interested;
+        private boolean started;
+
+
+        Job(ParseRequest request) {
+            this.request = request;
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                ParseSession session = designerRoot.getService(DesignerRoot.PARSE_SESSIONS).acquire(request);
+
+                Thread worker = Thread.currentThread();
+                long start = System.nanoTime();
+                Duration budget = request.getBudget();
+                ScheduledFuture<?> timeout = watchdog.schedule(() -> abandon(worker, budget, start), budget.toNanos(), TimeUnit.NANOSECONDS);
+
+                ParseTimingRecord record;
+                try {
+                    Node root = session.parse(request.getSource());
+                    Duration parseTime = Duration.ofNanos(System.nanoTime() - start);
+                    record = request.complete(root, parseTime, session, designerRoot.getService(DesignerRoot.AST_CACHE));
+                } catch (Throwable e) {
+                    session.release();
+                    throw e;
+                } finally {
+                    timeout.cancel(false);
+                }
+                // the reference to the session is handed to the record
+                record.deliver(result, fxThread);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                releaseOnce();
+            }
+        }
+
+
+        /**
+         * The parse took too long. Its worker is left to its fate and stops
+         * counting against the bound of the pool. Called by the watchdog.
+         */
+        private void abandon(Thread worker, Duration budget, long start) {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            if (result.completeExceptionally(ParseAbortedException.timeout(budget, elapsed))) {
+                worker.interrupt();
+                releaseOnce();
+            }
+        }
+
+
+        private void releaseOnce() {
+            if (released.compareAndSet(false, true)) {
+                release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
+import net.sourceforge.pmd.util.fxdesigner.model.VersionedXPathQuery;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathEvaluator;
+
+
+/**
+ * A bounded pool of threads that evaluate XPath queries off the JavaFX
+ * thread, shared by all the rule editors and test cases of the app.
+ * Evaluations use the {@link XPathQueryCache} of the app, and the
+ * {@link NodeKindIndexService} if the compilation unit is indexed.
+ *
+ * <p>Measurements, eg benchmarks, run on a separate thread of low priority,
+ * one at a time, so that they don't hold up live evaluations.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class XPathEvaluationPool implements CloseableService {
+
+    private final DesignerRoot designerRoot;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService workers;
+    private final ExecutorService measurements = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "XPath-measurement");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+
+    public XPathEvaluationPool(DesignerRoot designerRoot) {
+        this(designerRoot, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+
+    public XPathEvaluationPool(DesignerRoot designerRoot, int maxWorkers) {
+        this.designerRoot = designerRoot;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            maxWorkers, maxWorkers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "XPath-evaluator-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        this.workers = executor;
+    }
+
+
+    /**
+     * Evaluates a query on a compilation unit. The parameters must not be
+     * mutated by the caller afterwards. Cancelling the returned future
+     * drops the evaluation if it hasn't started yet, and interrupts it
+     * otherwise. The future completes exceptionally with an
+     * {@link net.sourceforge.pmd.util.fxdesigner.model.XPathEvaluationException}
+     * if the evaluation fails.
+     */
+    public CompletableFuture<List<Node>> submit(Node compilationUnit, VersionedXPathQuery query, Map<String, String> propertyValues) {
+        XPathQueryCache cache = designerRoot.getService(DesignerRoot.XPATH_QUERY_CACHE);
+        NodeKindIndexService indexer = designerRoot.getService(DesignerRoot.NODE_KIND_INDEX);
+        return submit(() -> XPathEvaluator.evaluateQuery(compilationUnit,
+                                                         query.getVersion(),
+                                                         query.getExpression(),
+                                                         propertyValues,
+                                                         query.getDefinedProperties(),
+                                                         cache,
+                                                         // the index is used if it's been built in the meantime
+                                                         indexer == null ? null : indexer.getIfReady(compilationUnit)));
+    }
+
+
+    /**
+     * Runs some other XPath related task, with the same cancellation
+     * semantics as {@link #submit(Node, VersionedXPathQuery, Map)}.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(workers, task);
+    }
+
+
+    /**
+     * Runs a measurement, eg profiling or benchmarking, after the previous
+     * ones. Measurements should have a time limit, and hold the lock of the
+     * tree only for one evaluation at a time. Cancelling the returned future
+     * interrupts the measurement, which should stop at its next evaluation.
+     */
+    public <T> CompletableFuture<T> submitMeasurement(Callable<T> task) {
+        return submit(measurements, task);
+    }
+
+
+    private static <T> CompletableFuture<T> submit(ExecutorService executor, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        Future<?> job;
+        try {
+            job = executor.submit(() -> {
+                if (result.isDone()) {
+                    // cancelled while pending
+                    return;
+                }
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            result.cancel(false);
+            return result;
+        }
+
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                job.cancel(true);
+            }
+        });
+        return result;
+    }
+
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        measurements.shutdownNow();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery; // NOPMD
+import net.sourceforge.pmd.util.fxdesigner.model.PropertyDescriptorSpec;
+import net.sourceforge.pmd.util.fxdesigner.util.WeightedLruCache;
+
+
+/**
+ * Caches the compiled XPath queries of the app, so that refreshing the
+ * results of a rule (new AST, new test case) only evaluates the query
+ * and doesn't compile it again. Queries are addressed by their expression,
+ * XPath version, the values of their properties and the XPath handler of
+ * the language, which provides the functions of the language.
+ *
+ * <p>A compiled query is not thread-safe, callers must synchronize on it
+ * while they evaluate it.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class XPathQueryCache {
+
+    private static final int MAX_ENTRIES = 128;
+
+    // all queries weigh the same
+    private final WeightedLruCache<Key, SaxonXPathRuleQuery> cache =
+        new WeightedLruCache<>(MAX_ENTRIES, MAX_ENTRIES, q -> 1);
+
+
+    /**
+     * Returns the compiled query for the key, compiling it if it's not
+     * cached. Compilation errors are propagated and not cached.
+     */
+    public SaxonXPathRuleQuery getOrCompile(Key key, Supplier<SaxonXPathRuleQuery> compiler) {
+        SaxonXPathRuleQuery query = cache.get(key);
+        if (query == null) {
+            // two threads may compile the same query, which is harmless
+            query = compiler.get();
+            cache.put(key, query);
+        }
+        return query;
+    }
+
+
+    public void clear() {
+        cache.clear();
+    }
+
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+
+    @Override
+    public String toString() {
+        return "XPathQueryCache(" + cache + ")";
+    }
+
+
+    /**
+     * Builds the key of a query. Properties that have no value in the
+     * map take their default value.
+     *
+     * @param propertyValues Values of the properties, by name
+     * @param properties     Properties declared by the query
+     */
+    public static Key keyFor(String expression,
+                             XPathVersion version,
+                             Map<String, String> propertyValues,
+                             List<PropertyDescriptorSpec> properties,
+                             XPathHandler handler) {
+        List<String> props = new ArrayList<>(properties.size() * 3);
+        for (PropertyDescriptorSpec spec : properties) {
+            props.add(spec.getName());
+            props.add(String.valueOf(spec.getTypeId()));
+            props.add(propertyValues.getOrDefault(spec.getName(), spec.getValue()));
+        }
+        return new Key(expression, version, Collections.unmodifiableList(props), handler);
+    }
+
+
+    /**
+     * Identifies a compiled query.
+     */
+    public static final class Key {
+
+        private final String expression;
+        private final XPathVersion version;
+        /** Flattened name, type and value of each property. */
+        private final List<String> properties;
+        /** Compared by identity, there is one per language processor. */
+        private final XPathHandler handler;
+        private final int hashCode;
+
+
+        Key(String expression, XPathVersion version, List<String> properties, XPathHandler handler) {
+            this.expression = expression;
+            this.version = version;
+            this.properties = properties;
+            this.handler = handler;
+            this.hashCode = Objects.hash(expression, version, properties, System.identityHashCode(handler));
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                && handler == key.handler
+                && version == key.version
+                && expression.equals(key.expression)
+                && properties.equals(key.properties);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
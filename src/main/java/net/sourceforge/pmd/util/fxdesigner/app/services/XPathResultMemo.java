@@ -0,0 +1,175 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.model.VersionedXPathQuery;
+import net.sourceforge.pmd.util.fxdesigner.util.WeightedLruCache;
+
+
+/**
+ * Remembers the results of the latest XPath evaluations, so that an
+ * evaluation whose inputs didn't change is not performed again. The inputs
+ * are fingerprinted by {@link #fingerprint(Node, VersionedXPathQuery, Map)}.
+ * Since the {@link AstCache} hands out the same compilation unit for the
+ * same source, this also covers going back to a previous source, or
+ * switching test cases. The weight of an entry is its number of results.
+ *
+ * <p>Entries retain their tree. If the memo is backed by an {@link AstCache},
+ * only the results on trees held by the cache are memoized, and they're
+ * dropped when the cache evicts the tree. The memo is thus bounded by the
+ * cache in terms of retained trees.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class XPathResultMemo {
+
+    private static final int MAX_ENTRIES = 32;
+    private static final long MAX_RESULTS = 1_000_000;
+
+    private final WeightedLruCache<Fingerprint, List<Node>> results =
+        new WeightedLruCache<>(MAX_ENTRIES, MAX_RESULTS, r -> r.size() + 1);
+
+    private final AtomicLong savedEvaluations = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+
+    private final @Nullable AstCache astCache;
+
+
+    /** Creates a memo that may retain as many trees as it has entries. */
+    public XPathResultMemo() {
+        this(null);
+    }
+
+
+    /**
+     * Creates a memo that only retains the trees of the given cache.
+     */
+    public XPathResultMemo(@Nullable AstCache astCache) {
+        this.astCache = astCache;
+        if (astCache != null) {
+            astCache.addRemovalListener(root -> results.removeIf((fingerprint, r) -> fingerprint.root == root));
+        }
+    }
+
+
+    /**
+     * Fingerprints the inputs of an evaluation: the identity of the root,
+     * and the expression, version, properties and property values of the
+     * query.
+     */
+    public static Fingerprint fingerprint(Node root, VersionedXPathQuery query, Map<String, String> propertyValues) {
+        XPathQueryCache.Key queryKey = XPathQueryCache.keyFor(query.getExpression(),
+                                                              query.getVersion(),
+                                                              propertyValues,
+                                                              query.getDefinedProperties(),
+                                                              root.getAstInfo().getLanguageProcessor().services().getXPathHandler());
+        return new Fingerprint(root, queryKey);
+    }
+
+
+    /**
+     * Returns the results of a previous evaluation with the same inputs,
+     * or null if there is none. A non-null result counts as a saved evaluation.
+     */
+    public @Nullable List<Node> get(Fingerprint fingerprint) {
+        List<Node> memoized = results.get(fingerprint);
+        if (memoized != null) {
+            savedEvaluations.incrementAndGet();
+        }
+        return memoized;
+    }
+
+
+    /**
+     * Records the results of an evaluation. They're not recorded if the
+     * tree is not held by the {@link AstCache} of this memo.
+     */
+    public void put(Fingerprint fingerprint, List<Node> evaluated) {
+        if (astCache != null && !astCache.containsRoot(fingerprint.root)) {
+            return;
+        }
+        results.put(fingerprint, evaluated);
+        if (astCache != null && !astCache.containsRoot(fingerprint.root)) {
+            // evicted in the meantime
+            results.remove(fingerprint);
+        }
+    }
+
+
+    /**
+     * Records an evaluation that was skipped because its inputs are the
+     * same as those of the evaluation that is displayed or pending.
+     */
+    public void recordSkipped() {
+        savedEvaluations.incrementAndGet();
+    }
+
+
+    /** Records an evaluation that was actually performed. */
+    public void recordEvaluation() {
+        evaluations.incrementAndGet();
+    }
+
+
+    /** Number of evaluations that were avoided. */
+    public long getSavedEvaluations() {
+        return savedEvaluations.get();
+    }
+
+
+    /** Number of evaluations that were performed. */
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return "XPathResultMemo(saved=" + getSavedEvaluations() + ", evaluated=" + getEvaluations() + ", " + results + ")";
+    }
+
+
+    /**
+     * Inputs of an evaluation. The root is compared by identity.
+     */
+    public static final class Fingerprint {
+
+        private final Node root;
+        private final XPathQueryCache.Key queryKey;
+
+
+        Fingerprint(Node root, XPathQueryCache.Key queryKey) {
+            this.root = root;
+            this.queryKey = queryKey;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Fingerprint that = (Fingerprint) o;
+            return root == that.root && queryKey.equals(that.queryKey);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(root) + queryKey.hashCode();
+        }
+    }
+}
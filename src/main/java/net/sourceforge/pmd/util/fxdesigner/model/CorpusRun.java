@@ -0,0 +1,406 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ClasspathService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSession;
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSessionService;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathQueryCache;
+import net.sourceforge.pmd.util.fxdesigner.popups.ClasspathEntry;
+import net.sourceforge.pmd.util.fxdesigner.util.ResourceUtil;
+
+
+/**
+ * Evaluates a query on every file of a directory, to get an idea of the
+ * number of matches and of the cost of a rule on a real codebase. Files
+ * are parsed with a {@link ParseSession} of the {@link ParseSessionService}
+ * and evaluated in parallel on a fork-join pool. Only the statistics of a
+ * file are kept: its tree is dropped as soon as it's evaluated, so that at
+ * most one tree per worker is alive at any time.
+ *
+ * <p>Like in the AST managers, the parse of a file that exceeds the parse
+ * budget is abandoned: its thread is left to finish on its own, and the
+ * file is reported as failed.
+ *
+ * <p>The {@link Listener} is notified on the workers, as files are
+ * processed. A run may be {@linkplain #cancel() cancelled}, in which
+ * case the parses in progress are abandoned, and the remaining files
+ * are skipped.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class CorpusRun {
+
+    private final Path directory;
+    private final LanguageVersion languageVersion;
+    private final List<ClasspathEntry> classpath;
+    private final @Nullable ParseSessionService sessionService;
+    private final Duration parseBudget;
+    private final XPathVersion xpathVersion;
+    private final String expression;
+    private final Map<String, String> propertyValues;
+    private final List<PropertyDescriptorSpec> properties;
+    private final Listener listener;
+    private final ForkJoinPool pool;
+    /** Runs the parses, so that those that exceed their budget can be abandoned. */
+    private final ExecutorService parsers;
+    private final Set<Future<Node>> runningParses = ConcurrentHashMap.newKeySet();
+    /**
+     * Compiled queries are not thread-safe, so each worker compiles its
+     * own. The workers are discarded with the run.
+     */
+    private final ThreadLocal<XPathQueryCache> queryCaches = ThreadLocal.withInitial(XPathQueryCache::new);
+
+    /** Set by {@link #run()}, once the session is acquired. */
+    private volatile ParseSession session;
+    private volatile boolean cancelled;
+
+
+    private CorpusRun(Path directory,
+                      LanguageVersion languageVersion,
+                      List<ClasspathEntry> classpath,
+                      @Nullable ParseSessionService sessionService,
+                      Duration parseBudget,
+                      XPathVersion xpathVersion,
+                      String expression,
+                      Map<String, String> propertyValues,
+                      List<PropertyDescriptorSpec> properties,
+                      int parallelism,
+                      Listener listener) {
+        this.directory = directory;
+        this.languageVersion = languageVersion;
+        this.classpath = classpath;
+        this.sessionService = sessionService;
+        this.parseBudget = parseBudget;
+        this.xpathVersion = xpathVersion;
+        this.expression = expression;
+        this.propertyValues = propertyValues;
+        this.properties = properties;
+        this.listener = listener;
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("Corpus-run-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        AtomicInteger parserCount = new AtomicInteger();
+        this.parsers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Corpus-run-parser-" + parserCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Starts a run in the background. The parameters must not be modified
+     * during the run. The parse session is acquired in the background too,
+     * since that stats the classpath and may build its class loader.
+     *
+     * @param directory      Root of the files to evaluate. Only files with an extension of the language are considered
+     * @param sessionService Service of the app, if null a session is opened for the run
+     * @param parseBudget    Maximum duration of the parse of a file
+     * @param listener       Notified on the workers
+     */
+    public static CorpusRun start(Path directory,
+                                  LanguageVersion languageVersion,
+                                  List<ClasspathEntry> classpath,
+                                  @Nullable ParseSessionService sessionService,
+                                  Duration parseBudget,
+                                  XPathVersion xpathVersion,
+                                  String expression,
+                                  Map<String, String> propertyValues,
+                                  List<PropertyDescriptorSpec> properties,
+                                  Listener listener) {
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        CorpusRun run = new CorpusRun(directory, languageVersion, classpath, sessionService, parseBudget,
+                                      xpathVersion, expression, propertyValues, properties, parallelism, listener);
+        run.pool.execute(run::run);
+        return run;
+    }
+
+
+    /** Abandons the parses in progress, and skips the files that haven't started processing yet. */
+    public void cancel() {
+        cancelled = true;
+        runningParses.forEach(f -> f.cancel(true));
+    }
+
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+
+    private void run() {
+        Exception failure = null;
+        try {
+            String fingerprint = ClasspathService.fingerprint(classpath);
+            session = sessionService != null ? sessionService.acquire(languageVersion, classpath, fingerprint)
+                                             : ParseSession.open(languageVersion, classpath, fingerprint, null);
+            List<Path> files = findFiles();
+            listener.filesFound(files.size());
+            if (!files.isEmpty()) {
+                // we're on a worker of the pool, the subtasks are forked there
+                new FileRange(files, 0, files.size()).invoke();
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        } finally {
+            if (session != null) {
+                // abandoned parses hold their own reference
+                session.release();
+            }
+            parsers.shutdown();
+            pool.shutdown();
+            listener.finished(failure);
+        }
+    }
+
+
+    private List<Path> findFiles() throws IOException {
+        Set<String> extensions = new HashSet<>(languageVersion.getLanguage().getExtensions());
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                        .filter(p -> extensions.contains(extensionOf(p)))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+
+    private static String extensionOf(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1);
+    }
+
+
+    /** Returns null if the run was cancelled during the parse. */
+    private @Nullable FileResult process(Path file) {
+        Path relative = directory.relativize(file);
+
+        String source;
+        try {
+            // line terminators are normalized like in the code area
+            source = ResourceUtil.readFile(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return FileResult.failed(relative, 0, Duration.ZERO, "Cannot read file: " + e.getMessage());
+        }
+
+        long start = System.nanoTime();
+        Node root;
+        try {
+            root = parseWithinBudget(source);
+        } catch (ParseAbortedException e) {
+            return FileResult.failed(relative, source.length(), Duration.ofNanos(System.nanoTime() - start),
+                                     "Parse error: " + e.getMessage());
+        } catch (CancellationException e) {
+            return null;
+        }
+        Duration parseTime = Duration.ofNanos(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        try {
+            List<Node> results = XPathEvaluator.evaluateQuery(root, xpathVersion, expression, propertyValues, properties, queryCaches.get());
+            return new FileResult(relative, source.length(), results.size(), parseTime, Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (XPathEvaluationException e) {
+            return FileResult.failed(relative, source.length(), parseTime, "XPath error: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Parses the source on a parser thread, and waits for it at most for
+     * the parse budget. If the budget is exceeded, the parse is abandoned
+     * along with its thread, since parsers generally don't respond to
+     * interruption.
+     *
+     * @throws ParseAbortedException If the parse fails or times out
+     * @throws CancellationException If the run is cancelled
+     */
+    private Node parseWithinBudget(String source) throws ParseAbortedException {
+        ParseSession session = this.session;
+        long start = System.nanoTime();
+        Future<Node> future = parsers.submit(() -> {
+            // the parse may outlive the run if it's abandoned
+            if (!session.retain()) {
+                throw new CancellationException();
+            }
+            try {
+                return session.parse(source);
+            } finally {
+                session.release();
+            }
+        });
+        runningParses.add(future);
+        try {
+            if (cancelled) {
+                future.cancel(true);
+            }
+            return future.get(parseBudget.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw ParseAbortedException.timeout(parseBudget, Duration.ofNanos(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParseAbortedException) {
+                throw (ParseAbortedException) cause;
+            } else if (cause instanceof CancellationException) {
+                throw (CancellationException) cause;
+            }
+            throw new ParseAbortedException(cause);
+        } finally {
+            runningParses.remove(future);
+        }
+    }
+
+
+    /** Processes a range of the files, splitting it between the workers. */
+    private final class FileRange extends RecursiveAction {
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+
+        FileRange(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            if (to - from == 1) {
+                FileResult result = process(files.get(from));
+                if (result != null) {
+                    listener.fileDone(result);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FileRange(files, from, middle), new FileRange(files, middle, to));
+        }
+    }
+
+
+    /** Receives the progress of a run. Called on the workers of the run. */
+    public interface Listener {
+
+        /** Called once, when the files to evaluate are known. */
+        void filesFound(int count);
+
+
+        /** Called when a file is processed, in no particular order. */
+        void fileDone(FileResult result);
+
+
+        /**
+         * Called once, at the end of the run, including when it is cancelled.
+         *
+         * @param failure Non-null if the directory couldn't be explored, or the parse session couldn't be set up
+         */
+        void finished(@Nullable Exception failure);
+    }
+
+
+    /** Statistics of a file. The tree of the file is not retained. */
+    public static final class FileResult {
+
+        private final Path file;
+        private final int length;
+        private final int hitCount;
+        private final Duration parseTime;
+        private final Duration evaluationTime;
+        private final @Nullable String error;
+
+
+        FileResult(Path file, int length, int hitCount, Duration parseTime, Duration evaluationTime, @Nullable String error) {
+            this.file = file;
+            this.length = length;
+            this.hitCount = hitCount;
+            this.parseTime = parseTime;
+            this.evaluationTime = evaluationTime;
+            this.error = error;
+        }
+
+
+        static FileResult failed(Path file, int length, Duration parseTime, String error) {
+            return new FileResult(file, length, 0, parseTime, Duration.ZERO, error);
+        }
+
+
+        /** Path of the file, relative to the directory of the run. */
+        public Path getFile() {
+            return file;
+        }
+
+
+        /** Length of the file, in characters. */
+        public int getLength() {
+            return length;
+        }
+
+
+        public int getHitCount() {
+            return hitCount;
+        }
+
+
+        public Duration getParseTime() {
+            return parseTime;
+        }
+
+
+        public Duration getEvaluationTime() {
+            return evaluationTime;
+        }
+
+
+        /** Reason why the file couldn't be evaluated, null if it was. */
+        public @Nullable String getError() {
+            return error;
+        }
+    }
+}
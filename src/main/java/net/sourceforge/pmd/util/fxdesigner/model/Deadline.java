@@ -0,0 +1,45 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model;
+
+import java.time.Duration;
+
+
+/**
+ * Time limit of a measurement, eg a benchmark. Saxon doesn't respond to
+ * interruption, so measurements check their deadline between two
+ * evaluations. A measurement whose thread is interrupted, ie that was
+ * cancelled, is also past its deadline.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+final class Deadline {
+
+    private final long deadline;
+
+
+    private Deadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+
+    /** Returns a deadline that passes after the given duration from now. */
+    static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+
+    /** Returns a deadline that is at most the given fraction of this one away from now. */
+    Deadline fraction(double fraction) {
+        long now = System.nanoTime();
+        return new Deadline(now + (long) (Math.max(0, deadline - now) * fraction));
+    }
+
+
+    boolean isPassed() {
+        return System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted();
+    }
+}
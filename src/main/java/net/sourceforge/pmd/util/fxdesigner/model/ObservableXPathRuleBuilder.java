@@ -5,6 +5,8 @@
 package net.sourceforge.pmd.util.fxdesigner.model;
 
 import org.reactfx.EventStream;
+import org.reactfx.collection.LiveArrayList;
+import org.reactfx.collection.LiveList;
 import org.reactfx.value.Var;
 
 import net.sourceforge.pmd.lang.rule.xpath.XPathRule;
@@ -21,9 +23,12 @@ import net.sourceforge.pmd.util.fxdesigner.util.reactfx.ObservableTickList;
  */
 public class ObservableXPathRuleBuilder extends ObservableRuleBuilder {
 
+    private static final int MAX_BENCHMARK_HISTORY = 10;
 
     private final Var<XPathVersion> xpathVersion = Var.newSimpleVar(XPathVersion.DEFAULT);
     private final Var<String> xpathExpression = Var.newSimpleVar("");
+    /** Benchmarks of this rule, most recent first. Not persisted. */
+    private final LiveList<XPathBenchmark> benchmarkHistory = new LiveArrayList<>();
 
 
     public ObservableXPathRuleBuilder() {
@@ -73,6 +78,23 @@ public class ObservableXPathRuleBuilder extends ObservableRuleBuilder {
     }
 
 
+    /**
+     * Benchmarks of the successive versions of this rule, most recent first.
+     * Only the latest few are kept.
+     */
+    public LiveList<XPathBenchmark> getBenchmarkHistory() {
+        return benchmarkHistory;
+    }
+
+
+    public void addBenchmark(XPathBenchmark benchmark) {
+        benchmarkHistory.add(0, benchmark);
+        if (benchmarkHistory.size() > MAX_BENCHMARK_HISTORY) {
+            benchmarkHistory.remove(MAX_BENCHMARK_HISTORY, benchmarkHistory.size());
+        }
+    }
+
+
     @Override
     protected ObservableRuleBuilder newBuilder() {
         return new ObservableXPathRuleBuilder();
@@ -4,13 +4,47 @@
 
 package net.sourceforge.pmd.util.fxdesigner.model;
 
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Exception during the parsing and visitors of the compilation units. Could be specialized into one exception per
  * visitor (eg type res).
  */
 public class ParseAbortedException extends Exception {
 
+    private final Duration elapsedTime;
+
     public ParseAbortedException(Throwable t) {
+        this(t, null);
+    }
+
+    public ParseAbortedException(Throwable t, Duration elapsedTime) {
         super(t);
+        this.elapsedTime = elapsedTime;
+    }
+
+    /**
+     * Time spent parsing before the parse was aborted, if known.
+     */
+    public Optional<Duration> getElapsedTime() {
+        return Optional.ofNullable(elapsedTime);
+    }
+
+    /**
+     * Returns true if the parse was abandoned because it exceeded its budget.
+     */
+    public boolean isTimeout() {
+        return getCause() instanceof TimeoutException;
+    }
+
+    /**
+     * Creates an exception for a parse that exceeded its budget and was abandoned.
+     */
+    public static ParseAbortedException timeout(Duration budget, Duration elapsedTime) {
+        TimeoutException cause = new TimeoutException(
+            "Parsing was abandoned after " + elapsedTime.toMillis() + " ms, the budget is " + budget.toMillis() + " ms");
+        return new ParseAbortedException(cause, elapsedTime);
     }
 }
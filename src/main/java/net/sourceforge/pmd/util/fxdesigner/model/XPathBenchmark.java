@@ -0,0 +1,242 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger; // NOPMD
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery; // NOPMD
+
+
+/**
+ * Result of a micro-benchmark of an XPath query on a tree. Use {@link #run}
+ * to benchmark a query: it is compiled once, evaluated a few times to warm
+ * up, and then timed. Allocations are measured with the {@link ThreadMXBean}
+ * of the JVM, if it supports it.
+ *
+ * <p>A benchmark is limited to {@link #MAX_RUN_TIME}, warm-up included,
+ * and stops at the first evaluation that ends after that. The tree is
+ * locked for one evaluation at a time, so that live evaluations on the
+ * same tree can run in between.
+ *
+ * <p>Running a benchmark blocks the calling thread, it must not be called
+ * on the JavaFX thread. Interrupting the thread stops the benchmark at the
+ * next evaluation.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathBenchmark {
+
+    public static final int DEFAULT_WARMUP_ITERATIONS = 20;
+    public static final int DEFAULT_ITERATIONS = 100;
+    /** Maximum duration of a benchmark, so that a slow query doesn't hang it. */
+    public static final Duration MAX_RUN_TIME = Duration.ofSeconds(10);
+    /** Share of the run time that the warm-up may use. */
+    private static final double MAX_WARMUP_SHARE = .25;
+
+    private final String expression;
+    private final XPathVersion version;
+    private final Instant timestamp;
+    private final int iterations;
+    private final int resultCount;
+    private final Duration mean;
+    private final Duration median;
+    private final Duration p99;
+    private final long allocatedBytes;
+
+
+    private XPathBenchmark(String expression, XPathVersion version, Instant timestamp, int iterations, int resultCount,
+                           Duration mean, Duration median, Duration p99, long allocatedBytes) {
+        this.expression = expression;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.iterations = iterations;
+        this.resultCount = resultCount;
+        this.mean = mean;
+        this.median = median;
+        this.p99 = p99;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+
+    public String getExpression() {
+        return expression;
+    }
+
+
+    public XPathVersion getVersion() {
+        return version;
+    }
+
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+
+    /** Number of timed iterations, may be lower than requested if the query is slow. */
+    public int getIterations() {
+        return iterations;
+    }
+
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+
+    public Duration getMean() {
+        return mean;
+    }
+
+
+    public Duration getMedian() {
+        return median;
+    }
+
+
+    public Duration getP99() {
+        return p99;
+    }
+
+
+    /** Mean number of bytes allocated by an evaluation, or -1 if the JVM can't measure it. */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+
+    /**
+     * Benchmarks a query on the given tree.
+     *
+     * @param compilationUnit AST root
+     * @param xpathVersion    XPath version
+     * @param xpathQuery      XPath query
+     * @param propertyValues  Values of the properties
+     * @param properties      Properties of the rule
+     * @param warmup          Number of evaluations before the measurement
+     * @param iterations      Number of timed evaluations
+     *
+     * @throws XPathEvaluationException if the query cannot be evaluated
+     */
+    public static XPathBenchmark run(Node compilationUnit,
+                                     XPathVersion xpathVersion,
+                                     String xpathQuery,
+                                     Map<String, String> propertyValues,
+                                     List<PropertyDescriptorSpec> properties,
+                                     int warmup,
+                                     int iterations) throws XPathEvaluationException {
+
+        XPathHandler handler = compilationUnit.getAstInfo().getLanguageProcessor().services().getXPathHandler();
+        AllocationCounter allocations = AllocationCounter.forCurrentThread();
+        Deadline deadline = Deadline.after(MAX_RUN_TIME);
+
+        try {
+            SaxonXPathRuleQuery query = XPathEvaluator.compile(xpathVersion, xpathQuery, propertyValues, properties, handler, DeprecatedAttrLogger.noop());
+
+            int resultCount = evaluate(query, compilationUnit).size();
+            Deadline warmupDeadline = deadline.fraction(MAX_WARMUP_SHARE);
+            for (int i = 0; i < warmup && !warmupDeadline.isPassed(); i++) {
+                evaluate(query, compilationUnit);
+            }
+
+            long[] times = new long[Math.max(iterations, 1)];
+            long allocatedBefore = allocations.get();
+            int done = 0;
+            // at least one timed evaluation
+            while (done < times.length && (done == 0 || !deadline.isPassed())) {
+                times[done++] = time(query, compilationUnit);
+            }
+            long allocated = allocations.get() - allocatedBefore;
+
+            long[] measured = Arrays.copyOf(times, done);
+            Arrays.sort(measured);
+            long sum = 0;
+            for (long t : measured) {
+                sum += t;
+            }
+
+            return new XPathBenchmark(
+                xpathQuery,
+                xpathVersion,
+                Instant.now(),
+                done,
+                resultCount,
+                Duration.ofNanos(sum / done),
+                Duration.ofNanos(measured[done / 2]),
+                Duration.ofNanos(measured[Math.min(done - 1, (int) Math.ceil(done * .99) - 1)]),
+                allocations.isSupported() ? allocated / done : -1
+            );
+        } catch (RuntimeException e) {
+            throw new XPathEvaluationException(e);
+        }
+    }
+
+
+    private static List<Node> evaluate(SaxonXPathRuleQuery query, Node root) {
+        // the Saxon tree cached on the root is not thread-safe
+        synchronized (root) {
+            return query.evaluate(root);
+        }
+    }
+
+
+    private static long time(SaxonXPathRuleQuery query, Node root) {
+        synchronized (root) {
+            long start = System.nanoTime();
+            query.evaluate(root);
+            return System.nanoTime() - start;
+        }
+    }
+
+
+    /** Reads the bytes allocated by a thread, if the JVM supports it. */
+    private static final class AllocationCounter {
+
+        private final com.sun.management.ThreadMXBean bean;
+        private final long threadId;
+
+
+        private AllocationCounter(com.sun.management.ThreadMXBean bean, long threadId) {
+            this.bean = bean;
+            this.threadId = threadId;
+        }
+
+
+        static AllocationCounter forCurrentThread() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported()) {
+                    if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                        sunBean.setThreadAllocatedMemoryEnabled(true);
+                    }
+                    return new AllocationCounter(sunBean, Thread.currentThread().getId());
+                }
+            }
+            return new AllocationCounter(null, -1);
+        }
+
+
+        boolean isSupported() {
+            return bean != null;
+        }
+
+
+        long get() {
+            return bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger; // NOPMD
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery; // NOPMD
+
+
+/**
+ * Compares the cost and the results of two formulations of a query, eg
+ * {@code //A[.//B]} and {@code //B/ancestor::A}, on one or more trees.
+ * Use {@link #compare} to run a comparison: both queries are evaluated
+ * alternately on all the trees, a number of times.
+ *
+ * <p>A comparison is limited to {@link #MAX_RUN_TIME}: once it's exceeded,
+ * the runs stop after the current one. The trees are locked for one
+ * evaluation at a time, so that live evaluations can run in between.
+ *
+ * <p>Running a comparison blocks the calling thread, it must not be
+ * called on the JavaFX thread. Interrupting the thread stops the
+ * comparison at the end of the current run.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathComparison {
+
+    public static final int DEFAULT_RUNS = 20;
+    /** Maximum duration of a comparison, so that a slow query doesn't hang it. */
+    public static final Duration MAX_RUN_TIME = Duration.ofSeconds(20);
+
+    private final String expressionA;
+    private final String expressionB;
+    private final int runs;
+    private final Distribution timesA;
+    private final Distribution timesB;
+    private final List<SubjectResult> subjects;
+
+
+    private XPathComparison(String expressionA, String expressionB, int runs, Distribution timesA, Distribution timesB, List<SubjectResult> subjects) {
+        this.expressionA = expressionA;
+        this.expressionB = expressionB;
+        this.runs = runs;
+        this.timesA = timesA;
+        this.timesB = timesB;
+        this.subjects = Collections.unmodifiableList(subjects);
+    }
+
+
+    public String getExpressionA() {
+        return expressionA;
+    }
+
+
+    public String getExpressionB() {
+        return expressionB;
+    }
+
+
+    /** Number of runs, may be lower than requested if the queries are slow. */
+    public int getRuns() {
+        return runs;
+    }
+
+
+    /** Distribution of the time taken by query A on all the subjects, per run. */
+    public Distribution getTimesA() {
+        return timesA;
+    }
+
+
+    /** Distribution of the time taken by query B on all the subjects, per run. */
+    public Distribution getTimesB() {
+        return timesB;
+    }
+
+
+    public List<SubjectResult> getSubjects() {
+        return subjects;
+    }
+
+
+    /** Whether both queries return the same nodes on all subjects. */
+    public boolean isEquivalent() {
+        return subjects.stream().allMatch(SubjectResult::isSameResults);
+    }
+
+
+    /**
+     * Compares two queries on some trees.
+     *
+     * @param subjects       Trees to evaluate the queries on, with a label
+     * @param xpathVersion   XPath version of both queries
+     * @param expressionA    First query
+     * @param expressionB    Second query
+     * @param propertyValues Values of the properties
+     * @param properties     Properties of the rule
+     * @param runs           Maximum number of timed evaluations of each query on each tree, after one warm-up evaluation
+     *
+     * @throws XPathEvaluationException if one of the queries cannot be evaluated
+     */
+    public static XPathComparison compare(List<Subject> subjects,
+                                          XPathVersion xpathVersion,
+                                          String expressionA,
+                                          String expressionB,
+                                          Map<String, String> propertyValues,
+                                          List<PropertyDescriptorSpec> properties,
+                                          int runs) throws XPathEvaluationException {
+
+        Deadline deadline = Deadline.after(MAX_RUN_TIME);
+        int n = subjects.size();
+        SaxonXPathRuleQuery[] queriesA = new SaxonXPathRuleQuery[n];
+        SaxonXPathRuleQuery[] queriesB = new SaxonXPathRuleQuery[n];
+        List<List<Node>> resultsA = new ArrayList<>(n);
+        List<List<Node>> resultsB = new ArrayList<>(n);
+        long[][] subjectTimesA = new long[n][runs];
+        long[][] subjectTimesB = new long[n][runs];
+        long[] totalTimesA = new long[runs];
+        long[] totalTimesB = new long[runs];
+        int done = 0;
+
+        try {
+            // queries are compiled for the XPath handler of each tree, which may differ
+            Map<XPathHandler, SaxonXPathRuleQuery[]> compiled = new IdentityHashMap<>();
+            for (int i = 0; i < n; i++) {
+                Node root = subjects.get(i).getRoot();
+                XPathHandler handler = root.getAstInfo().getLanguageProcessor().services().getXPathHandler();
+                SaxonXPathRuleQuery[] pair = compiled.computeIfAbsent(handler, h -> new SaxonXPathRuleQuery[] {
+                    XPathEvaluator.compile(xpathVersion, expressionA, propertyValues, properties, h, DeprecatedAttrLogger.noop()),
+                    XPathEvaluator.compile(xpathVersion, expressionB, propertyValues, properties, h, DeprecatedAttrLogger.noop()),
+                });
+                queriesA[i] = pair[0];
+                queriesB[i] = pair[1];
+
+                // the first evaluation also warms up the tree
+                resultsA.add(evaluate(queriesA[i], root));
+                resultsB.add(evaluate(queriesB[i], root));
+            }
+
+            for (int r = 0; r < runs && !deadline.isPassed(); r++) {
+                for (int i = 0; i < n; i++) {
+                    Node root = subjects.get(i).getRoot();
+                    // alternate the order, so that neither query benefits from the other's work
+                    if (r % 2 == 0) {
+                        subjectTimesA[i][r] = time(queriesA[i], root);
+                        subjectTimesB[i][r] = time(queriesB[i], root);
+                    } else {
+                        subjectTimesB[i][r] = time(queriesB[i], root);
+                        subjectTimesA[i][r] = time(queriesA[i], root);
+                    }
+                    totalTimesA[r] += subjectTimesA[i][r];
+                    totalTimesB[r] += subjectTimesB[i][r];
+                }
+                done++;
+            }
+        } catch (RuntimeException e) {
+            throw new XPathEvaluationException(e);
+        }
+
+        List<SubjectResult> subjectResults = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            subjectResults.add(new SubjectResult(subjects.get(i).getLabel(),
+                                                 resultsA.get(i),
+                                                 resultsB.get(i),
+                                                 Distribution.of(Arrays.copyOf(subjectTimesA[i], done)),
+                                                 Distribution.of(Arrays.copyOf(subjectTimesB[i], done))));
+        }
+
+        return new XPathComparison(expressionA, expressionB, done,
+                                   Distribution.of(Arrays.copyOf(totalTimesA, done)),
+                                   Distribution.of(Arrays.copyOf(totalTimesB, done)),
+                                   subjectResults);
+    }
+
+
+    private static List<Node> evaluate(SaxonXPathRuleQuery query, Node root) {
+        // the Saxon tree cached on the root is not thread-safe
+        synchronized (root) {
+            return query.evaluate(root);
+        }
+    }
+
+
+    private static long time(SaxonXPathRuleQuery query, Node root) {
+        synchronized (root) {
+            long start = System.nanoTime();
+            query.evaluate(root);
+            return System.nanoTime() - start;
+        }
+    }
+
+
+    /**
+     * A tree on which to compare the queries.
+     */
+    public static final class Subject {
+
+        private final String label;
+        private final Node root;
+
+
+        public Subject(String label, Node root) {
+            this.label = label;
+            this.root = root;
+        }
+
+
+        public String getLabel() {
+            return label;
+        }
+
+
+        public Node getRoot() {
+            return root;
+        }
+    }
+
+
+    /**
+     * Results of the comparison on one tree.
+     */
+    public static final class SubjectResult {
+
+        private final String label;
+        private final int countA;
+        private final int countB;
+        private final List<Node> onlyInA;
+        private final List<Node> onlyInB;
+        private final Distribution timesA;
+        private final Distribution timesB;
+
+
+        SubjectResult(String label, List<Node> resultsA, List<Node> resultsB, Distribution timesA, Distribution timesB) {
+            this.label = label;
+            this.countA = resultsA.size();
+            this.countB = resultsB.size();
+            this.onlyInA = difference(resultsA, resultsB);
+            this.onlyInB = difference(resultsB, resultsA);
+            this.timesA = timesA;
+            this.timesB = timesB;
+        }
+
+
+        private static List<Node> difference(List<Node> left, List<Node> right) {
+            Set<Node> rightSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            rightSet.addAll(right);
+            return Collections.unmodifiableList(left.stream().filter(it -> !rightSet.contains(it)).collect(Collectors.toList()));
+        }
+
+
+        public String getLabel() {
+            return label;
+        }
+
+
+        public int getCountA() {
+            return countA;
+        }
+
+
+        public int getCountB() {
+            return countB;
+        }
+
+
+        /** Nodes returned by query A but not by query B, in document order. */
+        public List<Node> getOnlyInA() {
+            return onlyInA;
+        }
+
+
+        /** Nodes returned by query B but not by query A, in document order. */
+        public List<Node> getOnlyInB() {
+            return onlyInB;
+        }
+
+
+        public boolean isSameResults() {
+            return onlyInA.isEmpty() && onlyInB.isEmpty();
+        }
+
+
+        public Distribution getTimesA() {
+            return timesA;
+        }
+
+
+        public Distribution getTimesB() {
+            return timesB;
+        }
+    }
+
+
+    /**
+     * Summary of a sample of durations.
+     */
+    public static final class Distribution {
+
+        private final Duration min;
+        private final Duration median;
+        private final Duration mean;
+        private final Duration p99;
+        private final Duration max;
+
+
+        private Distribution(Duration min, Duration median, Duration mean, Duration p99, Duration max) {
+            this.min = min;
+            this.median = median;
+            this.mean = mean;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+
+        static Distribution of(long[] nanos) {
+            if (nanos.length == 0) {
+                return new Distribution(Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+            }
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long t : sorted) {
+                sum += t;
+            }
+            int len = sorted.length;
+            return new Distribution(
+                Duration.ofNanos(sorted[0]),
+                Duration.ofNanos(sorted[len / 2]),
+                Duration.ofNanos(sum / len),
+                Duration.ofNanos(sorted[Math.min(len - 1, (int) Math.ceil(len * .99) - 1)]),
+                Duration.ofNanos(sorted[len - 1])
+            );
+        }
+
+
+        public Duration getMin() {
+            return min;
+        }
+
+
+        public Duration getMedian() {
+            return median;
+        }
+
+
+        public Duration getMean() {
+            return mean;
+        }
+
+
+        public Duration getP99() {
+            return p99;
+        }
+
+
+        public Duration getMax() {
+            return max;
+        }
+    }
+}
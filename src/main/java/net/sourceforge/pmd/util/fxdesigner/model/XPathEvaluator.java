@@ -7,20 +7,29 @@ package net.sourceforge.pmd.util.fxdesigner.model;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
 import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger; // NOPMD
 import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery; // NOPMD
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathEvaluationPool;
+import net.sourceforge.pmd.util.fxdesigner.app.services.XPathQueryCache;
+import net.sourceforge.pmd.util.fxdesigner.util.NodeKindIndex;
 
 
 /**
@@ -38,27 +47,37 @@ public final class XPathEvaluator {
 
     /**
      * Evaluates the query with default parameters on the global compilation
-     * unit and with the global language version. This method hides errors.
+     * unit and with the global language version, on the {@link XPathEvaluationPool}
+     * of the app. This method hides errors.
      *
-     * @return The results, or an empty list if there was an error
+     * @return The results, or an empty list if there was an error. The future
+     *     completes off the JavaFX thread, and cancelling it cancels the evaluation.
      */
-    public static List<Node> simpleEvaluate(DesignerRoot root, String query) {
-        return root.getService(DesignerRoot.AST_MANAGER)
-                   .compilationUnitProperty()
-                   .getOpt()
-                   .map(n -> {
-                       try {
-                           return evaluateQuery(n,
-                                                XPathVersion.DEFAULT,
-                                                query,
-                                                emptyMap(),
-                                                emptyList());
-                       } catch (XPathEvaluationException e) {
-                           e.printStackTrace();
-                           return Collections.<Node>emptyList();
-                       }
-                   })
-                   .orElse(Collections.emptyList());
+    public static CompletableFuture<List<Node>> simpleEvaluate(DesignerRoot root, String query) {
+        Node compilationUnit = root.getService(DesignerRoot.AST_MANAGER).compilationUnitProperty().getOrElse(null);
+        XPathEvaluationPool pool = root.getService(DesignerRoot.XPATH_EVALUATION_POOL);
+        if (compilationUnit == null || pool == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        CompletableFuture<List<Node>> result = pool.submit(compilationUnit,
+                                                           new VersionedXPathQuery(XPathVersion.DEFAULT, query, emptyList()),
+                                                           emptyMap());
+        CompletableFuture<List<Node>> hidden = result.handle((nodes, e) -> {
+            if (e != null) {
+                if (!result.isCancelled()) {
+                    e.printStackTrace();
+                }
+                return Collections.<Node>emptyList();
+            }
+            return nodes;
+        });
+        hidden.whenComplete((nodes, e) -> {
+            if (hidden.isCancelled()) {
+                result.cancel(true);
+            }
+        });
+        return hidden;
     }
 
     /**
@@ -77,33 +96,134 @@ public final class XPathEvaluator {
                                            String xpathQuery,
                                            Map<String, String> propertyValues,
                                            List<PropertyDescriptorSpec> properties) throws XPathEvaluationException {
+        return evaluateQuery(compilationUnit, xpathVersion, xpathQuery, propertyValues, properties, null);
+    }
+
+
+    /**
+     * Evaluates an XPath query on the compilation unit, reusing the
+     * compiled query from the cache if possible. Performs no side effects
+     * besides populating the cache.
+     *
+     * @param compilationUnit AST root
+     * @param xpathVersion    XPath version
+     * @param xpathQuery      XPath query
+     * @param properties      Properties of the rule
+     * @param cache           Cache of compiled queries, if null the query is compiled every time
+     *
+     * @throws XPathEvaluationException if there was an error during the evaluation. The cause is preserved
+     */
+    public static List<Node> evaluateQuery(Node compilationUnit,
+                                           XPathVersion xpathVersion,
+                                           String xpathQuery,
+                                           Map<String, String> propertyValues,
+                                           List<PropertyDescriptorSpec> properties,
+                                           @Nullable XPathQueryCache cache) throws XPathEvaluationException {
+        return evaluateQuery(compilationUnit, xpathVersion, xpathQuery, propertyValues, properties, cache, null);
+    }
+
+
+    /**
+     * Evaluates an XPath query on the compilation unit, like {@link #evaluateQuery(Node, XPathVersion, String, Map, List, XPathQueryCache)}.
+     * If an index of the compilation unit is given, and the query starts
+     * with descendant steps, eg {@code //ClassDeclaration[...] | //MethodDeclaration},
+     * the query is only evaluated on the nodes of the index that have one
+     * of those names, like PMD's rule chain does. Otherwise the whole tree
+     * is walked.
+     *
+     * @param index Index of the compilation unit, ignored if it indexes another tree
+     *
+     * @throws XPathEvaluationException if there was an error during the evaluation. The cause is preserved
+     */
+    public static List<Node> evaluateQuery(Node compilationUnit,
+                                           XPathVersion xpathVersion,
+                                           String xpathQuery,
+                                           Map<String, String> propertyValues,
+                                           List<PropertyDescriptorSpec> properties,
+                                           @Nullable XPathQueryCache cache,
+                                           @Nullable NodeKindIndex index) throws XPathEvaluationException {
 
         if (StringUtils.isBlank(xpathQuery)) {
             return emptyList();
         }
 
         try {
-
-            Map<String, PropertyDescriptor<?>> descriptors = properties.stream().collect(Collectors.toMap(PropertyDescriptorSpec::getName, PropertyDescriptorSpec::build));
-            // Take in all set values or defaults
-            Map<PropertyDescriptor<?>, Object> allProperties =
-                    descriptors.entrySet().stream()
-                              .collect(Collectors.<Entry<String, PropertyDescriptor<?>>, PropertyDescriptor<?>, Object>toMap(
-                                      e -> e.getValue(), e -> propertyValues.containsKey(e.getKey()) ? e.getValue().serializer().fromString(propertyValues.get(e.getKey())) : e.getValue().defaultValue()));
-
-            SaxonXPathRuleQuery xpathRule =
-                new SaxonXPathRuleQuery(
-                    xpathQuery,
-                    xpathVersion,
-                    allProperties,
-                    compilationUnit.getAstInfo().getLanguageProcessor().services().getXPathHandler(),
-                    DeprecatedAttrLogger.noop()
-                );
-
-            return xpathRule.evaluate(compilationUnit);
+            XPathHandler handler = compilationUnit.getAstInfo().getLanguageProcessor().services().getXPathHandler();
+
+            SaxonXPathRuleQuery xpathRule;
+            if (cache == null) {
+                xpathRule = compile(xpathVersion, xpathQuery, propertyValues, properties, handler, DeprecatedAttrLogger.noop());
+            } else {
+                XPathQueryCache.Key key = XPathQueryCache.keyFor(xpathQuery, xpathVersion, propertyValues, properties, handler);
+                xpathRule = cache.getOrCompile(key, () -> compile(xpathVersion, xpathQuery, propertyValues, properties, handler, DeprecatedAttrLogger.noop()));
+            }
+
+            // compiled queries are shared, but are not thread-safe, and
+            // neither is the Saxon tree that is cached on the AST root.
+            // Locks are always taken in this order.
+            synchronized (compilationUnit) {
+                synchronized (xpathRule) {
+                    List<String> visits = xpathRule.getRuleChainVisits();
+                    if (index != null && index.getRoot() == compilationUnit && !visits.isEmpty()) {
+                        return evaluateOnIndexedNodes(xpathRule, visits, index);
+                    }
+                    return xpathRule.evaluate(compilationUnit);
+                }
+            }
 
         } catch (RuntimeException e) {
             throw new XPathEvaluationException(e);
         }
     }
+
+
+    /**
+     * Evaluates the query on the nodes whose name is one of the rule chain
+     * visits of the query. The query then evaluates the subexpression that
+     * corresponds to the name of each node, with that node as context.
+     */
+    private static List<Node> evaluateOnIndexedNodes(SaxonXPathRuleQuery query, List<String> visits, NodeKindIndex index) {
+        List<Node> results = new ArrayList<>();
+        // the subexpressions may select the same nodes, eg //A | //B/parent::A
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String name : visits) {
+            for (Node node : index.getNodes(name)) {
+                for (Node result : query.evaluate(node)) {
+                    if (seen.add(result)) {
+                        results.add(result);
+                    }
+                }
+            }
+        }
+        results.sort(index.documentOrder());
+        return results;
+    }
+
+
+    /**
+     * Compiles a query. The logger is notified of the attributes whose
+     * value is read.
+     */
+    static SaxonXPathRuleQuery compile(XPathVersion xpathVersion,
+                                       String xpathQuery,
+                                       Map<String, String> propertyValues,
+                                       List<PropertyDescriptorSpec> properties,
+                                       XPathHandler handler,
+                                       DeprecatedAttrLogger attrLogger) {
+
+        Map<String, PropertyDescriptor<?>> descriptors = properties.stream().collect(Collectors.toMap(PropertyDescriptorSpec::getName, PropertyDescriptorSpec::build));
+        // Take in all set values or defaults
+        Map<PropertyDescriptor<?>, Object> allProperties =
+                descriptors.entrySet().stream()
+                          .collect(Collectors.<Entry<String, PropertyDescriptor<?>>, PropertyDescriptor<?>, Object>toMap(
+                                  e -> e.getValue(), e -> propertyValues.containsKey(e.getKey()) ? e.getValue().serializer().fromString(propertyValues.get(e.getKey())) : e.getValue().defaultValue()));
+
+        return new SaxonXPathRuleQuery(
+            xpathQuery,
+            xpathVersion,
+            allProperties,
+            handler,
+            attrLogger
+        );
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+
+/**
+ * Cost breakdown of an XPath query on a tree, built by {@link XPathProfiler}.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathProfile {
+
+    private final String expression;
+    private final Duration totalTime;
+    private final int runs;
+    private final int resultCount;
+    private final List<StepCost> steps;
+    private final Map<String, Long> attributeReads;
+
+
+    XPathProfile(String expression, Duration totalTime, int runs, int resultCount, List<StepCost> steps, Map<String, Long> attributeReads) {
+        this.expression = expression;
+        this.totalTime = totalTime;
+        this.runs = runs;
+        this.resultCount = resultCount;
+        this.steps = Collections.unmodifiableList(steps);
+        this.attributeReads = Collections.unmodifiableMap(attributeReads);
+    }
+
+
+    public String getExpression() {
+        return expression;
+    }
+
+
+    /** Median time of an evaluation of the whole query. */
+    public Duration getTotalTime() {
+        return totalTime;
+    }
+
+
+    /** Number of timed evaluations the medians are taken from. */
+    public int getRuns() {
+        return runs;
+    }
+
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+
+    /** Steps and predicates of the query, in text order. A query that can't be split has a single step. */
+    public List<StepCost> getSteps() {
+        return steps;
+    }
+
+
+    /** Returns the n steps with the highest own time, most expensive first. */
+    public List<StepCost> getHottestSteps(int n) {
+        return steps.stream()
+                    .sorted(Comparator.comparing(StepCost::getOwnTime).reversed())
+                    .limit(n)
+                    .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Number of attribute values read by one evaluation of the query, by
+     * attribute name, most read first.
+     */
+    public Map<String, Long> getAttributeReads() {
+        return attributeReads;
+    }
+
+
+    /**
+     * Cost of a step or predicate of the query. Steps are profiled by
+     * evaluating the prefix of the query that ends with the step: the
+     * own time of a step is the difference between the time of its prefix
+     * and that of the previous prefix. This is an estimate, Saxon may
+     * optimize a prefix differently than the whole query.
+     */
+    public static final class StepCost {
+
+        private final int startOffset;
+        private final int endOffset;
+        private final String text;
+        private final int contextSize;
+        private final int resultCount;
+        private final Duration cumulativeTime;
+        private final Duration ownTime;
+        private final double share;
+
+
+        StepCost(int startOffset, int endOffset, String text, int contextSize, int resultCount,
+                 Duration cumulativeTime, Duration ownTime, double share) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.text = text;
+            this.contextSize = contextSize;
+            this.resultCount = resultCount;
+            this.cumulativeTime = cumulativeTime;
+            this.ownTime = ownTime;
+            this.share = share;
+        }
+
+
+        /** Start offset of the step in the expression. */
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+
+        /** End offset (exclusive) of the step in the expression. */
+        public int getEndOffset() {
+            return endOffset;
+        }
+
+
+        public String getText() {
+            return text;
+        }
+
+
+        /** Number of nodes the step starts from, ie the results of the previous prefix. */
+        public int getContextSize() {
+            return contextSize;
+        }
+
+
+        /** Number of results of the prefix ending with this step. */
+        public int getResultCount() {
+            return resultCount;
+        }
+
+
+        /** Median time of the prefix ending with this step. */
+        public Duration getCumulativeTime() {
+            return cumulativeTime;
+        }
+
+
+        public Duration getOwnTime() {
+            return ownTime;
+        }
+
+
+        /** Share of the total time spent in this step, between 0 and 1. */
+        public double getShare() {
+            return share;
+        }
+    }
+}
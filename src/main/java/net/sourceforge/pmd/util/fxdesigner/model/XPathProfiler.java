@@ -0,0 +1,254 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger; // NOPMD
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery; // NOPMD
+import net.sourceforge.pmd.util.fxdesigner.model.XPathProfile.StepCost;
+
+
+/**
+ * Measures the cost of an XPath query. The query is split into its
+ * top-level path steps and predicates, and each prefix of the query
+ * ending with a step is timed separately. The attribute reads are counted
+ * on one more evaluation of the query, which is not timed.
+ *
+ * <p>A profile is limited to {@link #MAX_RUN_TIME}. Once it's exceeded,
+ * the remaining steps are merged with the last one and evaluations are not
+ * repeated anymore. The tree is locked for one evaluation at a time, so that
+ * live evaluations on the same tree can run in between.
+ *
+ * <p>This blocks the calling thread for a few evaluations of the query,
+ * it must not be called on the JavaFX thread. Interrupting the thread
+ * stops the profile at the next evaluation.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathProfiler {
+
+    /** Default number of timed evaluations of each prefix. */
+    public static final int DEFAULT_RUNS = 5;
+    /** Maximum duration of a profile, so that a slow query doesn't hang it. */
+    public static final Duration MAX_RUN_TIME = Duration.ofSeconds(10);
+
+
+    private XPathProfiler() {
+
+    }
+
+
+    /**
+     * Profiles a query on the given tree.
+     *
+     * @param compilationUnit AST root
+     * @param xpathVersion    XPath version
+     * @param xpathQuery      XPath query
+     * @param propertyValues  Values of the properties
+     * @param properties      Properties of the rule
+     * @param runs            Number of timed evaluations of each prefix, after an untimed one
+     *
+     * @throws XPathEvaluationException if the query cannot be evaluated
+     */
+    public static XPathProfile profile(Node compilationUnit,
+                                       XPathVersion xpathVersion,
+                                       String xpathQuery,
+                                       Map<String, String> propertyValues,
+                                       List<PropertyDescriptorSpec> properties,
+                                       int runs) throws XPathEvaluationException {
+
+        XPathHandler handler = compilationUnit.getAstInfo().getLanguageProcessor().services().getXPathHandler();
+        String expression = StringUtils.stripEnd(xpathQuery, null);
+        Deadline deadline = Deadline.after(MAX_RUN_TIME);
+
+        try {
+            // the attribute reads are counted on a single evaluation, which also warms up the tree
+            AttributeCounter counter = new AttributeCounter();
+            SaxonXPathRuleQuery counted = XPathEvaluator.compile(xpathVersion, expression, propertyValues, properties, handler, counter);
+            int resultCount = evaluate(counted, compilationUnit).size();
+
+            SaxonXPathRuleQuery whole = XPathEvaluator.compile(xpathVersion, expression, propertyValues, properties, handler, DeprecatedAttrLogger.noop());
+            Duration totalTime = time(whole, compilationUnit, runs, deadline);
+
+            List<StepCost> steps = new ArrayList<>();
+            Duration previousTime = Duration.ZERO;
+            int previousCount = 1;
+            int stepStart = 0;
+            for (int cut : cutPoints(expression)) {
+                boolean last = cut == expression.length();
+                SaxonXPathRuleQuery prefix;
+                int count;
+                Duration time;
+                if (last) {
+                    prefix = whole;
+                    count = resultCount;
+                    time = totalTime;
+                } else if (deadline.isPassed()) {
+                    // out of time, the remaining steps are merged with the last one
+                    continue;
+                } else {
+                    try {
+                        prefix = XPathEvaluator.compile(xpathVersion, expression.substring(0, cut), propertyValues, properties, handler, DeprecatedAttrLogger.noop());
+                        count = evaluate(prefix, compilationUnit).size();
+                        time = time(prefix, compilationUnit, runs, deadline);
+                    } catch (RuntimeException e) {
+                        // the prefix is not a valid query on its own, the step is merged with the next one
+                        continue;
+                    }
+                }
+
+                Duration own = time.compareTo(previousTime) > 0 ? time.minus(previousTime) : Duration.ZERO;
+                double share = totalTime.isZero() ? 0 : Math.min(1, (double) own.toNanos() / totalTime.toNanos());
+                steps.add(new StepCost(stepStart, cut, expression.substring(stepStart, cut), previousCount, count, time, own, share));
+
+                previousTime = time;
+                previousCount = count;
+                stepStart = cut;
+            }
+
+            return new XPathProfile(expression, totalTime, runs, resultCount, steps, counter.sortedCounts());
+        } catch (RuntimeException e) {
+            throw new XPathEvaluationException(e);
+        }
+    }
+
+
+    private static List<Node> evaluate(SaxonXPathRuleQuery query, Node root) {
+        // the Saxon tree cached on the root is not thread-safe
+        synchronized (root) {
+            return query.evaluate(root);
+        }
+    }
+
+
+    /** Median time of the runs, at least one of which is performed even past the deadline. */
+    private static Duration time(SaxonXPathRuleQuery query, Node root, int runs, Deadline deadline) {
+        long[] times = new long[Math.max(1, runs)];
+        int done = 0;
+        while (done < times.length && (done == 0 || !deadline.isPassed())) {
+            synchronized (root) {
+                long start = System.nanoTime();
+                query.evaluate(root);
+                times[done++] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(times, 0, done);
+        return Duration.ofNanos(times[done / 2]);
+    }
+
+
+    /**
+     * Returns the end offsets of the prefixes of the expression that
+     * end with a top-level step or predicate. The last offset is the
+     * length of the expression. Expressions that are not a single path,
+     * eg a union or a sequence, are not split.
+     */
+    static List<Integer> cutPoints(String expression) {
+        List<Integer> cuts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int len = expression.length();
+
+        for (int i = 0; i < len; i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+
+            switch (c) {
+            case '"':
+            case '\'':
+                quote = c;
+                break;
+            case '(':
+                if (i + 1 < len && expression.charAt(i + 1) == ':') {
+                    // comment
+                    int end = expression.indexOf(":)", i + 2);
+                    i = end < 0 ? len : end + 1;
+                } else {
+                    depth++;
+                }
+                break;
+            case '[':
+                if (depth == 0) {
+                    addCut(cuts, expression, i);
+                }
+                depth++;
+                break;
+            case ')':
+            case ']':
+                depth--;
+                break;
+            case '/':
+                if (depth == 0 && i > 0 && expression.charAt(i - 1) != '/') {
+                    addCut(cuts, expression, i);
+                }
+                break;
+            case '|':
+            case ',':
+                if (depth == 0) {
+                    cuts.clear();
+                    cuts.add(len);
+                    return cuts;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        cuts.add(len);
+        return cuts;
+    }
+
+
+    private static void addCut(List<Integer> cuts, String expression, int offset) {
+        if (StringUtils.isNotBlank(expression.substring(0, offset))
+            && (cuts.isEmpty() || StringUtils.isNotBlank(expression.substring(cuts.get(cuts.size() - 1), offset)))) {
+            cuts.add(offset);
+        }
+    }
+
+
+    /** Counts the attribute values read by an evaluation. */
+    private static final class AttributeCounter extends DeprecatedAttrLogger {
+
+        private final Map<String, Long> counts = new HashMap<>();
+
+
+        @Override
+        public void recordUsageOf(Attribute attribute) {
+            counts.merge(attribute.getName(), 1L, Long::sum);
+        }
+
+
+        Map<String, Long> sortedCounts() {
+            Map<String, Long> sorted = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                  .sorted(Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                  .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+            return sorted;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.kordamp.ikonli.javafx.FontIcon;
 import org.reactfx.Subscription;
@@ -27,6 +28,7 @@ import net.sourceforge.pmd.util.fxdesigner.app.services.LogEntry.Category;
 import net.sourceforge.pmd.util.fxdesigner.model.XPathEvaluator;
 import net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
@@ -77,6 +79,8 @@ public final class EventLogController extends AbstractController {
     private TextArea logDetailsTextArea;
 
     private final Var<List<Node>> selectedErrorNodes = Var.newSimpleVar(Collections.emptyList());
+    /** Evaluation of the error nodes of the selected entry. */
+    private CompletableFuture<List<Node>> pendingErrorNodes = CompletableFuture.completedFuture(Collections.emptyList());
 
 
     private final Stage myPopupStage;
@@ -182,7 +186,10 @@ public final class EventLogController extends AbstractController {
                 .subscribe(this::onExceptionSelectionChanges);
 
         // reset error nodes on closing
-        binding = binding.and(() -> selectedErrorNodes.setValue(Collections.emptyList()));
+        binding = binding.and(() -> {
+            pendingErrorNodes.cancel(true);
+            selectedErrorNodes.setValue(Collections.emptyList());
+        });
 
         ObservableList<LogEntry> logEntries = new SortedList<>(getLogger().getLog(), Comparator.reverseOrder());
         eventLogTableView.itemsProperty().setValue(logEntries);
@@ -200,6 +207,7 @@ public final class EventLogController extends AbstractController {
 
 
     private void handleSelectedEntry(LogEntry entry) {
+        pendingErrorNodes.cancel(true);
         selectedErrorNodes.setValue(Collections.emptyList());
 
         if (entry == null) {
@@ -210,8 +218,16 @@ public final class EventLogController extends AbstractController {
 
         if (entry.getCategory().isUserException()) {
             DesignerUtil.stackTraceToXPath(entry.detailsProperty().getValue())
-                        .map(xpath -> XPathEvaluator.simpleEvaluate(getDesignerRoot(), xpath))
-                        .ifPresent(selectedErrorNodes::setValue);
+                        .ifPresent(xpath -> {
+                            CompletableFuture<List<Node>> evaluation = XPathEvaluator.simpleEvaluate(getDesignerRoot(), xpath);
+                            pendingErrorNodes = evaluation;
+                            evaluation.thenAccept(nodes -> Platform.runLater(() -> {
+                                // another entry may have been selected in the meantime
+                                if (pendingErrorNodes == evaluation) {
+                                    selectedErrorNodes.setValue(nodes);
+                                }
+                            }));
+                        });
         }
     }
 
@@ -0,0 +1,335 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.Chars;
+import net.sourceforge.pmd.lang.document.TextRegion;
+
+
+/**
+ * Structural diff between two successive trees of the same source. Nodes
+ * of the old tree are matched to nodes of the new tree by their position
+ * in the structure, their node kind and their text. Text regions are not
+ * compared by offset, since an edit shifts all the nodes that follow it.
+ *
+ * <p>Each subtree is summarized by a hash of its node kinds and text. Two
+ * children lists are aligned by their common prefix and suffix of equal
+ * subtrees; the remaining children are paired by kind if possible, and
+ * otherwise considered removed and inserted. Typing in a method body
+ * thus only changes that method and its ancestors.
+ *
+ * <p>Trees are traversed with explicit stacks, since ASTs may be very deep
+ * (eg long {@code else if} chains). Computing a diff walks both trees,
+ * it may be done off the JavaFX thread.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class AstDiff {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Node oldRoot;
+    private final Node newRoot;
+    private final Map<Node, Node> oldToNew = new IdentityHashMap<>();
+    private final Map<Node, Node> newToOld = new IdentityHashMap<>();
+    private final List<Edit> edits = new ArrayList<>();
+
+    // only used during the computation
+    private Map<Node, Long> oldHashes;
+    private Map<Node, Long> newHashes;
+
+
+    private AstDiff(Node oldRoot, Node newRoot) {
+        this.oldRoot = oldRoot;
+        this.newRoot = newRoot;
+    }
+
+
+    /**
+     * Computes the diff between two trees.
+     */
+    public static AstDiff compute(Node oldRoot, Node newRoot) {
+        AstDiff diff = new AstDiff(oldRoot, newRoot);
+        diff.oldHashes = hashTree(oldRoot);
+        diff.newHashes = hashTree(newRoot);
+        diff.matchRoots();
+        diff.oldHashes = null;
+        diff.newHashes = null;
+        return diff;
+    }
+
+
+    public Node getOldRoot() {
+        return oldRoot;
+    }
+
+
+    public Node getNewRoot() {
+        return newRoot;
+    }
+
+
+    /** Returns the node of the new tree that matches the given node of the old tree, or null. */
+    public @Nullable Node getNewNode(Node oldNode) {
+        return oldToNew.get(oldNode);
+    }
+
+
+    /** Returns the node of the old tree that matches the given node of the new tree, or null. */
+    public @Nullable Node getOldNode(Node newNode) {
+        return newToOld.get(newNode);
+    }
+
+
+    /**
+     * Edit script that turns the old tree into the new tree. Removed and
+     * inserted subtrees are reported by their root only. Changed nodes
+     * are those that have a match but whose subtree differs, which
+     * includes all the ancestors of the other edits.
+     */
+    public List<Edit> getEdits() {
+        return Collections.unmodifiableList(edits);
+    }
+
+
+    /** Returns true if the trees are identical, save for the positions of the nodes. */
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+
+    private void matchRoots() {
+        if (!sameKind(oldRoot, newRoot)) {
+            edits.add(new Edit(EditKind.REMOVED, oldRoot, null));
+            edits.add(new Edit(EditKind.INSERTED, null, newRoot));
+            return;
+        }
+
+        // pairs of nodes of the same kind whose children remain to be matched
+        Deque<Node[]> pending = new ArrayDeque<>();
+        pending.push(new Node[] {oldRoot, newRoot});
+        while (!pending.isEmpty()) {
+            Node[] pair = pending.pop();
+            match(pair[0], pair[1], pending);
+        }
+    }
+
+
+    /**
+     * Matches two nodes of the same kind. The pairs of children that
+     * have the same kind but differ are pushed on the stack.
+     */
+    private void match(Node oldNode, Node newNode, Deque<Node[]> pending) {
+        if (sameSubtree(oldNode, newNode)) {
+            matchUnchanged(oldNode, newNode);
+            return;
+        }
+
+        record(oldNode, newNode);
+        edits.add(new Edit(EditKind.CHANGED, oldNode, newNode));
+
+        int oldLen = oldNode.getNumChildren();
+        int newLen = newNode.getNumChildren();
+
+        int prefix = 0;
+        while (prefix < oldLen && prefix < newLen
+            && sameSubtree(oldNode.getChild(prefix), newNode.getChild(prefix))) {
+            matchUnchanged(oldNode.getChild(prefix), newNode.getChild(prefix));
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < oldLen - prefix && suffix < newLen - prefix
+            && sameSubtree(oldNode.getChild(oldLen - 1 - suffix), newNode.getChild(newLen - 1 - suffix))) {
+            matchUnchanged(oldNode.getChild(oldLen - 1 - suffix), newNode.getChild(newLen - 1 - suffix));
+            suffix++;
+        }
+
+        // the middle is paired positionally while the kinds agree
+        int oldMid = oldLen - suffix;
+        int newMid = newLen - suffix;
+        int i = prefix;
+        while (i < oldMid && i < newMid && sameKind(oldNode.getChild(i), newNode.getChild(i))) {
+            pending.push(new Node[] {oldNode.getChild(i), newNode.getChild(i)});
+            i++;
+        }
+
+        for (int j = i; j < oldMid; j++) {
+            edits.add(new Edit(EditKind.REMOVED, oldNode.getChild(j), null));
+        }
+        for (int j = i; j < newMid; j++) {
+            edits.add(new Edit(EditKind.INSERTED, null, newNode.getChild(j)));
+        }
+    }
+
+
+    /** Matches two subtrees that have the same hash, node by node. */
+    private void matchUnchanged(Node oldSubtree, Node newSubtree) {
+        Deque<Node[]> pending = new ArrayDeque<>();
+        pending.push(new Node[] {oldSubtree, newSubtree});
+        while (!pending.isEmpty()) {
+            Node[] pair = pending.pop();
+            record(pair[0], pair[1]);
+            for (int i = 0; i < pair[0].getNumChildren(); i++) {
+                pending.push(new Node[] {pair[0].getChild(i), pair[1].getChild(i)});
+            }
+        }
+    }
+
+
+    private void record(Node oldNode, Node newNode) {
+        oldToNew.put(oldNode, newNode);
+        newToOld.put(newNode, oldNode);
+    }
+
+
+    private boolean sameSubtree(Node oldNode, Node newNode) {
+        return oldHashes.get(oldNode).equals(newHashes.get(newNode))
+            && oldNode.getNumChildren() == newNode.getNumChildren();
+    }
+
+
+    private static boolean sameKind(Node a, Node b) {
+        return a.getClass() == b.getClass() && a.getXPathNodeName().equals(b.getXPathNodeName());
+    }
+
+
+    /**
+     * Hashes every subtree: the kind of its root, the text of its root
+     * that is not covered by a child, and the hashes of the children.
+     * This touches every char of the text once.
+     */
+    private static Map<Node, Long> hashTree(Node root) {
+        Map<Node, Long> hashes = new IdentityHashMap<>();
+        Chars text = root.getTextDocument().getText();
+
+        // post-order traversal, a frame is popped once all its children are hashed
+        Deque<HashFrame> stack = new ArrayDeque<>();
+        stack.push(new HashFrame(root));
+        while (!stack.isEmpty()) {
+            HashFrame frame = stack.peek();
+            Node node = frame.node;
+            TextRegion region = node.getTextRegion();
+
+            if (frame.nextChild < node.getNumChildren()) {
+                TextRegion childRegion = node.getChild(frame.nextChild).getTextRegion();
+                // regions of synthetic nodes may be empty or out of order
+                frame.hash = hashChars(frame.hash, text, frame.cursor, Math.min(childRegion.getStartOffset(), region.getEndOffset()));
+                frame.cursor = Math.max(frame.cursor, childRegion.getEndOffset());
+                stack.push(new HashFrame(node.getChild(frame.nextChild)));
+                continue;
+            }
+
+            long hash = hashChars(frame.hash, text, frame.cursor, region.getEndOffset());
+            hash = mix(hash, node.getNumChildren());
+            hashes.put(node, hash);
+
+            stack.pop();
+            HashFrame parent = stack.peek();
+            if (parent != null) {
+                parent.hash = mix(parent.hash, hash);
+                parent.nextChild++;
+            }
+        }
+        return hashes;
+    }
+
+
+    private static long hashChars(long hash, Chars text, int start, int end) {
+        int max = Math.min(end, text.length());
+        for (int i = Math.max(start, 0); i < max; i++) {
+            hash = mix(hash, text.charAt(i));
+        }
+        return hash;
+    }
+
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+
+    /** A node whose subtree is being hashed. */
+    private static final class HashFrame {
+
+        private final Node node;
+        private long hash;
+        /** Offset of the text that is not hashed yet. */
+        private int cursor;
+        private int nextChild;
+
+
+        HashFrame(Node node) {
+            this.node = node;
+            this.hash = mix(FNV_OFFSET, node.getXPathNodeName().hashCode());
+            this.cursor = node.getTextRegion().getStartOffset();
+        }
+    }
+
+
+    /** Kind of an {@link Edit}. */
+    public enum EditKind {
+        /** A subtree of the new tree that has no match in the old tree. */
+        INSERTED,
+        /** A subtree of the old tree that has no match in the new tree. */
+        REMOVED,
+        /** A node that has a match but whose subtree differs. */
+        CHANGED
+    }
+
+
+    /**
+     * An element of the edit script.
+     */
+    public static final class Edit {
+
+        private final EditKind kind;
+        private final @Nullable Node oldNode;
+        private final @Nullable Node newNode;
+
+
+        Edit(EditKind kind, @Nullable Node oldNode, @Nullable Node newNode) {
+            this.kind = kind;
+            this.oldNode = oldNode;
+            this.newNode = newNode;
+        }
+
+
+        public EditKind getKind() {
+            return kind;
+        }
+
+
+        /** Node of the old tree, null if inserted. */
+        public @Nullable Node getOldNode() {
+            return oldNode;
+        }
+
+
+        /** Node of the new tree, null if removed. */
+        public @Nullable Node getNewNode() {
+            return newNode;
+        }
+
+
+        @Override
+        public String toString() {
+            return kind + "(" + (oldNode != null ? oldNode : newNode).getXPathNodeName() + ")";
+        }
+    }
+}
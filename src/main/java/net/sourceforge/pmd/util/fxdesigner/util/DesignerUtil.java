@@ -6,6 +6,7 @@ package net.sourceforge.pmd.util.fxdesigner.util;
 
 import java.io.PrintStream;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -286,6 +287,13 @@ public final class DesignerUtil {
         return matcher.matches() ? matcher.group(1) : exception.getMessage();
     }
 
+
+    /** Formats a short duration, eg of an XPath evaluation, in µs or ms. */
+    public static String formatDuration(Duration duration) {
+        long micros = duration.toNanos() / 1000;
+        return micros < 10_000 ? micros + " µs" : duration.toMillis() + " ms";
+    }
+
     /**
      * Works out an xpath query that matches the node
      * which was being visited during the failure.
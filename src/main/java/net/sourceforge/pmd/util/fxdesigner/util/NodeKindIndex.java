@@ -0,0 +1,96 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+
+/**
+ * Index of the nodes of a tree by their XPath name, in document order.
+ * This is the same information PMD's rule chain uses to only evaluate
+ * queries like {@code //MethodDeclaration[...]} on the relevant nodes,
+ * instead of walking the whole tree. The index is immutable, and costs
+ * one traversal of the tree to build.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class NodeKindIndex {
+
+    private final Node root;
+    private final Map<String, List<Node>> nodesByName;
+    private final Map<Node, Integer> documentOrder;
+
+
+    private NodeKindIndex(Node root, Map<String, List<Node>> nodesByName, Map<Node, Integer> documentOrder) {
+        this.root = root;
+        this.nodesByName = nodesByName;
+        this.documentOrder = documentOrder;
+    }
+
+
+    /** Indexes the given tree. This traverses the whole tree. */
+    public static NodeKindIndex build(Node root) {
+        Map<String, List<Node>> byName = new HashMap<>();
+        Map<Node, Integer> order = new IdentityHashMap<>();
+
+        // descendantsOrSelf is a pre-order traversal, ie in document order
+        for (Node node : root.descendantsOrSelf()) {
+            order.put(node, order.size());
+            byName.computeIfAbsent(node.getXPathNodeName(), k -> new ArrayList<>()).add(node);
+        }
+
+        byName.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        return new NodeKindIndex(root, byName, order);
+    }
+
+
+    /** Root of the indexed tree. */
+    public Node getRoot() {
+        return root;
+    }
+
+
+    /** Returns the nodes with the given XPath name, in document order. */
+    public List<Node> getNodes(String xpathName) {
+        return nodesByName.getOrDefault(xpathName, Collections.emptyList());
+    }
+
+
+    public int getNodeCount() {
+        return documentOrder.size();
+    }
+
+
+    /** Returns the number of nodes for each XPath name, most frequent first. */
+    public Map<String, Integer> getCountsByName() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        nodesByName.entrySet()
+                   .stream()
+                   .sorted(Comparator.<Entry<String, List<Node>>>comparingInt(e -> e.getValue().size()).reversed()
+                                     .thenComparing(Entry::getKey))
+                   .forEach(e -> counts.put(e.getKey(), e.getValue().size()));
+        return counts;
+    }
+
+
+    /**
+     * Orders the nodes of the indexed tree in document order. Nodes that
+     * are not part of the tree are ordered last.
+     */
+    public Comparator<Node> documentOrder() {
+        return Comparator.comparingInt(n -> documentOrder.getOrDefault(n, Integer.MAX_VALUE));
+    }
+}
@@ -13,13 +13,21 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -37,6 +45,8 @@ public final class ResourceUtil {
 
     private static final String BASE_RESOURCE_PREFIX = "/net/sourceforge/pmd/util/fxdesigner/";
     private static final Object FILE_SYSTEM_LOCK = new Object();
+    /** Number of bytes and chars decoded at a time by {@link #readFile(Path, Charset)}. */
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
 
     private ResourceUtil() {
 
@@ -209,4 +219,85 @@ public final class ResourceUtil {
             throw new UncheckedIOException(e);
         }
     }
+
+
+    /**
+     * Reads a file to a string, with its {@code \r\n} line terminators
+     * replaced by {@code \n}. The file is decoded in chunks into a builder
+     * sized after the file, and line terminators are normalized as the chunks
+     * are appended, so that the text is not copied again by the caller.
+     * Malformed input is replaced, like with {@link #readToString(InputStream, Charset)}.
+     */
+    public static String readFile(Path path, Charset charset) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                                        .onMalformedInput(CodingErrorAction.REPLACE)
+                                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long maxChars = (long) Math.ceil(channel.size() * (double) decoder.maxCharsPerByte());
+            if (maxChars >= Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+
+            StringBuilder result = new StringBuilder((int) Math.ceil(channel.size() * (double) decoder.averageCharsPerByte()) + 1);
+            ByteBuffer in = ByteBuffer.allocate(READ_CHUNK_SIZE);
+            CharBuffer out = CharBuffer.allocate(READ_CHUNK_SIZE);
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(in) == -1;
+                in.flip();
+                CoderResult coderResult;
+                do {
+                    coderResult = decoder.decode(in, out, endOfInput);
+                    checkDecoding(coderResult);
+                    appendNormalized(out, result);
+                } while (coderResult.isOverflow());
+                in.compact();
+            }
+
+            CoderResult coderResult;
+            do {
+                coderResult = decoder.flush(out);
+                checkDecoding(coderResult);
+                appendNormalized(out, result);
+            } while (coderResult.isOverflow());
+            return result.toString();
+        }
+    }
+
+
+    private static void checkDecoding(CoderResult result) throws CharacterCodingException {
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+
+    /**
+     * Appends the decoded chars to the builder, and clears the buffer. A
+     * {@code \r\n} is appended as {@code \n}, including when the {@code \r}
+     * ends the previous chunk.
+     */
+    private static void appendNormalized(CharBuffer chars, StringBuilder result) {
+        chars.flip();
+        char[] array = chars.array();
+        int end = chars.limit();
+        int from = 0;
+        for (int i = 0; i < end; i++) {
+            if (array[i] != '\n') {
+                continue;
+            }
+            if (i > from) {
+                if (array[i - 1] == '\r') {
+                    result.append(array, from, i - 1 - from);
+                    from = i;
+                }
+            } else if (result.length() > 0 && result.charAt(result.length() - 1) == '\r') {
+                // the \r ended the previous chunk
+                result.setLength(result.length() - 1);
+            }
+        }
+        result.append(array, from, end - from);
+        chars.clear();
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+
+/**
+ * A thread-safe LRU cache bounded both by its number of entries and by
+ * the total weight of its values. Least recently used entries are evicted
+ * first. Keeps hit and miss counters.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public class WeightedLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final BiConsumer<? super K, ? super V> removalListener;
+
+    // access-ordered
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    /**
+     * @param maxEntries Maximum number of entries
+     * @param maxWeight  Maximum total weight of the values
+     * @param weigher    Computes the weight of a value, must be stable
+     */
+    public WeightedLruCache(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher) {
+        this(maxEntries, maxWeight, weigher, (k, v) -> {});
+    }
+
+
+    /**
+     * @param maxEntries      Maximum number of entries
+     * @param maxWeight       Maximum total weight of the values
+     * @param weigher         Computes the weight of a value, must be stable
+     * @param removalListener Called for every entry that leaves the cache,
+     *                        except when the cache is cleared. It's called
+     *                        while holding the lock of the cache, and must
+     *                        not use the cache.
+     */
+    public WeightedLruCache(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher, BiConsumer<? super K, ? super V> removalListener) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.removalListener = removalListener;
+    }
+
+
+    /**
+     * Returns the value for the key, or null if there is none.
+     * Counts as a hit or a miss.
+     */
+    public synchronized @Nullable V get(K key) {
+        V v = map.get(key);
+        if (v == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return v;
+    }
+
+
+    /**
+     * Adds an entry to the cache, evicting least recently used entries
+     * if needed. A value heavier than the maximum weight is not cached.
+     */
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            remove(key);
+            return;
+        }
+
+        V previous = map.put(key, value);
+        if (previous != null) {
+            totalWeight -= weigher.applyAsLong(previous);
+            if (previous != value) {
+                removalListener.accept(key, previous);
+            }
+        }
+        totalWeight += weight;
+
+        Iterator<Entry<K, V>> iterator = map.entrySet().iterator();
+        while ((map.size() > maxEntries || totalWeight > maxWeight) && iterator.hasNext()) {
+            Entry<K, V> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            totalWeight -= weigher.applyAsLong(eldest.getValue());
+            iterator.remove();
+            evictions++;
+            removalListener.accept(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+
+    public synchronized void remove(K key) {
+        V removed = map.remove(key);
+        if (removed != null) {
+            totalWeight -= weigher.applyAsLong(removed);
+            removalListener.accept(key, removed);
+        }
+    }
+
+
+    /**
+     * Removes the entries that match the filter. This doesn't count as
+     * evictions.
+     *
+     * @return The number of removed entries
+     */
+    public synchronized int removeIf(BiPredicate<? super K, ? super V> filter) {
+        int removed = 0;
+        Iterator<Entry<K, V>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<K, V> entry = iterator.next();
+            if (filter.test(entry.getKey(), entry.getValue())) {
+                totalWeight -= weigher.applyAsLong(entry.getValue());
+                iterator.remove();
+                removed++;
+                removalListener.accept(entry.getKey(), entry.getValue());
+            }
+        }
+        return removed;
+    }
+
+
+    public synchronized void clear() {
+        map.clear();
+        totalWeight = 0;
+    }
+
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+
+    /** Ratio of hits to lookups, 0 if there was no lookup. */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, weight %d/%d, %d hits, %d misses, %d evictions",
+                             map.size(), totalWeight, maxWeight, hits, misses, evictions);
+    }
+}
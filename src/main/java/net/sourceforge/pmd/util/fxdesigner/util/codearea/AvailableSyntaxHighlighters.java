@@ -59,6 +59,11 @@ public enum AvailableSyntaxHighlighters implements SyntaxHighlighter {
         return engine.computeHighlighting(text);
     }
 
+    @Override
+    public HighlightingSession newSession() {
+        return engine.newSession();
+    }
+
     /**
      * Gets the highlighter for a language if available.
      *
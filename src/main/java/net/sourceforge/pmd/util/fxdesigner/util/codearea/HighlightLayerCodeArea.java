@@ -4,6 +4,8 @@
 
 package net.sourceforge.pmd.util.fxdesigner.util.codearea;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -19,6 +21,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.fxmisc.richtext.model.StyleSpans;
+import org.reactfx.EventStreams;
+import org.reactfx.value.Var;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.util.fxdesigner.util.RichRunnable;
@@ -34,6 +38,10 @@ import javafx.scene.control.IndexRange;
  * in addition to syntax highlighting. Layers are identified by a {@link LayerId},
  * which are listed in an enum.
  *
+ * <p>In {@linkplain #viewportPaintingProperty() viewport painting mode},
+ * the layers are only applied to the paragraphs around the viewport, and
+ * the rest of the text is restyled lazily when it's scrolled into view.
+ *
  * @param <K> Enum type listing the layer ids to use
  * @author Clément Fournier
  * @since 6.5.0
@@ -41,9 +49,19 @@ import javafx.scene.control.IndexRange;
 public class HighlightLayerCodeArea<K extends Enum<K> & LayerId> extends SyntaxHighlightingCodeArea {
 
 
+    /** Number of paragraphs around the viewport that are painted in viewport painting mode. */
+    private static final int VIEWPORT_PAINTING_MARGIN = 60;
+    /** Delay after which scrolling paints the paragraphs that came into view. */
+    private static final Duration VIEWPORT_REPAINT_DELAY = Duration.ofMillis(50);
+
     /** Contains the highlighting layers. */
     private final Map<K, StyleLayer> layersById;
 
+    private final StyleSpansMerger merger = new StyleSpansMerger();
+    private final Var<Boolean> viewportPainting = Var.newSimpleVar(false);
+    /** Range of text whose styling reflects the current layers, null if unknown. */
+    private @Nullable IndexRange paintedRange;
+
 
     /**
      * Builds a new code area with the given enum type as layer id provider.
@@ -58,6 +76,28 @@ public class HighlightLayerCodeArea<K extends Enum<K> & LayerId> extends SyntaxH
         this.layersById = EnumSet.allOf(idEnum)
                                  .stream()
                                  .collect(Collectors.toConcurrentMap(id -> id, id -> new StyleLayer()));
+
+        // offsets of the painted range are outdated
+        plainTextChanges().subscribe(ch -> paintedRange = null);
+
+        estimatedScrollYProperty().values()
+                                  .or(EventStreams.valuesOf(heightProperty()))
+                                  .conditionOn(viewportPainting)
+                                  .successionEnds(VIEWPORT_REPAINT_DELAY)
+                                  .subscribe(tick -> paintIfOutdated());
+
+        // the whole text is painted again when leaving the mode
+        viewportPainting.changes().subscribe(ch -> updateStyling(() -> { }));
+    }
+
+
+    /**
+     * Whether the layers are only painted on the paragraphs around the
+     * viewport. Updating a layer then doesn't restyle the whole text,
+     * which matters for large files. False by default.
+     */
+    public Var<Boolean> viewportPaintingProperty() {
+        return viewportPainting;
     }
 
 
@@ -106,22 +146,70 @@ public class HighlightLayerCodeArea<K extends Enum<K> & LayerId> extends SyntaxH
     public void updateStyling(Runnable update) {
         Platform.runLater(() -> {
             update.run();
-            try {
-                this.setStyleSpans(0, recomputePainting());
-            } catch (Exception e) {
-                // we ignore these particular exceptions because they're
-                // commonly thrown when the text is being edited while
-                // the layering algorithm runs, and it doesn't matter
-                if ("StyleSpan's length cannot be negative".equals(e.getMessage())
-                    || StringUtils.contains(e.getMessage(), "is not a valid range within")) {
-                    return;
-                }
-                throw new RuntimeException("Unhandled error while recomputing the styling", e);
-            }
+            paint(paintingWindow());
         });
     }
 
 
+    /** Paints the paragraphs that were scrolled into view since the last update. */
+    private void paintIfOutdated() {
+        IndexRange window = paintingWindow();
+        IndexRange painted = paintedRange;
+        if (painted != null && painted.getStart() <= window.getStart() && window.getEnd() <= painted.getEnd()) {
+            return;
+        }
+        paint(window);
+        if (painted != null && paintedRange != null
+            && painted.getStart() <= window.getEnd() && window.getStart() <= painted.getEnd()) {
+            // both are up to date and contiguous
+            paintedRange = new IndexRange(Math.min(painted.getStart(), window.getStart()),
+                                          Math.max(painted.getEnd(), window.getEnd()));
+        }
+    }
+
+
+    private void paint(IndexRange window) {
+        paintedRange = null;
+        try {
+            this.setStyleSpans(window.getStart(), recomputePainting(window.getStart(), window.getEnd()));
+            paintedRange = window;
+        } catch (Exception e) {
+            // we ignore these particular exceptions because they're
+            // commonly thrown when the text is being edited while
+            // the layering algorithm runs, and it doesn't matter
+            if ("StyleSpan's length cannot be negative".equals(e.getMessage())
+                || StringUtils.contains(e.getMessage(), "is not a valid range within")) {
+                return;
+            }
+            throw new RuntimeException("Unhandled error while recomputing the styling", e);
+        }
+    }
+
+
+    /**
+     * Range of text to paint: the whole text, or in viewport painting mode,
+     * the visible paragraphs and a margin around them.
+     */
+    private IndexRange paintingWindow() {
+        IndexRange whole = new IndexRange(0, getLength());
+        if (!viewportPainting.getValue() || getVisibleParagraphs().isEmpty()) {
+            return whole;
+        }
+
+        int firstPar;
+        int lastPar;
+        try {
+            firstPar = Math.max(0, firstVisibleParToAllParIndex() - VIEWPORT_PAINTING_MARGIN);
+            lastPar = Math.min(getParagraphs().size() - 1, lastVisibleParToAllParIndex() + VIEWPORT_PAINTING_MARGIN);
+        } catch (AssertionError e) {
+            // thrown by RichTextFX in some corner cases, see NodeEditionCodeArea
+            return whole;
+        }
+        return new IndexRange(getAbsolutePosition(firstPar, 0),
+                              getAbsolutePosition(lastPar, getParagraphLength(lastPar)));
+    }
+
+
     /**
      * Clears all style layers from their contents, including syntax highlighting.
      */
@@ -144,20 +232,23 @@ public class HighlightLayerCodeArea<K extends Enum<K> & LayerId> extends SyntaxH
 
 
     /**
-     * Recomputes a single style spans from the syntax highlighting layer and nodes to highlight.
+     * Recomputes a single style spans from the syntax highlighting layer and nodes to highlight,
+     * for the given range of text. Only the spans of that range are overlaid.
      */
-    private StyleSpans<Collection<String>> recomputePainting() {
+    private StyleSpans<Collection<String>> recomputePainting(int from, int to) {
 
-        List<StyleSpans<Collection<String>>> allSpans = layersById.values().stream()
-                                                                  .flatMap(layer -> layer.getCollections().stream())
-                                                                  .filter(c -> !c.isEmpty())
-                                                                  .map(UniformStyleCollection::toSpans)
-                                                                  .collect(Collectors.toList());
+        // each layer only overlays its nodes that intersect the range
+        List<StyleSpans<Collection<String>>> windows = layersById.values().stream()
+                                                                 .flatMap(layer -> layer.getCollections().stream())
+                                                                 .filter(c -> !c.isEmpty())
+                                                                 .map(c -> window(c.toSpans(from, to), from, to))
+                                                                 .collect(Collectors.toCollection(ArrayList::new));
 
         ensureSyntaxUpToDate();
 
-        if (allSpans.isEmpty()) {
-            return syntaxHighlight.getOrElse(emptySpan());
+        if (windows.isEmpty()) {
+            StyleSpans<Collection<String>> syntax = syntaxHighlight.getOrElse(emptySpan());
+            return from == 0 && to >= syntax.length() ? syntax : window(syntax, from, to);
         }
 
         if (syntaxHighlight.getOpt().map(StyleSpans::length).filter(l -> l != getLength()).isPresent()) {
@@ -169,16 +260,27 @@ public class HighlightLayerCodeArea<K extends Enum<K> & LayerId> extends SyntaxH
             updateSyntaxHighlightingSynchronously();
         }
 
-        syntaxHighlight.ifPresent(allSpans::add);
-
-        final StyleSpans<Collection<String>> base = allSpans.get(0);
-
-        return allSpans.stream()
-                       .filter(spans -> !base.equals(spans))
+        syntaxHighlight.getOpt()
                        .filter(spans -> spans.length() <= getLength())
-                       .reduce(base, (accumulator, elt) -> accumulator.overlay(elt, SyntaxHighlightingCodeArea::additiveOverlay));
+                       .ifPresent(spans -> windows.add(window(spans, from, to)));
 
+        // a single pass over all layers
+        return merger.merge(windows);
+    }
 
+
+    /**
+     * Returns the part of the spans between the given offsets. The spans
+     * of a layer usually stop at the end of their last node, the result is
+     * padded with an empty style so that all windows have the same length.
+     */
+    private static StyleSpans<Collection<String>> window(StyleSpans<Collection<String>> spans, int from, int to) {
+        int end = Math.min(to, spans.length());
+        if (end <= from) {
+            return StyleSpans.singleton(Collections.emptyList(), to - from);
+        }
+        StyleSpans<Collection<String>> sub = from == 0 && end == spans.length() ? spans : spans.subView(from, end);
+        return end == to ? sub : sub.concat(StyleSpans.singleton(Collections.emptyList(), to - end));
     }
 
 
@@ -189,15 +291,16 @@ public class HighlightLayerCodeArea<K extends Enum<K> & LayerId> extends SyntaxH
      */
     @Override
     protected final @NonNull StyleSpans<Collection<String>> styleSyntaxHighlightChange(final @Nullable StyleSpans<Collection<String>> oldSyntax,
-                                                                              final @Nullable StyleSpans<Collection<String>> newSyntax) {
+                                                                              final @Nullable StyleSpans<Collection<String>> newSyntax,
+                                                                              int from, int to) {
 
-        StyleSpans<Collection<String>> currentSpans = getStyleSpans(new IndexRange(0, getLength()));
-        StyleSpans<Collection<String>> base = Optional.ofNullable(oldSyntax).map(s -> subtract(currentSpans, s)).orElse(currentSpans);
+        StyleSpans<Collection<String>> currentSpans = getStyleSpans(new IndexRange(from, to));
+        StyleSpans<Collection<String>> base = Optional.ofNullable(oldSyntax).map(s -> subtract(currentSpans, window(s, from, to))).orElse(currentSpans);
 
         return Optional.ofNullable(newSyntax)
-                       .map(s -> base.overlay(s, SyntaxHighlightingCodeArea::additiveOverlay))
+                       .map(s -> base.overlay(window(s, from, to), SyntaxHighlightingCodeArea::additiveOverlay))
                        .orElse(base)
-                       .subView(0, getLength());
+                       .subView(0, to - from);
     }
 
 
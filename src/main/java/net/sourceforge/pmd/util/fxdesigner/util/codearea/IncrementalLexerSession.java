@@ -0,0 +1,456 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.LexerBasedHighlighter.JflexLexer;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlighter.Highlighting;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlighter.HighlightingSession;
+
+
+/**
+ * Highlights the successive versions of a document with a lexer, only
+ * lexing again the part of the text that changed. The state of the lexer
+ * is recorded at the first token boundary of each line (a checkpoint).
+ * When the text changes, lexing restarts from the last checkpoint before
+ * the change, and stops at the first checkpoint after the change where
+ * the lexer is in the same state as it was at that place in the previous
+ * version. The rest of the text is the same, so are its tokens, which are
+ * reused. Highlighting an edit then costs about the length of the edited
+ * lines, unless the edit changes the state of the lexer for the rest of
+ * the file, eg by opening a comment. The spans of the relexed tokens are
+ * spliced into the previous spans, and {@link #highlight(String)} reports
+ * the range that was relexed, so that only that range is restyled.
+ *
+ * <p>The changed region is found by comparing the new text with the
+ * previous one, so that any number of edits may happen between two
+ * calls. The lexer is fed one line at a time, so that we know how far it
+ * looked ahead before each checkpoint. A checkpoint is only reused if the
+ * lexer hadn't read the changed region when it was recorded. For instance,
+ * after an unterminated {@code /*}, the lexer looks ahead until the end of
+ * the file, so closing the comment anywhere relexes from before it.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+final class IncrementalLexerSession implements HighlightingSession {
+
+    private final LexerBasedHighlighter highlighter;
+
+    private final Lock lock = new ReentrantLock();
+
+    // guarded by the lock
+    private @Nullable String text;
+    private @Nullable Lexed lexed;
+    private @Nullable StyleSpans<Collection<String>> spans;
+    private int lastLexedLength;
+
+
+    IncrementalLexerSession(LexerBasedHighlighter highlighter) {
+        this.highlighter = highlighter;
+    }
+
+
+    @Override
+    public StyleSpans<Collection<String>> computeHighlighting(String newText) {
+        return highlight(newText).getSpans();
+    }
+
+
+    @Override
+    public Highlighting highlight(String newText) {
+        lock.lock();
+        try {
+            return highlightLocked(newText);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public @Nullable Highlighting tryHighlight(String newText) {
+        if (!lock.tryLock()) {
+            return null;
+        }
+        try {
+            return highlightLocked(newText);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private Highlighting highlightLocked(String newText) {
+        if (text != null && spans != null && text.equals(newText)) {
+            return new Highlighting(spans, spans, 0, 0);
+        }
+
+        StyleSpans<Collection<String>> previous = spans;
+        Highlighting result;
+        try {
+            result = text == null || lexed == null || previous == null
+                     ? lexFromStart(newText)
+                     : relex(text, lexed, previous, newText);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // shouldn't occur
+        }
+
+        this.text = newText;
+        this.spans = result.getSpans();
+        return result;
+    }
+
+
+    /** Number of characters that were lexed to highlight the latest version of the text. */
+    int getLastLexedLength() {
+        lock.lock();
+        try {
+            return lastLexedLength;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private Highlighting lexFromStart(String newText) throws IOException {
+        LineReader reader = new LineReader(newText, 0);
+        JflexLexer lexer = highlighter.newLexer(reader);
+        LexedBuilder builder = new LexedBuilder();
+        builder.addCheckpoint(0, lexer.saveState(), 0);
+        lex(newText, 0, lexer, reader, builder, null, 0, 0);
+        this.lexed = builder.build();
+        return new Highlighting(null, lexed.toSpans(0, lexed.tokenCount), 0, newText.length());
+    }
+
+
+    /**
+     * Lexes the changed region again, and splices its tokens into the
+     * previous spans. The spans before the restart checkpoint and after
+     * the synchronization point are reused as is.
+     */
+    private Highlighting relex(String oldText, Lexed old, StyleSpans<Collection<String>> oldSpans, String newText) throws IOException {
+        int prefix = commonPrefixLength(oldText, newText);
+        int suffix = commonSuffixLength(oldText, newText, Math.min(oldText.length(), newText.length()) - prefix);
+        int delta = newText.length() - oldText.length();
+
+        // The last checkpoint recorded before the lexer saw the change.
+        // There's always one at offset zero.
+        int restart = Math.max(0, old.lastCheckpointNotReading(prefix));
+        int restartOffset = old.checkpointOffsets[restart];
+        int restartToken = old.checkpointTokens[restart];
+
+        LexedBuilder builder = new LexedBuilder();
+        builder.copyTokens(old, 0, restartToken);
+        builder.copyCheckpoints(old, 0, restart + 1, 0, 0, 0);
+
+        LineReader reader = new LineReader(newText, restartOffset);
+        JflexLexer lexer = highlighter.newLexer(reader);
+        lexer.restoreState(old.checkpointStates[restart]);
+        int sync = lex(newText, restartOffset, lexer, reader, builder, old, newText.length() - suffix, delta);
+        Lexed result = builder.build();
+        this.lexed = result;
+
+        int syncOffset = sync < 0 ? newText.length() : sync;
+        int syncToken = sync < 0 ? result.tokenCount : result.checkpointTokens[result.checkpointAt(sync)];
+
+        StyleSpans<Collection<String>> newSpans = result.toSpans(restartToken, syncToken);
+        if (restartOffset > 0) {
+            newSpans = oldSpans.subView(0, restartOffset).concat(newSpans);
+        }
+        int oldSyncOffset = syncOffset - delta;
+        if (oldSyncOffset < oldSpans.length()) {
+            newSpans = newSpans.concat(oldSpans.subView(oldSyncOffset, oldSpans.length()));
+        }
+        return new Highlighting(oldSpans, newSpans, restartOffset, syncOffset);
+    }
+
+
+    /**
+     * Lexes the text from the given offset until the end, or until the
+     * lexer synchronizes with the previous version of the text after the
+     * changed region, in which case the rest of the previous tokens are
+     * copied. Returns the offset from which tokens were copied, or -1
+     * if the text was lexed until the end.
+     *
+     * @param old       Previous version, null to lex until the end
+     * @param changeEnd End of the changed region in the new text
+     * @param delta     Difference between the new length and the old length
+     */
+    private int lex(String text, int offset, JflexLexer lexer, LineReader reader, LexedBuilder builder,
+                     @Nullable Lexed old, int changeEnd, int delta) throws IOException {
+        int pos = offset;
+        boolean sawNewline = false;
+
+        Set<String> classes = lexer.nextSpan();
+        while (classes != null) {
+            int length = lexer.yylength();
+            builder.addToken(length, classes);
+            for (int i = pos; i < pos + length && !sawNewline; i++) {
+                sawNewline = text.charAt(i) == '\n';
+            }
+            pos += length;
+
+            if (sawNewline) {
+                sawNewline = false;
+                Object state = lexer.saveState();
+
+                if (old != null && pos >= changeEnd) {
+                    int oldCheckpoint = old.checkpointAt(pos - delta);
+                    if (oldCheckpoint >= 0 && old.checkpointStates[oldCheckpoint].equals(state)) {
+                        // same state and same text from here on
+                        int oldToken = old.checkpointTokens[oldCheckpoint];
+                        builder.copyCheckpoints(old, oldCheckpoint, old.checkpointCount, delta, builder.tokenCount - oldToken, reader.getReadEnd());
+                        builder.copyTokens(old, oldToken, old.tokenCount);
+                        lastLexedLength = pos - offset;
+                        return pos;
+                    }
+                }
+                builder.addCheckpoint(pos, state, reader.getReadEnd());
+            }
+            classes = lexer.nextSpan();
+        }
+        lastLexedLength = pos - offset;
+        return -1;
+    }
+
+
+    private static int commonPrefixLength(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+
+    private static int commonSuffixLength(String a, String b, int max) {
+        int i = 0;
+        while (i < max && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i;
+    }
+
+
+    /** Tokens and checkpoints of a version of the text. */
+    private static final class Lexed {
+
+        final int[] tokenLengths;
+        final Object[] tokenStyles;
+        final int tokenCount;
+
+        final int[] checkpointOffsets;
+        /** Index of the first token after each checkpoint. */
+        final int[] checkpointTokens;
+        final Object[] checkpointStates;
+        /** End of the text that had been read by the lexer at each checkpoint, increasing. */
+        final int[] checkpointReadEnds;
+        final int checkpointCount;
+
+
+        Lexed(LexedBuilder builder) {
+            this.tokenLengths = builder.tokenLengths;
+            this.tokenStyles = builder.tokenStyles;
+            this.tokenCount = builder.tokenCount;
+            this.checkpointOffsets = builder.checkpointOffsets;
+            this.checkpointTokens = builder.checkpointTokens;
+            this.checkpointStates = builder.checkpointStates;
+            this.checkpointReadEnds = builder.checkpointReadEnds;
+            this.checkpointCount = builder.checkpointCount;
+        }
+
+
+        /**
+         * Index of the last checkpoint that was recorded before the lexer
+         * read the character at the given offset, or -1.
+         */
+        int lastCheckpointNotReading(int offset) {
+            // read ends may repeat, find the last one <= offset
+            int lo = 0;
+            int hi = checkpointCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (checkpointReadEnds[mid] <= offset) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo - 1;
+        }
+
+
+        /** Index of the checkpoint at the given offset, or -1. */
+        int checkpointAt(int offset) {
+            int i = Arrays.binarySearch(checkpointOffsets, 0, checkpointCount, offset);
+            return i >= 0 ? i : -1;
+        }
+
+
+        /** Spans of the tokens between the given indices. */
+        @SuppressWarnings("unchecked")
+        StyleSpans<Collection<String>> toSpans(int fromToken, int toToken) {
+            if (toToken <= fromToken) {
+                return StyleSpans.singleton(Collections.emptyList(), 0);
+            }
+            StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>(toToken - fromToken);
+            for (int i = fromToken; i < toToken; i++) {
+                builder.add((Collection<String>) tokenStyles[i], tokenLengths[i]);
+            }
+            return builder.create();
+        }
+    }
+
+
+    private static final class LexedBuilder {
+
+        private int[] tokenLengths = new int[64];
+        private Object[] tokenStyles = new Object[64];
+        private int tokenCount;
+
+        private int[] checkpointOffsets = new int[16];
+        private int[] checkpointTokens = new int[16];
+        private Object[] checkpointStates = new Object[16];
+        private int[] checkpointReadEnds = new int[16];
+        private int checkpointCount;
+
+
+        void addToken(int length, Set<String> styles) {
+            ensureTokenCapacity(tokenCount + 1);
+            tokenLengths[tokenCount] = length;
+            tokenStyles[tokenCount] = styles;
+            tokenCount++;
+        }
+
+
+        /** Adds a checkpoint before the next token. */
+        void addCheckpoint(int offset, Object state, int readEnd) {
+            ensureCheckpointCapacity(checkpointCount + 1);
+            checkpointOffsets[checkpointCount] = offset;
+            checkpointTokens[checkpointCount] = tokenCount;
+            checkpointStates[checkpointCount] = state;
+            checkpointReadEnds[checkpointCount] = readEnd;
+            checkpointCount++;
+        }
+
+
+        void copyTokens(Lexed source, int from, int to) {
+            int n = to - from;
+            ensureTokenCapacity(tokenCount + n);
+            System.arraycopy(source.tokenLengths, from, tokenLengths, tokenCount, n);
+            System.arraycopy(source.tokenStyles, from, tokenStyles, tokenCount, n);
+            tokenCount += n;
+        }
+
+
+        /**
+         * Copies checkpoints, shifting them. The read ends are shifted as
+         * well, and are at least the given minimum.
+         */
+        void copyCheckpoints(Lexed source, int from, int to, int offsetShift, int tokenShift, int minReadEnd) {
+            int n = to - from;
+            ensureCheckpointCapacity(checkpointCount + n);
+            for (int i = 0; i < n; i++) {
+                checkpointOffsets[checkpointCount + i] = source.checkpointOffsets[from + i] + offsetShift;
+                checkpointTokens[checkpointCount + i] = source.checkpointTokens[from + i] + tokenShift;
+                checkpointReadEnds[checkpointCount + i] = Math.max(minReadEnd, source.checkpointReadEnds[from + i] + offsetShift);
+            }
+            System.arraycopy(source.checkpointStates, from, checkpointStates, checkpointCount, n);
+            checkpointCount += n;
+        }
+
+
+        private void ensureTokenCapacity(int capacity) {
+            if (capacity > tokenLengths.length) {
+                int newCapacity = Math.max(capacity, tokenLengths.length * 2);
+                tokenLengths = Arrays.copyOf(tokenLengths, newCapacity);
+                tokenStyles = Arrays.copyOf(tokenStyles, newCapacity);
+            }
+        }
+
+
+        private void ensureCheckpointCapacity(int capacity) {
+            if (capacity > checkpointOffsets.length) {
+                int newCapacity = Math.max(capacity, checkpointOffsets.length * 2);
+                checkpointOffsets = Arrays.copyOf(checkpointOffsets, newCapacity);
+                checkpointTokens = Arrays.copyOf(checkpointTokens, newCapacity);
+                checkpointStates = Arrays.copyOf(checkpointStates, newCapacity);
+                checkpointReadEnds = Arrays.copyOf(checkpointReadEnds, newCapacity);
+            }
+        }
+
+
+        Lexed build() {
+            return new Lexed(this);
+        }
+    }
+
+
+    /**
+     * Reads a text from an offset, without copying it, and one line at
+     * a time. JFlex only reads more when it needs to look further ahead,
+     * so this records how far the lexer looked.
+     */
+    private static final class LineReader extends Reader {
+
+        private final CharSequence text;
+        private int pos;
+        private boolean sawEof;
+
+
+        LineReader(CharSequence text, int offset) {
+            this.text = text;
+            this.pos = offset;
+        }
+
+
+        /**
+         * Returns the offset after the last character that was read. If the
+         * lexer saw the end of the text, then this is past the end, since
+         * appending text may change the last tokens.
+         */
+        int getReadEnd() {
+            return sawEof ? text.length() + 1 : pos;
+        }
+
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos >= text.length()) {
+                sawEof = true;
+                return -1;
+            }
+            int n = 0;
+            while (n < len && pos < text.length()) {
+                char c = text.charAt(pos++);
+                cbuf[off + n++] = c;
+                if (c == '\n') {
+                    break;
+                }
+            }
+            return n;
+        }
+
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+}
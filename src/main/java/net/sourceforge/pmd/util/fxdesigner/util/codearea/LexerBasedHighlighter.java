@@ -8,6 +8,8 @@ package net.sourceforge.pmd.util.fxdesigner.util.codearea;
 import static net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil.setOf;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Collection;
 import java.util.Set;
 
@@ -31,13 +33,18 @@ public abstract class LexerBasedHighlighter implements SyntaxHighlighter {
         this.languageName = languageName;
     }
 
-    protected abstract JflexLexer newLexer(String text, Set<String> baseClasses);
+    protected abstract JflexLexer newLexer(Reader reader, Set<String> baseClasses);
+
+
+    final JflexLexer newLexer(Reader reader) {
+        return newLexer(reader, setOf(languageName, "code"));
+    }
 
     @Override
     public StyleSpans<Collection<String>> computeHighlighting(String text) {
         StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
 
-        JflexLexer lexer = newLexer(text, setOf(languageName, "code"));
+        JflexLexer lexer = newLexer(new StringReader(text));
         try {
             Set<String> classes = lexer.nextSpan();
             while (classes != null) {
@@ -51,6 +58,16 @@ public abstract class LexerBasedHighlighter implements SyntaxHighlighter {
         return builder.create();
     }
 
+
+    /**
+     * Returns a session that only lexes again the lines that changed
+     * since the previous version of the text.
+     */
+    @Override
+    public HighlightingSession newSession() {
+        return new IncrementalLexerSession(this);
+    }
+
     @Override
     public final String getLanguageTerseName() {
         return languageName;
@@ -66,5 +83,30 @@ public abstract class LexerBasedHighlighter implements SyntaxHighlighter {
 
         int yylength();
 
+
+        /** Implemented by JFlex. */
+        int yystate();
+
+
+        /** Implemented by JFlex. */
+        void yybegin(int newState);
+
+
+        /**
+         * Returns a snapshot of the state of the lexer between two tokens.
+         * Lexing the same text from two equal snapshots must yield the same
+         * tokens. Lexers that have more state than their lexical state must
+         * override this and {@link #restoreState(Object)}.
+         */
+        default Object saveState() {
+            return yystate();
+        }
+
+
+        /** Restores a snapshot taken by {@link #saveState()}, on a fresh lexer. */
+        default void restoreState(Object state) {
+            yybegin((Integer) state);
+        }
+
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+
+/**
+ * Merges several layers of style spans into one, in a single sweep over
+ * the boundaries of all their spans. The style of a merged span is the
+ * union of the style classes of the layers at that place, like
+ * {@link SyntaxHighlightingCodeArea#additiveOverlay(Collection, Collection)}.
+ *
+ * <p>The next boundary is found with a priority queue over the layers,
+ * and the union is maintained incrementally by counting the layers that
+ * contribute each class. Unions are interned, so that a merge only allocates
+ * a set for a combination of classes it hasn't seen before. Interned sets
+ * are shared between the merges of the same instance, they're unmodifiable.
+ *
+ * <p>Not thread-safe, code areas each have their own.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+final class StyleSpansMerger {
+
+    /** Above that many interned styles, the table is emptied. */
+    private static final int MAX_INTERNED_STYLES = 10_000;
+
+    private final Map<Set<String>, Set<String>> internedStyles = new HashMap<>();
+
+    // state of the current merge
+    private final Map<String, int[]> classCounts = new HashMap<>();
+    private final Set<String> activeClasses = new HashSet<>();
+
+
+    /**
+     * Merges the layers. The result is as long as the longest layer,
+     * shorter layers don't contribute past their end.
+     */
+    StyleSpans<Collection<String>> merge(List<StyleSpans<Collection<String>>> layers) {
+        if (internedStyles.size() > MAX_INTERNED_STYLES) {
+            internedStyles.clear();
+        }
+        classCounts.clear();
+        activeClasses.clear();
+
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, layers.size()), (a, b) -> Integer.compare(a.end, b.end));
+        for (StyleSpans<Collection<String>> layer : layers) {
+            Cursor cursor = new Cursor(layer.iterator());
+            if (cursor.advance(0)) {
+                queue.add(cursor);
+            }
+        }
+
+        StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+        Set<String> pendingStyle = null;
+        int pendingLength = 0;
+        int pos = 0;
+
+        while (!queue.isEmpty()) {
+            int next = queue.peek().end;
+            Set<String> style = intern(activeClasses);
+            if (style == pendingStyle) {
+                pendingLength += next - pos;
+            } else {
+                if (pendingStyle != null) {
+                    builder.add(pendingStyle, pendingLength);
+                }
+                pendingStyle = style;
+                pendingLength = next - pos;
+            }
+            pos = next;
+
+            // all the layers that have a boundary here move to their next span
+            while (!queue.isEmpty() && queue.peek().end == pos) {
+                Cursor cursor = queue.poll();
+                if (cursor.advance(pos)) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        if (pendingStyle == null) {
+            return StyleSpans.singleton(Collections.emptyList(), 0);
+        }
+        builder.add(pendingStyle, pendingLength);
+        return builder.create();
+    }
+
+
+    private Set<String> intern(Set<String> classes) {
+        if (classes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> interned = internedStyles.get(classes);
+        if (interned == null) {
+            interned = Collections.unmodifiableSet(new HashSet<>(classes));
+            internedStyles.put(interned, interned);
+        }
+        return interned;
+    }
+
+
+    private void addClasses(Collection<String> style) {
+        for (String c : style) {
+            int[] count = classCounts.computeIfAbsent(c, k -> new int[1]);
+            if (count[0]++ == 0) {
+                activeClasses.add(c);
+            }
+        }
+    }
+
+
+    private void removeClasses(Collection<String> style) {
+        for (String c : style) {
+            int[] count = classCounts.get(c);
+            if (--count[0] == 0) {
+                activeClasses.remove(c);
+            }
+        }
+    }
+
+
+    /** Position in a layer. */
+    private final class Cursor {
+
+        private final Iterator<StyleSpan<Collection<String>>> spans;
+        private @Nullable Collection<String> style;
+        /** End offset of the current span. */
+        private int end;
+
+
+        Cursor(Iterator<StyleSpan<Collection<String>>> spans) {
+            this.spans = spans;
+        }
+
+
+        /**
+         * Replaces the classes of the current span with those of the next
+         * non-empty one, which starts at the given offset. Returns false
+         * if the layer is exhausted.
+         */
+        boolean advance(int start) {
+            if (style != null) {
+                removeClasses(style);
+                style = null;
+            }
+            while (spans.hasNext()) {
+                StyleSpan<Collection<String>> span = spans.next();
+                if (span.getLength() > 0) {
+                    style = span.getStyle();
+                    end = start + span.getLength();
+                    addClasses(style);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
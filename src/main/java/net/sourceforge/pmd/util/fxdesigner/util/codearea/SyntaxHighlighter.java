@@ -6,6 +6,7 @@ package net.sourceforge.pmd.util.fxdesigner.util.codearea;
 
 import java.util.Collection;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.fxmisc.richtext.model.StyleSpans;
 
 /**
@@ -36,4 +37,97 @@ public interface SyntaxHighlighter {
     StyleSpans<Collection<String>> computeHighlighting(String text);
 
 
+    /**
+     * Returns a new session to highlight the successive versions of
+     * a single document. A session may reuse the work it did on the
+     * previous version. The default session highlights the whole text
+     * every time.
+     */
+    default HighlightingSession newSession() {
+        return this::computeHighlighting;
+    }
+
+
+    /**
+     * Highlights the successive versions of a document. Sessions are
+     * thread-safe.
+     */
+    @FunctionalInterface
+    interface HighlightingSession {
+
+        /**
+         * Computes the syntax highlighting of the latest version of the
+         * document, see {@link SyntaxHighlighter#computeHighlighting(String)}.
+         */
+        StyleSpans<Collection<String>> computeHighlighting(String text);
+
+
+        /**
+         * Computes the syntax highlighting of the latest version of the
+         * document, and the range of text whose highlighting changed
+         * since the previous call. The default implementation reports
+         * that the whole text changed.
+         */
+        default Highlighting highlight(String text) {
+            StyleSpans<Collection<String>> spans = computeHighlighting(text);
+            return new Highlighting(null, spans, 0, spans.length());
+        }
+
+
+        /**
+         * Like {@link #highlight(String)}, but returns null instead of
+         * waiting if the session is busy on another thread. The default
+         * session is stateless and never busy.
+         */
+        default @Nullable Highlighting tryHighlight(String text) {
+            return highlight(text);
+        }
+    }
+
+
+    /**
+     * Highlighting of a version of a document, see {@link HighlightingSession#highlight(String)}.
+     * Outside of the changed range, the spans are those of the previous
+     * version, shifted by the edit.
+     */
+    final class Highlighting {
+
+        private final @Nullable StyleSpans<Collection<String>> previous;
+        private final StyleSpans<Collection<String>> spans;
+        private final int changeStart;
+        private final int changeEnd;
+
+
+        Highlighting(@Nullable StyleSpans<Collection<String>> previous, StyleSpans<Collection<String>> spans, int changeStart, int changeEnd) {
+            this.previous = previous;
+            this.spans = spans;
+            this.changeStart = changeStart;
+            this.changeEnd = changeEnd;
+        }
+
+
+        /** Spans of the previous version, that the change is relative to, null if unknown. */
+        public @Nullable StyleSpans<Collection<String>> getPrevious() {
+            return previous;
+        }
+
+
+        /** Spans of the whole text. */
+        public StyleSpans<Collection<String>> getSpans() {
+            return spans;
+        }
+
+
+        /** Start offset of the changed range in the new text, inclusive. */
+        public int getChangeStart() {
+            return changeStart;
+        }
+
+
+        /** End offset of the changed range in the new text, exclusive. */
+        public int getChangeEnd() {
+            return changeEnd;
+        }
+    }
+
 }
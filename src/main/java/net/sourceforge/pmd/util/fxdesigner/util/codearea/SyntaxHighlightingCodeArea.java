@@ -10,8 +10,8 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -22,24 +22,33 @@ import org.fxmisc.wellbehaved.event.InputMap;
 import org.fxmisc.wellbehaved.event.Nodes;
 import org.reactfx.EventSource;
 import org.reactfx.EventStream;
+import org.reactfx.EventStreams;
 import org.reactfx.Subscription;
 import org.reactfx.value.Val;
 import org.reactfx.value.Var;
 
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
+import net.sourceforge.pmd.util.fxdesigner.app.services.HighlightingScheduler;
+import net.sourceforge.pmd.util.fxdesigner.app.services.HighlightingScheduler.Priority;
 import net.sourceforge.pmd.util.fxdesigner.util.TextAwareNodeWrapper;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlighter.Highlighting;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlighter.HighlightingSession;
 
-import javafx.concurrent.Task;
+import javafx.application.Platform;
+import javafx.beans.NamedArg;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.stage.Window;
 import javafx.stage.WindowEvent;
 
 
 /**
  * Code area that can handle syntax highlighting. Syntax highlighting is performed asynchronously
- * by another thread. It can be enabled by providing a {@link SyntaxHighlighter} to
+ * by a {@link HighlightingScheduler}, see {@link #setHighlightingScheduler(HighlightingScheduler)}.
+ * It can be enabled by providing a {@link SyntaxHighlighter} to
  * {@link #setSyntaxHighlighter(SyntaxHighlighter)}, and disabled by passing a {@code null} reference
  * to that method.
  *
@@ -58,6 +67,9 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
     /** Current syntax highlighter. Can be absent. */
     private final Var<SyntaxHighlighter> syntaxHighlighter = Var.newSimpleVar(null);
 
+    /** Session of the current highlighter, which may reuse the highlighting of the previous text. */
+    private HighlightingSession highlightingSession;
+
     /** Current highlighting spans. */
     private final Var<StyleSpans<Collection<String>>> currentSyntaxHighlight = Var.newSimpleVar(null);
 
@@ -66,11 +78,14 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
 
     private final EventSource<?> synchronousUpdateTicks = new EventSource<>();
 
+    /** Submits the highlighting requests of this area. */
+    private HighlightingScheduler.Client highlightingClient = HighlightingScheduler.fallback().newClient();
+
     public SyntaxHighlightingCodeArea() {
         // captured in the closure
         final EventHandler<WindowEvent> autoCloseHandler = e -> syntaxAutoRefresh.ifPresent(Subscription::unsubscribe);
 
-        // handles auto shutdown of executor services
+        // handles auto shutdown of highlighting subscriptions
         // by attaching a handler to the stage responsible for the control
         Val.wrap(sceneProperty())
            .filter(Objects::nonNull)
@@ -79,6 +94,14 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
            .filter(Objects::nonNull)
             .subscribe(c -> c.addEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, autoCloseHandler));
 
+        Val.flatMap(sceneProperty(), Scene::windowProperty)
+           .flatMap(Window::showingProperty)
+           .values()
+           .or(EventStreams.valuesOf(focusedProperty()))
+           // the content of a deselected tab is made invisible by the skin of the tab pane
+           .or(EventStreams.valuesOf(treeVisibleProperty(this)))
+           .subscribe(any -> updateHighlightingPriority());
+
 
         // prevent ALT from focusing menu
         addEventFilter(KeyEvent.KEY_PRESSED, e -> {
@@ -98,6 +121,62 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
     }
 
 
+    /**
+     * Builds an area whose highlighting is computed by the scheduler of
+     * the given designer root. Areas declared in FXML are injected with
+     * the root, see
+     * {@link net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil#customBuilderFactory(DesignerRoot)}.
+     */
+    public SyntaxHighlightingCodeArea(@NamedArg("designerRoot") DesignerRoot root) {
+        this();
+        setHighlightingScheduler(root.getService(DesignerRoot.HIGHLIGHTING_SCHEDULER));
+    }
+
+
+    /**
+     * Sets the scheduler that computes the highlighting of this area,
+     * usually the one of the designer root. If null, or by default, the
+     * area uses {@link HighlightingScheduler#fallback()}.
+     */
+    public void setHighlightingScheduler(@Nullable HighlightingScheduler scheduler) {
+        highlightingClient.cancel();
+        highlightingClient = (scheduler == null ? HighlightingScheduler.fallback() : scheduler).newClient();
+        updateHighlightingPriority();
+    }
+
+
+    /**
+     * The focused area is highlighted first, then the visible ones. Areas
+     * in background tabs or closed popups are served last.
+     */
+    private void updateHighlightingPriority() {
+        highlightingClient.setPriority(isFocused() ? Priority.FOCUSED
+                                                   : isTreeVisible() ? Priority.VISIBLE : Priority.HIDDEN);
+    }
+
+
+    private boolean isTreeVisible() {
+        Scene scene = getScene();
+        if (scene == null || scene.getWindow() == null || !scene.getWindow().isShowing()) {
+            return false;
+        }
+        for (javafx.scene.Node n = this; n != null; n = n.getParent()) {
+            if (!n.isVisible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /** Whether the node and all its ancestors are visible, updated when a parent changes. */
+    private static Val<Boolean> treeVisibleProperty(javafx.scene.Node node) {
+        Val<Boolean> parentVisible = Val.flatMap(node.parentProperty(), SyntaxHighlightingCodeArea::treeVisibleProperty)
+                                        .orElseConst(true);
+        return Val.combine(node.visibleProperty(), parentVisible, (visible, parent) -> visible && parent);
+    }
+
+
     /**
      * Enables syntax highlighting if disabled and sets it to use the given highlighter.
      * If the argument is null, then this method disables syntax highlighting.
@@ -114,20 +193,23 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
 
         if (highlighter == null) {
             syntaxAutoRefresh.setValue(null);
+            highlightingSession = null;
             this.setCurrentSyntaxHighlight(null);
             return;
         }
 
+        HighlightingSession session = highlighter.newSession();
+        highlightingSession = session;
 
         getStyleClass().add(highlighter.getLanguageTerseName());
-        syntaxAutoRefresh.setValue(subscribeSyntaxHighlighting(defaultHighlightingTicks(), synchronousUpdateTicks, highlighter));
+        syntaxAutoRefresh.setValue(subscribeSyntaxHighlighting(defaultHighlightingTicks(), synchronousUpdateTicks, session));
 
-        try { // refresh the highlighting once.
-            Task<StyleSpans<Collection<String>>> t = computeHighlightingAsync(Executors.newSingleThreadExecutor(), highlighter, getText());
-            t.setOnSucceeded(e -> this.setCurrentSyntaxHighlight(t.getValue()));
-        } catch (Exception ignored) {
-            // nevermind
-        }
+        // refresh the highlighting once.
+        computeHighlightingAsync(session, getText()).thenAccept(highlighting -> Platform.runLater(() -> {
+            if (highlightingSession == session) {
+                this.applyHighlighting(highlighting);
+            }
+        }));
     }
 
 
@@ -143,34 +225,27 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
     }
 
 
-    private Subscription subscribeSyntaxHighlighting(EventStream<?> ticks, EventStream<?> canceller, SyntaxHighlighter highlighter) {
-        // captured in the closure, shutdown when unsubscribing
-        final ExecutorService executorService = Executors.newSingleThreadExecutor(
-            r -> new Thread(r, "Code-area-" + this.hashCode() + "-"
-                + highlighter.getLanguageTerseName() + "-highlighter"));
+    private Subscription subscribeSyntaxHighlighting(EventStream<?> ticks, EventStream<?> canceller, HighlightingSession session) {
         return ticks.successionEnds(TEXT_CHANGE_DELAY)
-                    .supplyTask(() -> computeHighlightingAsync(executorService, highlighter, this.getText()))
+                    .supplyCompletionStage(() -> computeHighlightingAsync(session, this.getText()))
                     .awaitLatest(ticks.or(canceller))
                     .filterMap(t -> {
-                        t.ifFailure(Throwable::printStackTrace);
+                        t.ifFailure(e -> {
+                            // a request may be superseded by a newer request of this area
+                            if (!(e instanceof CancellationException || e.getCause() instanceof CancellationException)) {
+                                e.printStackTrace();
+                            }
+                        });
                         return t.toOptional();
                     })
-                    .subscribe(this::setCurrentSyntaxHighlight)
-                    .and(executorService::shutdownNow);
+                    .subscribe(this::applyHighlighting)
+                    .and(() -> highlightingClient.cancel());
     }
 
 
-    private static Task<StyleSpans<Collection<String>>> computeHighlightingAsync(ExecutorService service, SyntaxHighlighter highlighter, String text) {
-        Task<StyleSpans<Collection<String>>> task = new Task<StyleSpans<Collection<String>>>() {
-            @Override
-            protected StyleSpans<Collection<String>> call() {
-                return highlighter.computeHighlighting(text);
-            }
-        };
-        if (!service.isShutdown()) {
-            service.execute(task);
-        }
-        return task;
+    private CompletableFuture<Highlighting> computeHighlightingAsync(HighlightingSession session, String text) {
+        updateHighlightingPriority();
+        return highlightingClient.submit(() -> session.highlight(text));
     }
 
 
@@ -195,19 +270,47 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
         StyleSpans<Collection<String>> oldSyntaxHighlight = currentSyntaxHighlight.getValue();
         this.currentSyntaxHighlight.setValue(newSyntax);
 
-        setStyleSpans(0, styleSyntaxHighlightChange(oldSyntaxHighlight, newSyntax));
+        setStyleSpans(0, styleSyntaxHighlightChange(oldSyntaxHighlight, newSyntax, 0, getLength()));
+    }
+
+
+    /**
+     * Updates the syntax highlighting to the result of the session. If
+     * the result is relative to the current highlighting, only the range
+     * that changed is restyled, otherwise the whole text is.
+     */
+    private void applyHighlighting(Highlighting highlighting) {
+        StyleSpans<Collection<String>> oldSyntaxHighlight = currentSyntaxHighlight.getValue();
+        StyleSpans<Collection<String>> newSyntax = highlighting.getSpans();
+        if (oldSyntaxHighlight == null
+            || highlighting.getPrevious() != oldSyntaxHighlight
+            || newSyntax.length() != getLength()) {
+            setCurrentSyntaxHighlight(newSyntax);
+            return;
+        }
+
+        this.currentSyntaxHighlight.setValue(newSyntax);
+        int from = highlighting.getChangeStart();
+        int to = highlighting.getChangeEnd();
+        if (from < to) {
+            setStyleSpans(from, styleSyntaxHighlightChange(oldSyntaxHighlight, newSyntax, from, to));
+        }
     }
 
     /**
      * Given the old value of the highlighting spans, and a newly computed value,
-     * computes the spans as they should be applied to the codearea. The default behaviour
-     * simply returns the newest spans, which works flawlessly when there is no other
-     * style layer in the game. Subclasses are free to override, to get a chance to
-     * preserve additional style layers.
+     * computes the spans as they should be applied to the given range of the codearea.
+     * The default behaviour simply returns the newest spans, which works flawlessly when
+     * there is no other style layer in the game. Subclasses are free to override, to get
+     * a chance to preserve additional style layers.
      */
     protected @NonNull StyleSpans<Collection<String>> styleSyntaxHighlightChange(final @Nullable StyleSpans<Collection<String>> oldSyntax,
-                                                                        final @Nullable StyleSpans<Collection<String>> newSyntax) {
-        return newSyntax == null ? emptySpan() : newSyntax;
+                                                                        final @Nullable StyleSpans<Collection<String>> newSyntax,
+                                                                        int from, int to) {
+        if (newSyntax == null) {
+            return StyleSpans.singleton(Collections.emptyList(), to - from);
+        }
+        return from == 0 && to >= newSyntax.length() ? newSyntax : newSyntax.subView(from, Math.min(to, newSyntax.length()));
     }
 
 
@@ -219,7 +322,13 @@ public class SyntaxHighlightingCodeArea extends CodeArea {
      */
     protected void updateSyntaxHighlightingSynchronously() {
         synchronousUpdateTicks.push(null);
-        syntaxHighlighter.getOpt().map(h -> h.computeHighlighting(getText())).ifPresent(currentSyntaxHighlight::setValue);
+        SyntaxHighlighter highlighter = syntaxHighlighter.getValue();
+        if (highlightingSession != null && highlighter != null) {
+            String text = getText();
+            // don't wait for a worker that is highlighting with the same session
+            Highlighting highlighting = highlightingSession.tryHighlight(text);
+            currentSyntaxHighlight.setValue(highlighting != null ? highlighting.getSpans() : highlighter.computeHighlighting(text));
+        }
     }
 
 
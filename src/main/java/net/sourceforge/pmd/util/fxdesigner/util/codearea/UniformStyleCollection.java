@@ -40,6 +40,9 @@ public class UniformStyleCollection {
     // sorted in document order
     private final List<NodeStyleSpan> nodes;
     private StyleSpans<Collection<String>> spanCache;
+    private StyleSpans<Collection<String>> windowCache;
+    private int windowCacheStart;
+    private int windowCacheEnd;
 
     public UniformStyleCollection(Set<String> style, Collection<NodeStyleSpan> ns) {
         this.style = style;
@@ -138,12 +141,56 @@ public class UniformStyleCollection {
         return spanCache;
     }
 
+    /**
+     * Overlays the nodes of this collection that intersect the given range
+     * of text, see {@link #toSpans()}. The spans start at offset zero, but
+     * are only meaningful between the given offsets. The result of the
+     * latest range is cached, eg for when only the focus node changes.
+     */
+    public StyleSpans<Collection<String>> toSpans(int from, int to) {
+        if (spanCache != null) {
+            return spanCache;
+        } else if (windowCache != null && windowCacheStart == from && windowCacheEnd == to) {
+            return windowCache;
+        }
+
+        List<PositionSnapshot> intersecting = new ArrayList<>();
+        for (NodeStyleSpan span : nodes) { // sorted in document order
+            PositionSnapshot snapshot = span.snapshot();
+            if (snapshot == null) {
+                continue;
+            } else if (snapshot.getBeginIndex() >= to) {
+                break;
+            } else if (snapshot.getEndIndex() > from) {
+                // the enclosing nodes of a node intersect the range too, so depths are preserved
+                intersecting.add(snapshot);
+            }
+        }
+
+        windowCache = overlay(intersecting);
+        windowCacheStart = from;
+        windowCacheEnd = to;
+        return windowCache;
+    }
+
     public StyleSpans<Collection<String>> buildSpans() {
+        List<PositionSnapshot> snapshots = new ArrayList<>(nodes.size());
+        for (NodeStyleSpan span : nodes) {
+            PositionSnapshot snapshot = span.snapshot();
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        return overlay(snapshots);
+    }
+
+    /** Overlays the given nodes, which are sorted in document order. */
+    private StyleSpans<Collection<String>> overlay(List<PositionSnapshot> snapshots) {
 
-        if (nodes.isEmpty()) {
+        if (snapshots.isEmpty()) {
             return StyleSpans.singleton(Collections.emptyList(), 0);
-        } else if (nodes.size() == 1) {
-            PositionSnapshot snapshot = nodes.get(0).snapshot();
+        } else if (snapshots.size() == 1) {
+            PositionSnapshot snapshot = snapshots.get(0);
             return new StyleSpansBuilder<Collection<String>>().add(Collections.emptyList(), snapshot.getBeginIndex())
                                                               .add(styleForDepth(0, snapshot), snapshot.getLength())
                                                               // we don't bother adding the remainder
@@ -157,12 +204,7 @@ public class UniformStyleCollection {
         PositionSnapshot previous = null;
         int lastSpanEnd = 0;
 
-        for (NodeStyleSpan span : nodes) { // sorted in document order
-
-            PositionSnapshot current = span.snapshot();
-            if (current == null) {
-                continue;
-            }
+        for (PositionSnapshot current : snapshots) { // sorted in document order
 
             // first iteration
             if (previous == null) {
@@ -8,7 +8,7 @@
 
 package net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting;
 
-import java.io.StringReader;
+import java.io.Reader;
 import java.util.Set;
 
 import net.sourceforge.pmd.util.fxdesigner.util.codearea.LexerBasedHighlighter;
@@ -27,7 +27,7 @@ public final class ScalaSyntaxHighlighter extends LexerBasedHighlighter {
     }
 
     @Override
-    protected JflexLexer newLexer(String text, Set<String> baseClasses) {
-        return new ScalaLexer(new StringReader(text), baseClasses);
+    protected JflexLexer newLexer(Reader reader, Set<String> baseClasses) {
+        return new ScalaLexer(reader, baseClasses);
     }
 }
@@ -9,10 +9,16 @@ import static net.sourceforge.pmd.util.fxdesigner.util.DesignerIteratorUtil.reve
 import static net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil.attrToXpathString;
 import static net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil.makeStyledText;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -24,8 +30,10 @@ import net.sourceforge.pmd.util.designerbindings.DesignerBindings;
 import net.sourceforge.pmd.util.designerbindings.DesignerBindings.DefaultDesignerBindings;
 import net.sourceforge.pmd.util.fxdesigner.app.ApplicationComponent;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
+import net.sourceforge.pmd.util.fxdesigner.util.AstDiff;
 import net.sourceforge.pmd.util.fxdesigner.util.controls.SearchableTreeView.SearchableTreeItem;
 
+import javafx.collections.ObservableList;
 import javafx.scene.control.TreeItem;
 import javafx.scene.text.TextFlow;
 
@@ -44,13 +52,24 @@ public final class ASTTreeItem extends SearchableTreeItem<Node> implements Appli
      */
     private final Var<Collection<String>> latentStyleClasses = Var.newSimpleVar(Collections.emptyList());
     private final DesignerRoot designerRoot;
+    /** Builds the items of the tree, including those added by {@link #patch(AstDiff)}. */
+    private final ItemBuilder builder;
+    /** True while the children of a lazy item have not been built. */
+    private boolean childrenPending;
 
 
-    private ASTTreeItem(Node n, int treeIndex, DesignerRoot designerRoot) {
+    private ASTTreeItem(Node n, int treeIndex, ItemBuilder builder) {
         super(n, treeIndex);
-        this.designerRoot = designerRoot;
-        DesignerBindings bindings = languageBindingsProperty().getOrElse(DefaultDesignerBindings.getInstance());
-        setExpanded(bindings.isExpandedByDefaultInTree(n));
+        this.designerRoot = builder.designerRoot;
+        this.builder = builder;
+        if (builder.lazy) {
+            // expanding an item builds its children
+            childrenPending = true;
+            setExpanded(treeIndex == 0);
+        } else {
+            DesignerBindings bindings = languageBindingsProperty().getOrElse(DefaultDesignerBindings.getInstance());
+            setExpanded(bindings.isExpandedByDefaultInTree(n));
+        }
 
         treeCellProperty().changes().subscribe(change -> {
             if (change.getOldValue() != null) {
@@ -117,6 +136,101 @@ public final class ASTTreeItem extends SearchableTreeItem<Node> implements Appli
         return current;
     }
 
+    /**
+     * Returns the children of this item, building them if this item
+     * is lazy and they were never requested.
+     */
+    @Override
+    public ObservableList<TreeItem<Node>> getChildren() {
+        if (childrenPending) {
+            childrenPending = false;
+            List<ASTTreeItem> children = new ArrayList<>(getValue().getNumChildren());
+            for (int i = 0; i < getValue().getNumChildren(); i++) {
+                children.add(builder.build(getValue().getChild(i)));
+            }
+            super.getChildren().setAll(children);
+        }
+        return super.getChildren();
+    }
+
+
+    /**
+     * Rebinds the items of this subtree to the new tree of the diff,
+     * after a reparse. Items whose node has a match are kept, with their
+     * expansion state. The others are removed, and items are built for the
+     * new nodes. This item must wrap a node of the old tree that has a match.
+     * The subtree is walked iteratively, since trees may be very deep.
+     */
+    void patch(AstDiff diff) {
+        Deque<ASTTreeItem> toPatch = new ArrayDeque<>();
+        toPatch.push(this);
+        while (!toPatch.isEmpty()) {
+            toPatch.pop().patchItem(diff, toPatch);
+        }
+    }
+
+
+    /**
+     * Rebinds this item and rebuilds its list of children. The children
+     * that are kept must be patched too, they're pushed on the stack.
+     */
+    private void patchItem(AstDiff diff, Deque<ASTTreeItem> toPatch) {
+        Node newNode = diff.getNewNode(getValue());
+        setValue(newNode);
+        if (childrenPending) {
+            // will be built from the new node
+            return;
+        }
+
+        Map<Node, ASTTreeItem> itemsByOldNode = new IdentityHashMap<>();
+        for (TreeItem<Node> child : super.getChildren()) {
+            itemsByOldNode.put(child.getValue(), (ASTTreeItem) child);
+        }
+
+        List<TreeItem<Node>> newChildren = new ArrayList<>(newNode.getNumChildren());
+        for (int i = 0; i < newNode.getNumChildren(); i++) {
+            Node newChild = newNode.getChild(i);
+            Node oldChild = diff.getOldNode(newChild);
+            ASTTreeItem item = oldChild == null ? null : itemsByOldNode.get(oldChild);
+            if (item != null) {
+                toPatch.push(item);
+            } else {
+                item = builder.build(newChild);
+            }
+            newChildren.add(item);
+        }
+
+        if (!sameItems(newChildren, super.getChildren())) {
+            super.getChildren().setAll(newChildren);
+        }
+    }
+
+
+    private static boolean sameItems(List<TreeItem<Node>> a, List<TreeItem<Node>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    boolean isLazy() {
+        return builder.lazy;
+    }
+
+
+    @Override
+    public boolean isLeaf() {
+        // doesn't build the children of a lazy item
+        return getValue() == null || getValue().getNumChildren() == 0;
+    }
+
+
     public void setStyleClasses(Collection<String> classes) {
         latentStyleClasses.setValue(classes == null ? Collections.emptyList() : classes);
     }
@@ -143,21 +257,35 @@ public final class ASTTreeItem extends SearchableTreeItem<Node> implements Appli
      * Builds an ASTTreeItem recursively from a node.
      */
     static ASTTreeItem buildRoot(Node n, DesignerRoot designerRoot) {
-        return buildRootImpl(n, new MutableInt(0), designerRoot);
+        return buildRoot(n, designerRoot, false, item -> { });
     }
 
 
     /**
-     * Builds an ASTTreeItem recursively from a node.
+     * Builds an ASTTreeItem from a node. If lazy, the children of an item
+     * are only built when they're first requested, eg when it's expanded,
+     * and only the root is expanded. The tree indices of lazy items, and
+     * of items added by {@link #patch(AstDiff)}, follow the order in which
+     * they were built, not the document order.
+     *
+     * @param onBuild Called on every item when it is built
      */
-    private static ASTTreeItem buildRootImpl(Node n, MutableInt idx, DesignerRoot designerRoot) {
-        ASTTreeItem item = new ASTTreeItem(n, idx.getAndIncrement(), designerRoot);
-        if (n.getNumChildren() > 0) {
-            for (int i = 0; i < n.getNumChildren(); i++) {
-                item.getChildren().add(buildRootImpl(n.getChild(i), idx, designerRoot));
+    static ASTTreeItem buildRoot(Node n, DesignerRoot designerRoot, boolean lazy, Consumer<? super ASTTreeItem> onBuild) {
+        return new ItemBuilder(designerRoot, lazy, onBuild).build(n);
+    }
+
+
+    /**
+     * Like {@link #foreach(TreeItem, Consumer)}, but doesn't build
+     * the children of lazy items.
+     */
+    static void foreachBuilt(ASTTreeItem root, Consumer<? super ASTTreeItem> fun) {
+        fun.accept(root);
+        if (!root.childrenPending) {
+            for (TreeItem<Node> child : root.getChildren()) {
+                foreachBuilt((ASTTreeItem) child, fun);
             }
         }
-        return item;
     }
 
     public static <T, N extends TreeItem<T>> void foreach(N root, Consumer<? super N> fun) {
@@ -212,4 +340,32 @@ public final class ASTTreeItem extends SearchableTreeItem<Node> implements Appli
     }
 
 
+    private static final class ItemBuilder {
+
+        private final MutableInt idx = new MutableInt(0);
+        private final DesignerRoot designerRoot;
+        private final boolean lazy;
+        private final Consumer<? super ASTTreeItem> onBuild;
+
+
+        ItemBuilder(DesignerRoot designerRoot, boolean lazy, Consumer<? super ASTTreeItem> onBuild) {
+            this.designerRoot = designerRoot;
+            this.lazy = lazy;
+            this.onBuild = onBuild;
+        }
+
+
+        ASTTreeItem build(Node n) {
+            ASTTreeItem item = new ASTTreeItem(n, idx.getAndIncrement(), this);
+            if (!lazy) {
+                for (int i = 0; i < n.getNumChildren(); i++) {
+                    item.getChildren().add(build(n.getChild(i)));
+                }
+            }
+            onBuild.accept(item);
+            return item;
+        }
+    }
+
+
 }
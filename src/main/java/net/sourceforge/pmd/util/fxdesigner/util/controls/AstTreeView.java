@@ -9,12 +9,18 @@ import static net.sourceforge.pmd.util.fxdesigner.util.AstTraversalUtil.mapToMyT
 import static net.sourceforge.pmd.util.fxdesigner.util.AstTraversalUtil.parentIterator;
 import static net.sourceforge.pmd.util.fxdesigner.util.DesignerIteratorUtil.toIterable;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.reactfx.EventSource;
 import org.reactfx.EventStreams;
 import org.reactfx.SuspendableEventStream;
@@ -23,8 +29,10 @@ import org.reactfx.value.Var;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.util.fxdesigner.app.DesignerRoot;
 import net.sourceforge.pmd.util.fxdesigner.app.NodeSelectionSource;
+import net.sourceforge.pmd.util.fxdesigner.util.AstDiff;
 import net.sourceforge.pmd.util.fxdesigner.util.DataHolder;
 
+import javafx.application.Platform;
 import javafx.beans.NamedArg;
 import javafx.scene.control.SelectionModel;
 import javafx.scene.control.TreeItem;
@@ -39,6 +47,13 @@ import javafx.scene.control.TreeItem;
 public class AstTreeView extends SearchableTreeView<Node> implements NodeSelectionSource {
 
 
+    /** Computes the diffs of all the tree views, off the JavaFX thread. */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AST-diff");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final TreeViewWrapper<Node> myWrapper = new TreeViewWrapper<>(this);
 
     private final EventSource<NodeSelectionEvent> baseSelectionEvents;
@@ -48,6 +63,8 @@ public class AstTreeView extends SearchableTreeView<Node> implements NodeSelecti
         Var.newSimpleVar(n -> Collections.emptySet());
 
     private String debugName = "AstTreeView";
+    /** Last tree passed to {@link #setAstRoot(Node, boolean)}, the diffs computed for previous ones are dropped. */
+    private Node latestRoot;
 
 
     /** Only provided for scenebuilder, not used at runtime. */
@@ -96,25 +113,82 @@ public class AstTreeView extends SearchableTreeView<Node> implements NodeSelecti
                     .subscribe(fun -> {
                         TreeItem<Node> rootNode = getRoot();
                         if (rootNode != null && fun != null) {
-                            ((ASTTreeItem) rootNode).foreach(it -> ((ASTTreeItem) it).setStyleClasses(fun.apply(it.getValue())));
+                            // items of a lazy tree that are built later are styled by setAstRoot
+                            ASTTreeItem.foreachBuilt((ASTTreeItem) rootNode, it -> it.setStyleClasses(fun.apply(it.getValue())));
                         }
                     });
 
     }
 
     public void setAstRoot(Node root) {
+        setAstRoot(root, false);
+    }
+
+    /**
+     * Displays a new tree. If it's a new version of the displayed tree,
+     * the items are patched using an {@link AstDiff}: only the items of the
+     * subtrees that changed are rebuilt, and the others keep their state.
+     * The diff is computed in the background, and the tree is displayed
+     * when it's done, unless another tree was set in the meantime.
+     *
+     * @param lazy If true, the items of a node are only built when it's
+     *             expanded, which is much cheaper for large trees. Lazy
+     *             trees are rebuilt without a diff.
+     *
+     * @return A future that completes on the JavaFX thread once the tree
+     *     is displayed, with the time elapsed since this call. It is
+     *     cancelled if another tree is set before this one is displayed.
+     */
+    public CompletableFuture<Duration> setAstRoot(Node root, boolean lazy) {
+        latestRoot = root;
+        long start = System.nanoTime();
+
+        ASTTreeItem oldRoot = (ASTTreeItem) getRoot();
+        if (root == null || lazy || oldRoot == null || oldRoot.getValue() == null || oldRoot.isLazy()) {
+            displayRoot(root, lazy, null);
+            return CompletableFuture.completedFuture(Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        CompletableFuture<Duration> displayed = new CompletableFuture<>();
+        Node oldAst = oldRoot.getValue();
+        CompletableFuture.supplyAsync(() -> AstDiff.compute(oldAst, root), DIFF_EXECUTOR)
+                         .whenComplete((diff, error) -> Platform.runLater(() -> {
+                             if (latestRoot == root) {
+                                 // if the diff failed, the tree is rebuilt
+                                 displayRoot(root, lazy, getRoot() == oldRoot ? diff : null);
+                                 displayed.complete(Duration.ofNanos(System.nanoTime() - start));
+                             } else {
+                                 displayed.cancel(false);
+                             }
+                         }));
+        return displayed;
+    }
+
+
+    private void displayRoot(Node root, boolean lazy, @Nullable AstDiff diff) {
         // fetch the selected item before setting the root
         ASTTreeItem selectedTreeItem = (ASTTreeItem) getSelectionModel().getSelectedItem();
-
-        setRealRoot(root == null ? null : ASTTreeItem.buildRoot(root, getDesignerRoot()));
+        Node oldSelection = selectedTreeItem == null ? null : selectedTreeItem.getValue();
+
+        ASTTreeItem oldRoot = (ASTTreeItem) getRoot();
+        if (diff != null && diff.getNewNode(oldRoot.getValue()) == root) {
+            oldRoot.patch(diff);
+        } else {
+            // items built later are styled here, the others by the subscription on the root
+            Consumer<ASTTreeItem> onBuild = it -> it.setStyleClasses(getAdditionalStyleClasses().apply(it.getValue()));
+            setRealRoot(root == null ? null : ASTTreeItem.buildRoot(root, getDesignerRoot(), lazy, onBuild));
+        }
 
         if (getDebugName().contains("old")) {
             // prevent the old treeview from shooting back selection recovery events
             return;
         }
 
-        if (root != null && selectedTreeItem != null && selectedTreeItem.getValue() != null) {
-            Node newSelection = findOldNodeInNewAst(selectedTreeItem.getValue(), root).orElse(null);
+        if (root != null && oldSelection != null) {
+            Node newSelection = diff != null ? diff.getNewNode(oldSelection) : null;
+            if (newSelection == null) {
+                newSelection = findOldNodeInNewAst(oldSelection, root).orElse(null);
+            }
             if (newSelection != null) {
                 baseSelectionEvents.push(NodeSelectionEvent.of(newSelection, new DataHolder().withData(SELECTION_RECOVERY, true)));
                 setFocusNode(newSelection, new DataHolder()); // rehandle
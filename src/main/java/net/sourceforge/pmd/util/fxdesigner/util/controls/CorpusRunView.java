@@ -0,0 +1,262 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.controls;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.controlsfx.control.PopOver;
+
+import net.sourceforge.pmd.util.fxdesigner.model.CorpusRun;
+import net.sourceforge.pmd.util.fxdesigner.model.CorpusRun.FileResult;
+import net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+
+
+/**
+ * Lets the user pick a directory, and displays the progress and the
+ * per-file statistics of a {@link CorpusRun} on it. The run itself is
+ * started by the owner of the view, see {@link #setOnRun(Consumer)}. The
+ * view is a {@link CorpusRun.Listener}, and may be notified on any thread.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class CorpusRunView extends VBox implements CorpusRun.Listener {
+
+    private final TextField directoryField = new TextField();
+    private final Button browseButton = new Button("Browse...");
+    private final Button runButton = new Button("Run");
+    private final ProgressBar progressBar = new ProgressBar(0);
+    private final Label summaryLabel = new Label();
+    private final ObservableList<FileResult> results = FXCollections.observableArrayList();
+
+    /** Results that were received on the workers and not yet added to the table. */
+    private final Queue<FileResult> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private Consumer<CorpusRunView> onRun = v -> { };
+    private @Nullable CorpusRun currentRun;
+    private int fileCount;
+
+
+    public CorpusRunView(String languageName) {
+        getStyleClass().add("corpus-run-view");
+        setSpacing(8);
+
+        directoryField.setPromptText("Directory containing " + languageName + " files");
+        directoryField.setPrefColumnCount(40);
+        HBox.setHgrow(directoryField, Priority.ALWAYS);
+        browseButton.setOnAction(e -> {
+            DirectoryChooser chooser = new DirectoryChooser();
+            chooser.setTitle("Evaluate the rule on a directory");
+            File dir = chooser.showDialog(getScene().getWindow());
+            if (dir != null) {
+                directoryField.setText(dir.getAbsolutePath());
+            }
+        });
+
+        runButton.setOnAction(e -> {
+            if (currentRun != null) {
+                currentRun.cancel();
+                runButton.setDisable(true);
+            } else {
+                onRun.accept(this);
+            }
+        });
+        runButton.disableProperty().bind(directoryField.textProperty().isEmpty());
+
+        progressBar.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(progressBar, Priority.ALWAYS);
+
+        TableView<FileResult> table = new TableView<>();
+        table.getColumns().add(column("File", FileResult::getFile, Comparator.naturalOrder(), Path::toString));
+        table.getColumns().add(column("Hits", FileResult::getHitCount, Comparator.naturalOrder(), String::valueOf));
+        table.getColumns().add(column("Length", FileResult::getLength, Comparator.naturalOrder(), String::valueOf));
+        table.getColumns().add(column("Parse", FileResult::getParseTime, Comparator.naturalOrder(), DesignerUtil::formatDuration));
+        table.getColumns().add(column("Evaluation", FileResult::getEvaluationTime, Comparator.naturalOrder(), DesignerUtil::formatDuration));
+        table.getColumns().add(column("Error", r -> r.getError() == null ? "" : r.getError(), Comparator.naturalOrder(), s -> s));
+        table.setPlaceholder(new Label("No results"));
+        table.setPrefHeight(400);
+
+        // the table may be sorted while the results stream in
+        SortedList<FileResult> sorted = new SortedList<>(results);
+        sorted.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sorted);
+
+        HBox directoryBox = new HBox(8, directoryField, browseButton, runButton);
+        HBox progressBox = new HBox(8, progressBar, summaryLabel);
+        progressBox.setAlignment(Pos.CENTER_LEFT);
+        getChildren().addAll(directoryBox, progressBox, table);
+    }
+
+
+    /** Directory chosen by the user. */
+    public String getDirectory() {
+        return directoryField.getText();
+    }
+
+
+    /** Sets the action that starts a run, and calls {@link #runStarted(CorpusRun)}. */
+    public void setOnRun(Consumer<CorpusRunView> onRun) {
+        this.onRun = onRun;
+    }
+
+
+    /**
+     * Clears the previous results. The view must be the listener of the
+     * run. While it runs, the run button cancels it.
+     */
+    public void runStarted(CorpusRun run) {
+        this.currentRun = run;
+        incoming.clear();
+        results.clear();
+        fileCount = -1;
+        progressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        summaryLabel.setText("Looking for files...");
+        runButton.disableProperty().unbind();
+        runButton.setDisable(false);
+        runButton.setText("Cancel");
+        directoryField.setDisable(true);
+        browseButton.setDisable(true);
+    }
+
+
+    @Override
+    public void filesFound(int count) {
+        Platform.runLater(() -> {
+            fileCount = count;
+            updateProgress();
+        });
+    }
+
+
+    @Override
+    public void fileDone(FileResult result) {
+        incoming.add(result);
+        // coalesce the updates of the table, there may be thousands of small files
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drainIncoming);
+        }
+    }
+
+
+    @Override
+    public void finished(@Nullable Exception failure) {
+        Platform.runLater(() -> {
+            drainIncoming();
+            boolean cancelled = currentRun != null && currentRun.isCancelled();
+            currentRun = null;
+            runButton.setText("Run");
+            runButton.disableProperty().bind(directoryField.textProperty().isEmpty());
+            directoryField.setDisable(false);
+            browseButton.setDisable(false);
+            if (failure != null) {
+                progressBar.setProgress(0);
+                summaryLabel.setText("Cannot explore the directory: " + failure.getMessage());
+            } else {
+                // a cancelled run keeps its partial progress
+                progressBar.setProgress(cancelled ? Math.max(0, progressBar.getProgress()) : 1);
+                summaryLabel.setText(summary() + (cancelled ? " (cancelled)" : ""));
+            }
+        });
+    }
+
+
+    private void drainIncoming() {
+        drainScheduled.set(false);
+        List<FileResult> batch = new ArrayList<>();
+        FileResult result;
+        while ((result = incoming.poll()) != null) {
+            batch.add(result);
+        }
+        if (!batch.isEmpty()) {
+            results.addAll(batch);
+            updateProgress();
+        }
+    }
+
+
+    private void updateProgress() {
+        if (fileCount >= 0) {
+            progressBar.setProgress(fileCount == 0 ? 1 : (double) results.size() / fileCount);
+            summaryLabel.setText(summary());
+        }
+    }
+
+
+    private String summary() {
+        long hits = 0;
+        long errors = 0;
+        Duration parse = Duration.ZERO;
+        Duration evaluation = Duration.ZERO;
+        for (FileResult r : results) {
+            hits += r.getHitCount();
+            errors += r.getError() == null ? 0 : 1;
+            parse = parse.plus(r.getParseTime());
+            evaluation = evaluation.plus(r.getEvaluationTime());
+        }
+        return results.size() + "/" + Math.max(fileCount, 0) + " files, "
+            + hits + " hits, "
+            + errors + " errors, parse " + DesignerUtil.formatDuration(parse)
+            + ", evaluation " + DesignerUtil.formatDuration(evaluation);
+    }
+
+
+    private static <T> TableColumn<FileResult, T> column(String title,
+                                                         Function<FileResult, T> getter,
+                                                         Comparator<T> comparator,
+                                                         Function<T, String> toString) {
+        TableColumn<FileResult, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(features -> new ReadOnlyObjectWrapper<>(getter.apply(features.getValue())));
+        column.setComparator(comparator);
+        column.setCellFactory(c -> new TableCell<FileResult, T>() {
+            @Override
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : toString.apply(item));
+                setTooltip(empty || item == null ? null : new Tooltip(toString.apply(item)));
+            }
+        });
+        return column;
+    }
+
+
+    public static PopOver makePopOver(CorpusRunView view) {
+        PopOver popOver = new SmartPopover(view);
+        popOver.setTitle("Evaluate the rule on a directory");
+        popOver.setHeaderAlwaysVisible(true);
+        popOver.setDetachable(true);
+        return popOver;
+    }
+}
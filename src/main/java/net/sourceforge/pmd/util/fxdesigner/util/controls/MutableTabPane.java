@@ -205,12 +205,14 @@ public final class MutableTabPane<T extends AbstractController & TitleOwner> ext
 
 
     private void addTabAndFocus(Tab tab) {
-        tab.textProperty().bind(uniqueNameBinding(controllerFromTab(tab).titleProperty(), getTabs().size()));
+        T controller = controllerFromTab(tab);
+        Val<String> uniqueName = uniqueNameBinding(controller.titleProperty(), getTabs().size());
+        tab.textProperty().bind(Val.combine(uniqueName, controller.titleSuffixProperty().orElseConst(""), (name, suffix) -> name + suffix));
 
         this.getTabs().add(tab);
         getSelectionModel().select(tab);
         // Finish the initialisation of the tab
-        controllerFromTab(tab).afterParentInit();
+        controller.afterParentInit();
     }
 
 
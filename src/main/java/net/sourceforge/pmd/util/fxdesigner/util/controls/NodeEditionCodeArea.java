@@ -19,6 +19,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.IntFunction;
+import java.util.stream.Collectors;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.dataflow.qual.Pure;
@@ -80,10 +81,27 @@ public class NodeEditionCodeArea extends HighlightLayerCodeArea<StyleLayerIds> i
      */
     private static final Duration NODE_SELECTION_HOVER_DELAY = Duration.ofMillis(100);
 
+    /** Delay after which the highlighting follows the viewport in large-file mode. */
+    private static final Duration VIEWPORT_RESTYLE_DELAY = Duration.ofMillis(150);
+    /** Number of paragraphs around the viewport whose nodes are highlighted in large-file mode. */
+    private static final int VIEWPORT_MARGIN = 100;
+    /** Maximum number of nodes highlighted per layer when highlighting follows the viewport. */
+    private static final int MAX_LARGE_FILE_HIGHLIGHTS = 2000;
+    /**
+     * Above this number of XPath results, the highlighting follows the
+     * viewport, like in large-file mode, even if the file is small.
+     */
+    private static final int MAX_EAGER_HIGHLIGHTS = 5000;
+
     private final Var<Node> currentFocusNode = Var.newSimpleVar(null);
     private final Var<List<Node>> currentRuleResults = Var.newSimpleVar(Collections.emptyList());
     private final Var<List<Node>> currentErrorNodes = Var.newSimpleVar(Collections.emptyList());
     private final Var<List<Node>> currentRelatedNodes = Var.newSimpleVar(Collections.emptyList());
+    private final Var<Integer> unhighlightedResultCount = Var.newSimpleVar(0);
+    /** Related nodes of the focus node, of which only part may be highlighted. */
+    private Collection<? extends Node> focusRelatedNodes = Collections.emptyList();
+    private final Var<Boolean> largeFileMode = Var.newSimpleVar(false);
+    private Language syntaxLanguage;
     private final DesignerRoot designerRoot;
     private final EventSource<NodeSelectionEvent> selectionEvts = new EventSource<>();
 
@@ -107,10 +125,15 @@ public class NodeEditionCodeArea extends HighlightLayerCodeArea<StyleLayerIds> i
 
 
         setParagraphGraphicFactory(defaultLineNumberFactory());
+        setHighlightingScheduler(root.getService(DesignerRoot.HIGHLIGHTING_SCHEDULER));
+        // selecting a node only restyles the paragraphs around the viewport
+        viewportPaintingProperty().setValue(true);
 
-        currentRuleResultsProperty().values().map(this::highlightXPathResults).subscribe(this::updateStyling);
+        currentRuleResultsProperty().values().map(this::highlightXPathResultsNearViewport).subscribe(this::updateStyling);
         currentErrorNodesProperty().values().map(this::highlightErrorNodes).subscribe(this::updateStyling);
-        currentRelatedNodesProperty().values().map(this::highlightRelatedNodes).subscribe(this::updateStyling);
+        currentRelatedNodesProperty().values().map(this::nearViewport).map(this::highlightRelatedNodes).subscribe(this::updateStyling);
+
+        initLargeFileMode();
 
         initNodeSelectionHandling(designerRoot, selectionEvts, true);
 
@@ -152,6 +175,79 @@ public class NodeEditionCodeArea extends HighlightLayerCodeArea<StyleLayerIds> i
         });
     }
 
+    private void initLargeFileMode() {
+        largeFileMode.changes().subscribe(change -> {
+            if (syntaxLanguage != null) {
+                updateSyntaxHighlighter(syntaxLanguage);
+            }
+            // restores the full highlighting, or trims it
+            updateStyling(highlightAroundViewport());
+        });
+
+        Val<Boolean> followsViewport = Val.combine(largeFileMode,
+                                                   currentRuleResults.map(List::size),
+                                                   (large, numResults) -> large || numResults > MAX_EAGER_HIGHLIGHTS);
+
+        estimatedScrollYProperty().values()
+                                  .conditionOn(followsViewport)
+                                  .successionEnds(VIEWPORT_RESTYLE_DELAY)
+                                  .subscribe(tick -> updateStyling(highlightAroundViewport()));
+    }
+
+
+    private RichRunnable highlightAroundViewport() {
+        return highlightXPathResultsNearViewport(currentRuleResults.getValue())
+            .andThen(highlightRelatedNodes(nearViewport(focusRelatedNodes)));
+    }
+
+
+    /**
+     * Highlights the XPath results that are near the viewport, and records
+     * the number of results that are not highlighted.
+     */
+    private RichRunnable highlightXPathResultsNearViewport(List<Node> results) {
+        Collection<? extends Node> highlighted = nearViewport(results);
+        unhighlightedResultCount.setValue(results.size() - highlighted.size());
+        return highlightXPathResults(highlighted);
+    }
+
+
+    /**
+     * In large-file mode, or if there are too many nodes, keeps only the
+     * nodes that are close to the viewport, up to a maximum. Otherwise
+     * returns its argument.
+     */
+    private Collection<? extends Node> nearViewport(Collection<? extends Node> nodes) {
+        if (nodes.isEmpty() || !largeFileMode.getValue() && nodes.size() <= MAX_EAGER_HIGHLIGHTS) {
+            return nodes;
+        }
+
+        int first;
+        int last;
+        if (getVisibleParagraphs().isEmpty()) {
+            first = 0;
+            last = Integer.MAX_VALUE;
+        } else {
+            try {
+                first = firstVisibleParToAllParIndex() - VIEWPORT_MARGIN;
+                last = lastVisibleParToAllParIndex() + VIEWPORT_MARGIN;
+            } catch (AssertionError e) {
+                // see scrollToNode
+                first = 0;
+                last = Integer.MAX_VALUE;
+            }
+        }
+
+        int firstPar = first;
+        int lastPar = last;
+        return nodes.stream()
+                    .filter(n -> getRtfxParIndexFromPmdLine(n.getEndLine()) >= firstPar
+                        && getRtfxParIndexFromPmdLine(n.getBeginLine()) <= lastPar)
+                    .limit(MAX_LARGE_FILE_HIGHLIGHTS)
+                    .collect(Collectors.toList());
+    }
+
+
     /** Scroll the editor to a node and makes it visible. */
     private void scrollToNode(Node node, boolean scrollToTop) {
 
@@ -273,6 +369,25 @@ public class NodeEditionCodeArea extends HighlightLayerCodeArea<StyleLayerIds> i
     }
 
 
+    /**
+     * Whether the area degrades its presentation to handle large files:
+     * syntax highlighting is turned off, and only the results and related
+     * nodes that are near the viewport are highlighted.
+     */
+    public Var<Boolean> largeFileModeProperty() {
+        return largeFileMode;
+    }
+
+
+    /**
+     * Number of XPath results that are not highlighted, because only
+     * those near the viewport are highlighted.
+     */
+    public Val<Integer> unhighlightedResultCountProperty() {
+        return unhighlightedResultCount;
+    }
+
+
     /**
      * Highlights xpath results (xpath highlight).
      */
@@ -335,11 +450,8 @@ public class NodeEditionCodeArea extends HighlightLayerCodeArea<StyleLayerIds> i
         update = update.andThen(styleNodesUpdate(
             node == null ? emptyList() : singleton(node), StyleLayerIds.FOCUS, true));
 
-        if (node == null) {
-            update = update.andThen(highlightRelatedNodes(emptyList()));
-        } else {
-            update = update.andThen(highlightRelatedNodes(relatedNodesSelector.getValue().getHighlightedNodesWhenSelecting(node)));
-        }
+        focusRelatedNodes = node == null ? emptyList() : relatedNodesSelector.getValue().getHighlightedNodesWhenSelecting(node);
+        update = update.andThen(highlightRelatedNodes(nearViewport(focusRelatedNodes)));
 
         Runnable finalUpdate = update;
         Platform.runLater(() -> updateStyling(finalUpdate));
@@ -353,7 +465,12 @@ public class NodeEditionCodeArea extends HighlightLayerCodeArea<StyleLayerIds> i
 
 
     public void updateSyntaxHighlighter(Language language) {
-        setSyntaxHighlighter(AvailableSyntaxHighlighters.getHighlighterForLanguage(language).orElse(null));
+        syntaxLanguage = language;
+        if (largeFileMode.getValue()) {
+            setSyntaxHighlighter(null);
+        } else {
+            setSyntaxHighlighter(AvailableSyntaxHighlighters.getHighlighterForLanguage(language).orElse(null));
+        }
     }
 
 
@@ -0,0 +1,74 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.controls;
+
+import java.util.Map.Entry;
+
+import org.controlsfx.control.PopOver;
+
+import net.sourceforge.pmd.util.fxdesigner.util.NodeKindIndex;
+
+import javafx.geometry.HPos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+
+
+/**
+ * Displays the number of nodes of each kind in a tree, from its
+ * {@link NodeKindIndex}.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class NodeKindStatsView extends VBox {
+
+    private static final double MAX_HEIGHT = 400;
+
+
+    public NodeKindStatsView(NodeKindIndex index) {
+        getStyleClass().add("node-kind-stats-view");
+        setSpacing(8);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(12);
+        grid.setVgap(2);
+
+        String[] headers = {"Node", "Count", "Share"};
+        for (int i = 0; i < headers.length; i++) {
+            Label header = new Label(headers[i]);
+            header.getStyleClass().add("header");
+            grid.add(header, i, 0);
+            ColumnConstraints constraints = new ColumnConstraints();
+            constraints.setHalignment(i == 0 ? HPos.LEFT : HPos.RIGHT);
+            grid.getColumnConstraints().add(constraints);
+        }
+
+        int row = 1;
+        int total = index.getNodeCount();
+        for (Entry<String, Integer> e : index.getCountsByName().entrySet()) {
+            grid.addRow(row++,
+                        new Label(e.getKey()),
+                        new Label(String.valueOf(e.getValue())),
+                        new Label(String.format("%.1f%%", 100.0 * e.getValue() / total)));
+        }
+
+        ScrollPane scroll = new ScrollPane(grid);
+        scroll.setFitToWidth(true);
+        scroll.setMaxHeight(MAX_HEIGHT);
+
+        getChildren().addAll(new Label(total + " nodes of " + index.getCountsByName().size() + " kinds"), scroll);
+    }
+
+
+    public static PopOver makePopOver(NodeKindIndex index) {
+        PopOver popOver = new SmartPopover(new NodeKindStatsView(index));
+        popOver.setTitle("Node count by type");
+        popOver.setHeaderAlwaysVisible(true);
+        return popOver;
+    }
+}
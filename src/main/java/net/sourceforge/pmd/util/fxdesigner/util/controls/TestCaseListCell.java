@@ -158,7 +158,8 @@ public class TestCaseListCell extends SmartTextFieldListCell<LiveTestCase> {
 
 
         MyXPathSubscriber subscriber = new MyXPathSubscriber(testCase, collection.getDesignerRoot());
-        sub = sub.and(subscriber.init(getManagerOf(testCase)));
+        ASTManagerImpl manager = getManagerOf(testCase);
+        sub = sub.and(subscriber.init(manager)).and(manager::close).and(manager.parseBudgetProperty()::unbind);
 
 
         if (!testCase.isFrozen() && !load.isSelected()) {
@@ -182,12 +183,17 @@ public class TestCaseListCell extends SmartTextFieldListCell<LiveTestCase> {
     }
 
 
-    private ASTManager getManagerOf(LiveTestCase testCase) {
+    private ASTManagerImpl getManagerOf(LiveTestCase testCase) {
 
-        ASTManagerImpl manager = new ASTManagerImpl(collection.getDesignerRoot());
+        // parsed on the shared workers, so that scrolling through many test cases doesn't start a thread per cell
+        ASTManagerImpl manager = new ASTManagerImpl(collection.getDesignerRoot(), true);
         manager.sourceCodeProperty().bind(testCase.sourceProperty());
         manager.languageVersionProperty().bind(testCase.languageVersionProperty().orElse(collection.getDefaultLanguageVersion()));
         manager.ruleProperties().bind(testCase.nonDefaultProperties());
+        ASTManager mainManager = collection.getDesignerRoot().getService(DesignerRoot.AST_MANAGER);
+        if (mainManager != null) {
+            manager.parseBudgetProperty().bind(mainManager.parseBudgetProperty());
+        }
 
         return manager;
     }
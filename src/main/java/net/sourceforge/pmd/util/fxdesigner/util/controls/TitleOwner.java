@@ -17,4 +17,14 @@ public interface TitleOwner {
     /** Title of the region. */
     Val<String> titleProperty();
 
+
+    /**
+     * Short text displayed after the title, eg a count. It's not part
+     * of the title, so eg two regions with the same title and different
+     * suffixes are still considered to have the same name. Empty by default.
+     */
+    default Val<String> titleSuffixProperty() {
+        return Val.constant("");
+    }
+
 }
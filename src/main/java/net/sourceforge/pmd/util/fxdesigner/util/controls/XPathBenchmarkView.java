@@ -0,0 +1,121 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.controls;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.controlsfx.control.PopOver;
+import org.reactfx.collection.LiveList;
+
+import net.sourceforge.pmd.util.fxdesigner.model.XPathBenchmark;
+import net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil;
+
+import javafx.geometry.HPos;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+
+
+/**
+ * Displays the benchmark history of a rule, most recent first, so that
+ * rewrites of the same query can be compared.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathBenchmarkView extends VBox {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final int MAX_EXPRESSION_LENGTH = 40;
+
+    private final GridPane grid = new GridPane();
+    private final Label placeholder = new Label("Run a benchmark to compare versions of the query");
+
+
+    public XPathBenchmarkView(LiveList<XPathBenchmark> history) {
+        getStyleClass().add("xpath-benchmark-view");
+        setSpacing(8);
+
+        grid.setHgap(12);
+        grid.setVgap(2);
+
+        getChildren().addAll(placeholder, grid);
+
+        // the popover lives as long as the rule editor
+        history.observeChanges(ch -> refresh(history));
+        refresh(history);
+    }
+
+
+    private void refresh(List<XPathBenchmark> history) {
+        grid.getChildren().clear();
+        grid.getColumnConstraints().clear();
+        placeholder.setVisible(history.isEmpty());
+        placeholder.setManaged(history.isEmpty());
+
+        String[] headers = {"Time", "Expression", "Results", "Mean", "Median", "p99", "Allocated", "vs previous"};
+        for (int i = 0; i < headers.length; i++) {
+            Label header = new Label(headers[i]);
+            header.getStyleClass().add("header");
+            grid.add(header, i, 0);
+            ColumnConstraints constraints = new ColumnConstraints();
+            constraints.setHalignment(i < 2 ? HPos.LEFT : HPos.RIGHT);
+            grid.getColumnConstraints().add(constraints);
+        }
+
+        for (int i = 0; i < history.size(); i++) {
+            XPathBenchmark bench = history.get(i);
+            // the history is most recent first
+            XPathBenchmark previous = i + 1 < history.size() ? history.get(i + 1) : null;
+
+            Label expression = new Label(StringUtils.abbreviate(StringUtils.normalizeSpace(bench.getExpression()), MAX_EXPRESSION_LENGTH));
+            expression.setTooltip(new Tooltip(bench.getExpression() + "\n(XPath " + bench.getVersion().getXmlName()
+                                                  + ", " + bench.getIterations() + " iterations)"));
+
+            grid.addRow(i + 1,
+                        new Label(TIME_FORMAT.format(bench.getTimestamp())),
+                        expression,
+                        new Label(String.valueOf(bench.getResultCount())),
+                        new Label(DesignerUtil.formatDuration(bench.getMean())),
+                        new Label(DesignerUtil.formatDuration(bench.getMedian())),
+                        new Label(DesignerUtil.formatDuration(bench.getP99())),
+                        new Label(bench.getAllocatedBytes() < 0 ? "n/a" : formatBytes(bench.getAllocatedBytes())),
+                        new Label(previous == null ? "" : relative(bench.getMedian(), previous.getMedian())));
+        }
+    }
+
+
+    public static PopOver makePopOver(LiveList<XPathBenchmark> history) {
+        PopOver popOver = new SmartPopover(new XPathBenchmarkView(history));
+        popOver.setTitle("Benchmarks of the XPath expression");
+        popOver.setHeaderAlwaysVisible(true);
+        return popOver;
+    }
+
+
+    private static String relative(Duration current, Duration previous) {
+        if (previous.isZero()) {
+            return "";
+        }
+        long percent = Math.round(100.0 * (current.toNanos() - previous.toNanos()) / previous.toNanos());
+        return (percent > 0 ? "+" : "") + percent + "%";
+    }
+
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 10 * 1024) {
+            return bytes + " B";
+        } else if (bytes < 10 * 1024 * 1024) {
+            return bytes / 1024 + " KB";
+        }
+        return bytes / (1024 * 1024) + " MB";
+    }
+}
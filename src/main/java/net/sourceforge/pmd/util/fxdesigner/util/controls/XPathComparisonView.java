@@ -0,0 +1,208 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.controls;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.controlsfx.control.PopOver;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathComparison;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathComparison.Distribution;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathComparison.SubjectResult;
+import net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil;
+
+import javafx.beans.binding.BooleanBinding;
+import javafx.geometry.HPos;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+
+/**
+ * Lets the user type two formulations of a query, and displays the result
+ * of their {@link XPathComparison}. The comparison itself is run by the
+ * owner of the view, see {@link #setOnCompare(Consumer)}.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathComparisonView extends VBox {
+
+    private static final int MAX_SAMPLE_NODES = 3;
+
+    private final TextArea expressionA = new TextArea();
+    private final TextArea expressionB = new TextArea();
+    private final CheckBox includeTestCases = new CheckBox("Include test cases");
+    private final Button compareButton = new Button("Compare");
+    private final VBox resultBox = new VBox();
+    private final BooleanBinding missingInput = expressionA.textProperty().isEmpty().or(expressionB.textProperty().isEmpty());
+    private Consumer<XPathComparisonView> onCompare = v -> { };
+
+
+    public XPathComparisonView(String initialExpression) {
+        getStyleClass().add("xpath-comparison-view");
+        setSpacing(8);
+
+        for (TextArea area : new TextArea[] {expressionA, expressionB}) {
+            area.getStyleClass().add("xpath-comparison-expression");
+            area.setPrefRowCount(3);
+            area.setPrefColumnCount(50);
+        }
+        expressionA.setText(initialExpression);
+        expressionB.setText(initialExpression);
+        expressionB.setPromptText("Alternative formulation of the query");
+
+        includeTestCases.setTooltip(new Tooltip("Also evaluate both queries on the test cases of the rule"));
+        compareButton.setOnAction(e -> onCompare.accept(this));
+        compareButton.disableProperty().bind(missingInput);
+
+        resultBox.setSpacing(4);
+
+        HBox controls = new HBox(12, includeTestCases, compareButton);
+        getChildren().addAll(new Label("Query A"), expressionA, new Label("Query B"), expressionB, controls, resultBox);
+    }
+
+
+    public String getExpressionA() {
+        return expressionA.getText();
+    }
+
+
+    public String getExpressionB() {
+        return expressionB.getText();
+    }
+
+
+    public boolean isIncludeTestCases() {
+        return includeTestCases.isSelected();
+    }
+
+
+    /** Sets the action that runs the comparison, and calls {@link #showResult(XPathComparison)} when done. */
+    public void setOnCompare(Consumer<XPathComparisonView> onCompare) {
+        this.onCompare = onCompare;
+    }
+
+
+    /** Disables the inputs while a comparison runs. */
+    public void setRunning(boolean running) {
+        compareButton.setText(running ? "Comparing..." : "Compare");
+        compareButton.disableProperty().unbind();
+        if (running) {
+            compareButton.setDisable(true);
+        } else {
+            compareButton.disableProperty().bind(missingInput);
+        }
+    }
+
+
+    public void showResult(XPathComparison comparison) {
+        resultBox.getChildren().clear();
+
+        GridPane timings = new GridPane();
+        timings.setHgap(12);
+        timings.setVgap(2);
+        String[] headers = {"", "Min", "Median", "Mean", "p99", "Max"};
+        for (int i = 0; i < headers.length; i++) {
+            Label header = new Label(headers[i]);
+            header.getStyleClass().add("header");
+            timings.add(header, i, 0);
+            ColumnConstraints constraints = new ColumnConstraints();
+            constraints.setHalignment(i == 0 ? HPos.LEFT : HPos.RIGHT);
+            timings.getColumnConstraints().add(constraints);
+        }
+        addTimingRow(timings, 1, "A", comparison.getTimesA());
+        addTimingRow(timings, 2, "B", comparison.getTimesB());
+
+        resultBox.getChildren().add(new Label(comparison.getSubjects().size() + " source(s), " + comparison.getRuns() + " runs, "
+                                                  + verdict(comparison.getTimesA().getMedian(), comparison.getTimesB().getMedian())));
+        resultBox.getChildren().add(timings);
+
+        if (comparison.isEquivalent()) {
+            resultBox.getChildren().add(new Label("Both queries return the same nodes"));
+            return;
+        }
+
+        GridPane diffs = new GridPane();
+        diffs.setHgap(12);
+        diffs.setVgap(2);
+        String[] diffHeaders = {"Source", "Results A", "Results B", "Only in A", "Only in B"};
+        for (int i = 0; i < diffHeaders.length; i++) {
+            Label header = new Label(diffHeaders[i]);
+            header.getStyleClass().add("header");
+            diffs.add(header, i, 0);
+        }
+        int row = 1;
+        for (SubjectResult subject : comparison.getSubjects()) {
+            if (subject.isSameResults()) {
+                continue;
+            }
+            diffs.addRow(row++,
+                         new Label(subject.getLabel()),
+                         new Label(String.valueOf(subject.getCountA())),
+                         new Label(String.valueOf(subject.getCountB())),
+                         sampleLabel(subject.getOnlyInA()),
+                         sampleLabel(subject.getOnlyInB()));
+        }
+        Label warning = new Label("The queries return different nodes");
+        warning.getStyleClass().add("comparison-mismatch");
+        resultBox.getChildren().addAll(warning, diffs);
+    }
+
+
+    private static void addTimingRow(GridPane grid, int row, String name, Distribution dist) {
+        grid.addRow(row,
+                    new Label(name),
+                    new Label(DesignerUtil.formatDuration(dist.getMin())),
+                    new Label(DesignerUtil.formatDuration(dist.getMedian())),
+                    new Label(DesignerUtil.formatDuration(dist.getMean())),
+                    new Label(DesignerUtil.formatDuration(dist.getP99())),
+                    new Label(DesignerUtil.formatDuration(dist.getMax())));
+    }
+
+
+    private static Label sampleLabel(List<Node> nodes) {
+        Label label = new Label(String.valueOf(nodes.size()));
+        if (!nodes.isEmpty()) {
+            String sample = nodes.stream()
+                                 .limit(MAX_SAMPLE_NODES)
+                                 .map(n -> n.getXPathNodeName() + " at " + n.getBeginLine() + ":" + n.getBeginColumn())
+                                 .collect(Collectors.joining("\n"));
+            label.setTooltip(new Tooltip(nodes.size() > MAX_SAMPLE_NODES ? sample + "\n..." : sample));
+        }
+        return label;
+    }
+
+
+    private static String verdict(Duration a, Duration b) {
+        if (a.isZero() || b.isZero()) {
+            return "no measurable difference";
+        }
+        double ratio = (double) a.toNanos() / b.toNanos();
+        if (ratio >= 1) {
+            return String.format("B is %.1fx faster (median)", ratio);
+        }
+        return String.format("A is %.1fx faster (median)", 1 / ratio);
+    }
+
+
+    public static PopOver makePopOver(XPathComparisonView view) {
+        PopOver popOver = new SmartPopover(view);
+        popOver.setTitle("Compare two XPath expressions");
+        popOver.setHeaderAlwaysVisible(true);
+        popOver.setDetachable(true);
+        return popOver;
+    }
+}
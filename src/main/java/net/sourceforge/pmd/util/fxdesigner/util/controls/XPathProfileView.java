@@ -0,0 +1,196 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.controls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.controlsfx.control.PopOver;
+import org.fxmisc.richtext.model.StyleSpans;
+
+import net.sourceforge.pmd.util.fxdesigner.model.XPathProfile;
+import net.sourceforge.pmd.util.fxdesigner.model.XPathProfile.StepCost;
+import net.sourceforge.pmd.util.fxdesigner.util.DesignerUtil;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlightingCodeArea;
+
+import javafx.geometry.HPos;
+import javafx.scene.control.Label;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+
+
+/**
+ * Displays an {@link XPathProfile}: a table of the steps of the query
+ * with their cost, and the attributes read by the query. The steps are
+ * also annotated in the expression area with a style class that depends
+ * on their share of the total time, until the expression changes.
+ *
+ * @author Clément Fournier
+ * @since 7.19.4
+ */
+public final class XPathProfileView extends VBox {
+
+    private static final String HEAT_CLASS = "profiler-heat";
+    private static final List<String> HEAT_LEVELS = Arrays.asList("heat-0", "heat-1", "heat-2");
+    private static final int MAX_ATTRIBUTES = 10;
+    private static final int HOT_STEPS = 3;
+
+
+    public XPathProfileView(XPathProfile profile, SyntaxHighlightingCodeArea expressionArea) {
+        getStyleClass().add("xpath-profile-view");
+        setSpacing(8);
+
+        getChildren().add(new Label(profile.getResultCount() + " results in " + DesignerUtil.formatDuration(profile.getTotalTime())
+                                        + " (median of " + profile.getRuns() + " runs)"));
+
+        getChildren().add(stepTable(profile, expressionArea));
+
+        List<String> hot = new ArrayList<>();
+        for (StepCost step : profile.getHottestSteps(HOT_STEPS)) {
+            if (step.getShare() > 0) {
+                hot.add(step.getText().trim() + " (" + percent(step.getShare()) + ")");
+            }
+        }
+        if (profile.getSteps().size() > 1 && !hot.isEmpty()) {
+            getChildren().add(new Label("Hottest: " + String.join(", ", hot)));
+        }
+
+        if (profile.getAttributeReads().isEmpty()) {
+            getChildren().add(new Label("No attribute value read"));
+        } else {
+            List<String> reads = new ArrayList<>();
+            for (Entry<String, Long> e : profile.getAttributeReads().entrySet()) {
+                if (reads.size() == MAX_ATTRIBUTES) {
+                    reads.add("...");
+                    break;
+                }
+                reads.add("@" + e.getKey() + " ×" + e.getValue());
+            }
+            Label label = new Label("Attribute values read: " + String.join(", ", reads));
+            label.setWrapText(true);
+            getChildren().add(label);
+        }
+    }
+
+
+    private static GridPane stepTable(XPathProfile profile, SyntaxHighlightingCodeArea expressionArea) {
+        GridPane grid = new GridPane();
+        grid.getStyleClass().add("xpath-profile-steps");
+        grid.setHgap(12);
+        grid.setVgap(2);
+
+        String[] headers = {"Step", "Context", "Results", "Own time", "Share"};
+        for (int i = 0; i < headers.length; i++) {
+            Label header = new Label(headers[i]);
+            header.getStyleClass().add("header");
+            grid.add(header, i, 0);
+            ColumnConstraints constraints = new ColumnConstraints();
+            constraints.setHalignment(i == 0 ? HPos.LEFT : HPos.RIGHT);
+            grid.getColumnConstraints().add(constraints);
+        }
+
+        int row = 1;
+        for (StepCost step : profile.getSteps()) {
+            Label text = new Label(step.getText().trim());
+            String level = heatLevel(step.getShare());
+            if (level != null) {
+                text.getStyleClass().addAll(HEAT_CLASS, level);
+            }
+            // clicking a step selects it in the expression
+            text.setOnMouseClicked(e -> expressionArea.selectRange(step.getStartOffset(), step.getEndOffset()));
+
+            grid.addRow(row++,
+                        text,
+                        new Label(String.valueOf(step.getContextSize())),
+                        new Label(String.valueOf(step.getResultCount())),
+                        new Label(DesignerUtil.formatDuration(step.getOwnTime())),
+                        new Label(percent(step.getShare())));
+        }
+        return grid;
+    }
+
+
+    /**
+     * Shows the profile in a popover, and annotates the expression area
+     * while it's shown.
+     */
+    public static PopOver makePopOver(XPathProfile profile, SyntaxHighlightingCodeArea expressionArea) {
+        annotate(expressionArea, profile);
+
+        PopOver popOver = new SmartPopover(new XPathProfileView(profile, expressionArea));
+        popOver.setTitle("Profile of the XPath expression");
+        popOver.setHeaderAlwaysVisible(true);
+        popOver.setOnHiding(e -> clearAnnotations(expressionArea));
+        return popOver;
+    }
+
+
+    /**
+     * Adds heat style classes to the steps of the expression, on top of the
+     * syntax highlighting. Does nothing if the expression was edited since
+     * it was profiled.
+     */
+    public static void annotate(SyntaxHighlightingCodeArea area, XPathProfile profile) {
+        if (!StringUtils.stripEnd(area.getText(), null).equals(profile.getExpression())) {
+            return;
+        }
+        for (StepCost step : profile.getSteps()) {
+            String level = heatLevel(step.getShare());
+            if (level == null || step.getStartOffset() == step.getEndOffset()) {
+                continue;
+            }
+            StyleSpans<Collection<String>> spans = area.getStyleSpans(step.getStartOffset(), step.getEndOffset());
+            area.setStyleSpans(step.getStartOffset(), spans.mapStyles(style -> {
+                Set<String> styled = new HashSet<>(style);
+                styled.add(HEAT_CLASS);
+                styled.add(level);
+                return styled;
+            }));
+        }
+    }
+
+
+    /** Removes the annotations added by {@link #annotate(SyntaxHighlightingCodeArea, XPathProfile)}. */
+    public static void clearAnnotations(SyntaxHighlightingCodeArea area) {
+        if (area.getLength() == 0) {
+            return;
+        }
+        StyleSpans<Collection<String>> spans = area.getStyleSpans(0, area.getLength());
+        area.setStyleSpans(0, spans.mapStyles(style -> {
+            if (!style.contains(HEAT_CLASS)) {
+                return style;
+            }
+            Set<String> styled = new HashSet<>(style);
+            styled.remove(HEAT_CLASS);
+            styled.removeAll(HEAT_LEVELS);
+            return styled;
+        }));
+    }
+
+
+    /** Returns the heat style class for the share of a step, or null if it's negligible. */
+    private static String heatLevel(double share) {
+        if (share >= .5) {
+            return HEAT_LEVELS.get(2);
+        } else if (share >= .2) {
+            return HEAT_LEVELS.get(1);
+        } else if (share >= .05) {
+            return HEAT_LEVELS.get(0);
+        }
+        return null;
+    }
+
+
+    private static String percent(double share) {
+        return Math.round(share * 100) + "%";
+    }
+}
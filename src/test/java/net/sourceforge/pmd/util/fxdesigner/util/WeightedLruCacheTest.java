@@ -0,0 +1,97 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+public class WeightedLruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByCount() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(2, 100, String::length);
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.get("a");
+        cache.put("c", "c");
+
+        assertEquals("a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("c", cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictsByWeight() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, 5, String::length);
+        cache.put("a", "aaa");
+        cache.put("b", "bb");
+        assertEquals(5, cache.getTotalWeight());
+
+        cache.put("c", "cc");
+        assertNull(cache.get("a"));
+        assertEquals(4, cache.getTotalWeight());
+
+        // heavier than the whole cache, not kept
+        cache.put("d", "dddddd");
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testReplaceUpdatesWeight() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, 10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("a", "a");
+        assertEquals(1, cache.getTotalWeight());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testRemoveIf() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, 10, String::length);
+        cache.put("a", "a");
+        cache.put("b", "bbb");
+        cache.put("c", "ccc");
+
+        assertEquals(2, cache.removeIf((k, v) -> v.length() == 3));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getTotalWeight());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testRemovalListener() {
+        List<String> removed = new ArrayList<>();
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(2, 10, String::length, (k, v) -> removed.add(k));
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.put("c", "c");
+        cache.remove("b");
+        cache.removeIf((k, v) -> "c".equals(k));
+
+        assertEquals(Arrays.asList("a", "b", "c"), removed);
+    }
+
+    @Test
+    public void testHitMissCounters() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, 10, String::length);
+        cache.put("a", "a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2 / 3d, cache.getHitRate(), 1e-9);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.SyntaxHighlighter.HighlightingSession;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.ApexSyntaxHighlighter;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.JavaSyntaxHighlighter;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.ModelicaSyntaxHighlighter;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.XPathSyntaxHighlighter;
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.XmlSyntaxHighlighter;
+
+
+/**
+ * Compares the time taken by the JFlex highlighters with the regex
+ * highlighters they replaced, see {@link RegexBaselineHighlighters}.
+ * Each language is measured on regular code, on an unterminated comment
+ * (quadratic for the lazy comment patterns of the regexes), and on a one
+ * character edit of the regular code.
+ *
+ * <p>Wall-clock timings are too noisy to assert on, so this only reports
+ * them, through the {@link TestReporter}. The build has no JMH setup. It's
+ * tagged as a benchmark and excluded from the default test run, run it with
+ * {@code ./mvnw test -Dtest=LexerHighlighterBenchmarkTest -DexcludedTestGroups=none}.
+ */
+@Tag("benchmark")
+public class LexerHighlighterBenchmarkTest {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 10;
+    private static final int SNIPPET_REPEATS = 2000;
+    private static final int COMMENT_LINES = 5000;
+
+
+    @Test
+    public void benchmarkJava(TestReporter reporter) {
+        String snippet = "/*\n"
+            + " * License header\n"
+            + " */\n"
+            + "@Deprecated\n"
+            + "public final class Foo<T> extends Bar implements Baz {\n"
+            + "    // a comment\n"
+            + "    private static final int[] ARRAY = {1, 2_000, 0x1F};\n"
+            + "    private String name = \"a \\\"string\\\"\";\n"
+            + "\n"
+            + "    public boolean foo(int i, char c) throws Exception {\n"
+            + "        if (c == 'c' && name != null) {\n"
+            + "            return i > 2 || Boolean.TRUE.equals(true);\n"
+            + "        }\n"
+            + "        return false;\n"
+            + "    }\n"
+            + "}\n";
+        benchmark(reporter, "Java", new JavaSyntaxHighlighter(), new RegexBaselineHighlighters.Java(), snippet, "/* ");
+    }
+
+
+    @Test
+    public void benchmarkApex(TestReporter reporter) {
+        String snippet = "/* Header */\n"
+            + "@IsTest\n"
+            + "public with sharing class Foo extends Bar {\n"
+            + "    // a comment\n"
+            + "    private static final Integer COUNT = 42;\n"
+            + "    public String name = 'a \\'string\\'';\n"
+            + "\n"
+            + "    public Boolean foo(List<Account> accounts) {\n"
+            + "        for (Account a : [SELECT Id FROM Account WHERE Name LIKE 'A%' LIMIT 10]) {\n"
+            + "            update a;\n"
+            + "        }\n"
+            + "        return accounts != null && TRUE;\n"
+            + "    }\n"
+            + "}\n";
+        benchmark(reporter, "Apex", new ApexSyntaxHighlighter(), new RegexBaselineHighlighters.Apex(), snippet, "/* ");
+    }
+
+
+    @Test
+    public void benchmarkXml(TestReporter reporter) {
+        String snippet = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- a comment -->\n"
+            + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+            + "    <dependency scope='test' optional=\"true\">\n"
+            + "        <groupId>net.sourceforge.pmd</groupId>\n"
+            + "        <ns:version>7.0.0</ns:version>\n"
+            + "    </dependency>\n"
+            + "    <script><![CDATA[ if (a < b) { return; } ]]></script>\n"
+            + "    <empty attr=\"value\"/>\n"
+            + "</project>\n";
+        benchmark(reporter, "XML", new XmlSyntaxHighlighter(), new RegexBaselineHighlighters.Xml(), snippet, "<!-- ");
+    }
+
+
+    @Test
+    public void benchmarkXPath(TestReporter reporter) {
+        String snippet = "(: a comment :)\n"
+            + "//ClassDeclaration[@Abstract = false() and @Name = 'Foo']\n"
+            + "    /descendant::MethodDeclaration[count(FormalParameters/*) > 3.5e1]\n"
+            + "    [not(ancestor-or-self::node()[pmd-java:typeIs(\"java.lang.Object\")])]\n"
+            + "    [some $x in .//Name satisfies $x/@Image eq Q{http://example.com}name]\n"
+            + "| //FieldDeclaration[string-length(@Name) lt 2]\n";
+        benchmark(reporter, "XPath", new XPathSyntaxHighlighter(), new RegexBaselineHighlighters.XPath(), snippet, "(: ");
+    }
+
+
+    @Test
+    public void benchmarkModelica(TestReporter reporter) {
+        String snippet = "/* Header */\n"
+            + "within Modelica.Blocks;\n"
+            + "model Foo \"a description\"\n"
+            + "  // a comment\n"
+            + "  parameter Real k(start = 1.5) = 2;\n"
+            + "  input Real u[3];\n"
+            + "  output Boolean y;\n"
+            + "equation\n"
+            + "  if u[1] > k and true then\n"
+            + "    y = der(u[2]) > 0.0;\n"
+            + "  else\n"
+            + "    y = false;\n"
+            + "  end if;\n"
+            + "end Foo;\n";
+        benchmark(reporter, "Modelica", new ModelicaSyntaxHighlighter(), new RegexBaselineHighlighters.Modelica(), snippet, "/* ");
+    }
+
+
+    private static void benchmark(TestReporter reporter,
+                                  String language,
+                                  SyntaxHighlighter lexer,
+                                  SyntaxHighlighter regex,
+                                  String snippet,
+                                  String commentStart) {
+        String text = StringUtils.repeat(snippet, SNIPPET_REPEATS);
+        String unterminatedComment = commentStart + StringUtils.repeat("a b c\n", COMMENT_LINES);
+        String edited = text.substring(0, text.length() / 2) + "x" + text.substring(text.length() / 2);
+
+        Map<String, String> results = new LinkedHashMap<>();
+        results.put(language + ", regular code (" + text.length() + " chars)",
+                    compare(time(lexer, text), time(regex, text)));
+        results.put(language + ", unterminated comment (" + unterminatedComment.length() + " chars)",
+                    compare(time(lexer, unterminatedComment), time(regex, unterminatedComment)));
+        results.put(language + ", one character edit (" + edited.length() + " chars)",
+                    compare(timeEdit(lexer, text, edited), time(regex, edited)));
+        reporter.publishEntry(results);
+    }
+
+
+    private static String compare(double lexerMs, double regexMs) {
+        return String.format("lexer %.2f ms, regex %.2f ms", lexerMs, regexMs);
+    }
+
+
+    /** Average time of a highlighting, in milliseconds. */
+    private static double time(SyntaxHighlighter highlighter, String text) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            // the spans must cover the text, otherwise the timing is meaningless
+            assertEquals(text.length(), highlighter.computeHighlighting(text).length());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            highlighter.computeHighlighting(text);
+        }
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+
+    /** Average time of the highlighting of an edit by a session, in milliseconds. */
+    private static double timeEdit(SyntaxHighlighter highlighter, String text, String edited) {
+        HighlightingSession session = highlighter.newSession();
+        long totalNanos = 0;
+        for (int i = 0; i < WARMUP_RUNS + RUNS; i++) {
+            session.computeHighlighting(text);
+            long start = System.nanoTime();
+            assertEquals(edited.length(), session.computeHighlighting(edited).length());
+            if (i >= WARMUP_RUNS) {
+                totalNanos += System.nanoTime() - start;
+            }
+        }
+        return totalNanos / 1e6 / RUNS;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea;
+
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.ANNOTATION;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.BOOLEAN;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.BRACE;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.BRACKET;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.CHAR;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.CLASS_IDENTIFIER;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.IDENTIFIER;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.KEYWORD;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.MULTIL_COMMENT;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.NULL;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.NUMBER;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.PAREN;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.SEMICOLON;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.SINGLEL_COMMENT;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.STRING;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.URI;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XML_ATTRIBUTE_NAME;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XML_CDATA_CONTENT;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XML_CDATA_TAG;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XML_LT_GT;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XML_PROLOG;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XML_TAG_NAME;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XPATH_ATTRIBUTE;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XPATH_AXIS;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XPATH_FUNCTION;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XPATH_KIND_TEST;
+import static net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.XPATH_PATH;
+
+import java.util.regex.Pattern;
+
+
+/**
+ * Regex grammars of the built-in highlighters before they used JFlex
+ * lexers, kept as baselines for {@link LexerHighlighterBenchmarkTest}.
+ */
+final class RegexBaselineHighlighters {
+
+    private RegexBaselineHighlighters() {
+        // utility class
+    }
+
+
+    static final class Java extends SimpleRegexSyntaxHighlighter {
+
+        private static final String[] KEYWORDS = {
+            "public", "return", "final", "import", "static", "new",
+            "extends", "int", "throws?", "void", "if", "this",
+            "private", "class", "else", "case", "package", "abstract",
+            "boolean", "break", "byte", "catch", "char", "for",
+            "continue", "default", "double", "enum", "finally",
+            "float", "implements", "instanceof", "interface", "long",
+            "native", "protected", "while", "assert", "short", "super",
+            "switch", "synchronized", "transient", "try", "volatile",
+            "do", "strictfp", "goto", "const", "open",
+            "module", "requires", "transitive", "exports",
+            "opens", "to", "uses", "provides", "var", "with",
+            };
+
+        private static final RegexHighlightGrammar GRAMMAR
+            = grammarBuilder(SINGLEL_COMMENT.css, "//[^\n]*")
+            .or(MULTIL_COMMENT.css, "/\\*.*?\\*/")
+            .or(PAREN.css, "[()]")
+            .or(NUMBER.css, asWord("\\d[_\\d]*+(\\.\\d(_?\\d)*+)?[fdlFDL]?"))
+            .or(BRACE.css, "[{}]")
+            .or(BRACKET.css, "[\\[]]")
+            .or(SEMICOLON.css, ";")
+            .or(KEYWORD.css, alternation(KEYWORDS))
+            .or(STRING.css, "\"[^\"\\\\]*(\\\\.[^\"\\\\]*)*\"")
+            .or(CHAR.css, "'(?:[^']|\\\\(?:'|u\\w{4}))'")
+            .or(NULL.css, asWord("null"))
+            .or(BOOLEAN.css, asWord("true|false"))
+            .or(ANNOTATION.css, "@[\\w]+(\\.\\w+)*")
+            .or(CLASS_IDENTIFIER.css, asWord("[A-Z][\\w_$]*"))
+            .or(IDENTIFIER.css, asWord("[\\w_$]+"))
+            .create(Pattern.DOTALL);
+
+
+        Java() {
+            super("java", GRAMMAR);
+        }
+    }
+
+
+    static final class Apex extends SimpleRegexSyntaxHighlighter {
+
+        private static final String[] KEYWORDS = {
+            "abstract", "activate", "and", "any", "array", "as",
+            "asc", "autonomous", "begin", "bigdecimal", "blob",
+            "break", "bulk", "by", "byte", "case", "cast", "catch",
+            "char", "class", "collect", "commit", "const", "continue",
+            "convertcurrency", "decimal", "default", "delete", "desc",
+            "do", "else", "end", "enum", "exception", "exit", "export",
+            "extends", "false", "final", "finally", "float", "for", "from",
+            "future", "global", "goto", "group", "having", "hint", "if",
+            "implements", "import", "inner", "insert", "instanceof",
+            "interface", "into", "int", "join", "last_90_days", "last_month",
+            "last_n_days", "last_week", "like", "limit", "list", "long",
+            "loop", "map", "merge", "new", "next_90_days", "next_month",
+            "next_n_days", "next_week", "not", "null", "nulls", "number",
+            "object", "of", "on", "or", "outer", "override", "package",
+            "parallel", "pragma", "private", "protected", "public", "retrieve",
+            "return", "returning", "rollback", "savepoint", "search", "select",
+            "set", "short", "sort", "stat", "static", "super", "switch", "synchronized",
+            "system", "testmethod", "then", "this", "this_month", "this_week",
+            "throw", "today", "tolabel", "tomorrow", "transaction", "trigger",
+            "true", "try", "type", "undelete", "update", "upsert", "using",
+            "virtual", "webservice", "when", "where", "while", "yesterday",
+            "after", "before", "count", "excludes", "first", "includes",
+            "last", "order", "sharing", "with",
+            };
+
+        private static final RegexHighlightGrammar GRAMMAR
+            = grammarBuilder(SINGLEL_COMMENT.css, "//[^\r\n]*")
+            .or(MULTIL_COMMENT.css, "/\\*.*?\\*/")
+            .or(KEYWORD.css, "(?i)" + alternation(KEYWORDS))
+            .or(PAREN.css, "[()]")
+            .or(BRACE.css, "[{}]")
+            .or(BRACKET.css, "[\\[]]")
+            .or(SEMICOLON.css, ";")
+            .or(STRING.css, "'[^'\\\\]*(\\\\.[^'\\\\]*)*'")
+            .or(BOOLEAN.css, asWord("(?i)true|false"))
+            .or(ANNOTATION.css, "@[\\w]+")
+            .or(IDENTIFIER.css, asWord("[\\w_$]+"))
+            .create(Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+
+
+        Apex() {
+            super("apex", GRAMMAR);
+        }
+    }
+
+
+    static final class Xml extends SimpleRegexSyntaxHighlighter {
+
+        private static final RegexHighlightGrammar GRAMMAR
+            = grammarBuilder(MULTIL_COMMENT.css, "<!--.*?-->")
+            .or(XML_CDATA_TAG.css, "<!\\[CDATA\\[|]]>")
+            .or(XML_CDATA_CONTENT.css, "(?<=<!\\[CDATA\\[).*?(?=]]>)")
+            .or(XML_PROLOG.css, "<\\?xml.*?\\?>")
+            .or(XML_LT_GT.css, "</?|/?>")
+            .or(XML_TAG_NAME.css, "\\b(?<=(</?))\\w[-.\\w:]*")
+            .or(XML_ATTRIBUTE_NAME.css, "\\w[-.\\w]*(?=\\s*=\\s*[\"'])")
+            .or(STRING.css, "('([^'<>\\\\]|\\\\.)*')|(\"([^\"<>\\\\]|\\\\.)*\")")
+            .create(Pattern.DOTALL);
+
+
+        Xml() {
+            super("xml", GRAMMAR);
+        }
+    }
+
+
+    static final class XPath extends SimpleRegexSyntaxHighlighter {
+
+        private static final String[] AXIS_NAMES = {
+            "self", "child", "attribute", "descendant", "descendant-or-self", "ancestor",
+            "ancestor-or-self", "following", "following-sibling", "namespace", "parent",
+            "preceding-sibling",
+        };
+
+        private static final String[] KEYWORDS = {
+            "or", "and", "not", "some", "in", "satisfies",
+            "as", "is", "for", "every", "cast", "castable",
+            "treat", "instance", "of", "to", "if", "then", "else",
+            "return", "let",
+            "intersect", "except", "union", "div", "idiv", "mod",
+            "ne", "eq", "lt", "le", "gt", "ge",
+        };
+
+        private static final String[] KIND_TESTS = {
+            "node", "document-node", "text", "comment",
+            "namespace-node", "processing-instruction",
+            "attribute", "schema-attribute", "element",
+            "schema-element", "function",
+        };
+
+        private static final RegexHighlightGrammar GRAMMAR
+            = grammarBuilder(XPATH_ATTRIBUTE.css, "@[\\w]+")
+            .or(XPATH_PATH.css, "//?")
+            .or(XPATH_AXIS.css, alternation(AXIS_NAMES) + "::")
+            .or(KEYWORD.css, alternation(KEYWORDS))
+            .or(XPATH_KIND_TEST.css, alternation(KIND_TESTS) + "\\(\\)")
+            .or(XPATH_FUNCTION.css, "[\\w-]+?(?=\\()")
+            .or(MULTIL_COMMENT.css, "\\(:.*?:\\)")
+            .or(PAREN.css, "[()]")
+            .or(BRACKET.css, "[\\[\\]]")
+            .or(NUMBER.css, "(\\.\\d++\\b|\\b\\d++\\.|(\\b\\d++(\\.\\d*+)?([eE][+-]?\\d+)?))")
+            .or(STRING.css, "('([^']|'')*')|(\"([^\"]|\"\")*\")")
+            .or(URI.css, "Q\\{[^{}]*}")
+            .or(IDENTIFIER.css, asWord("[\\w_$]+"))
+            .create();
+
+
+        XPath() {
+            super("xpath", GRAMMAR);
+        }
+    }
+
+
+    static final class Modelica extends SimpleRegexSyntaxHighlighter {
+
+        private static final String[] KEYWORDS = {
+            "import", "within", "encapsulated", "partial", "final",
+            "class", "model", "operator", "record", "block", "expandable",
+            "connector", "type", "package", "pure", "impure", "function",
+            "extends", "end", "enumeration", "public", "protected", "external",
+            "redeclare", "inner", "outer", "replaceable", "constrainedby",
+            "flow", "stream", "discrete", "parameter", "constant", "input",
+            "output", "der", "connect", "if", "each", "initial", "equation",
+            "algorithm", "annotation", "break", "return", "then", "elseif",
+            "else", "for", "loop", "in", "while", "when", "elsewhen", "or",
+            "and", "not", "true", "false",
+        };
+
+        private static final RegexHighlightGrammar GRAMMAR
+            = grammarBuilder(SINGLEL_COMMENT.css, "//[^\n]*")
+            .or(MULTIL_COMMENT.css, "/\\*.*?\\*/")
+            .or(PAREN.css, "[()]")
+            .or(NUMBER.css, asWord("\\d[_\\d]*+(\\.\\d(_?\\d)*+)?[fdlFDL]?"))
+            .or(BRACE.css, "[{}]")
+            .or(BRACKET.css, "[\\[]]")
+            .or(SEMICOLON.css, ";")
+            .or(KEYWORD.css, alternation(KEYWORDS))
+            .or(STRING.css, "\"[^\"\\\\]*(\\\\.[^\"\\\\]*)*\"")
+            .or(BOOLEAN.css, asWord("true|false"))
+            .or(IDENTIFIER.css, asWord("[\\w_$]+"))
+            .create(Pattern.DOTALL);
+
+
+        Modelica() {
+            super("modelica", GRAMMAR);
+        }
+    }
+}
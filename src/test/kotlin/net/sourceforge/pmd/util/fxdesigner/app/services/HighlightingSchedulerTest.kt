@@ -0,0 +1,70 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import net.sourceforge.pmd.util.fxdesigner.app.services.HighlightingScheduler.Priority
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class HighlightingSchedulerTest : IntelliMarker, FunSpec({
+
+    /** Occupies the single worker of the scheduler until the latch is released. */
+    fun HighlightingScheduler.block(): CountDownLatch {
+        val started = CountDownLatch(1)
+        val latch = CountDownLatch(1)
+        newClient().submit {
+            started.countDown()
+            latch.await()
+        }
+        started.await(5, TimeUnit.SECONDS) shouldBe true
+        return latch
+    }
+
+    test("Pending requests of a client are coalesced") {
+        val scheduler = HighlightingScheduler(1) { it.run() }
+        val latch = scheduler.block()
+        val client = scheduler.newClient()
+
+        val first = client.submit { 1 }
+        val second = client.submit { 2 }
+        val third = client.submit { 3 }
+
+        first.isCancelled shouldBe true
+        second.isCancelled shouldBe true
+        scheduler.queueDepthProperty().value shouldBe 1
+
+        latch.countDown()
+        third.get(5, TimeUnit.SECONDS) shouldBe 3
+        scheduler.close()
+    }
+
+    test("Requests of the focused area are served first") {
+        val scheduler = HighlightingScheduler(1) { it.run() }
+        val latch = scheduler.block()
+        val order = Collections.synchronizedList(mutableListOf<String>())
+
+        val hidden = scheduler.newClient()
+        val visible = scheduler.newClient().apply { setPriority(Priority.VISIBLE) }
+        val focused = scheduler.newClient()
+
+        val futures = listOf(
+            hidden.submit { order.add("hidden") },
+            visible.submit { order.add("visible") },
+            focused.submit { order.add("focused") },
+        )
+        // eg the user clicked on it while it was pending
+        focused.setPriority(Priority.FOCUSED)
+
+        latch.countDown()
+        futures.forEach { it.get(5, TimeUnit.SECONDS) }
+        order shouldContainExactly listOf("focused", "visible", "hidden")
+        scheduler.close()
+    }
+})
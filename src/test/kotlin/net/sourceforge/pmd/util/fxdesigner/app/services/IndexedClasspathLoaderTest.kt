@@ -0,0 +1,69 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.app.services
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import java.io.File
+import java.nio.file.Files
+import java.util.jar.Attributes
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+import java.util.zip.ZipEntry
+
+class IndexedClasspathLoaderTest : IntelliMarker, FunSpec({
+
+    val dir = Files.createTempDirectory("indexed-loader").toFile().apply { deleteOnExit() }
+
+    fun jar(name: String, manifest: Manifest? = null, vararg entries: Pair<String, String>): File {
+        val file = File(dir, name).apply { deleteOnExit() }
+        JarOutputStream(file.outputStream(), manifest ?: Manifest()).use { out ->
+            for ((entry, content) in entries) {
+                out.putNextEntry(ZipEntry(entry))
+                out.write(content.toByteArray())
+                out.closeEntry()
+            }
+        }
+        return file
+    }
+
+    test("Resources of all the jars are returned in classpath order") {
+        val service = "META-INF/services/foo.Bar"
+        val first = jar("first.jar", null, service to "first")
+        val second = jar("second.jar", null, service to "second", "other.txt" to "other")
+
+        IndexedClasspathLoader(listOf(first, second), null).use { loader ->
+            val urls = loader.getResources(service).toList()
+            urls shouldHaveSize 2
+            urls.map { it.openStream().use { s -> String(s.readBytes()) } } shouldBe listOf("first", "second")
+
+            loader.getResourceAsStream(service)!!.use { String(it.readBytes()) } shouldBe "first"
+            loader.getResources("other.txt").toList() shouldHaveSize 1
+        }
+    }
+
+    test("Multi-release jars serve the entries of the running version") {
+        val manifest = Manifest().apply {
+            mainAttributes[Attributes.Name.MANIFEST_VERSION] = "1.0"
+            mainAttributes[Attributes.Name("Multi-Release")] = "true"
+        }
+        val mrJar = jar(
+            "mr.jar",
+            manifest,
+            "foo.txt" to "base",
+            "META-INF/versions/9/foo.txt" to "9",
+            "META-INF/versions/9999/foo.txt" to "future",
+        )
+        val runtime = System.getProperty("java.specification.version").removePrefix("1.").toInt()
+
+        IndexedClasspathLoader(listOf(mrJar), null).use { loader ->
+            val expected = if (runtime >= 9) "9" else "base"
+            loader.getResourceAsStream("foo.txt")!!.use { String(it.readBytes()) } shouldBe expected
+            loader.getResources("foo.txt").toList() shouldHaveSize 1
+        }
+    }
+})
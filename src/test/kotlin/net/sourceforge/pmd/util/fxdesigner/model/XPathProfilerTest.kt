@@ -0,0 +1,66 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.model
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSession
+import net.sourceforge.pmd.util.fxdesigner.util.AuxLanguageRegistry
+
+class XPathProfilerTest : IntelliMarker, FunSpec({
+
+    fun String.steps(): List<String> {
+        var start = 0
+        return XPathProfiler.cutPoints(this).map { substring(start, it).also { _ -> start = it } }
+    }
+
+    test("Path steps and predicates are split") {
+        "//ClassDeclaration[@Abstract = true()]//MethodDeclaration[@Name = 'foo']".steps() shouldBe listOf(
+            "//ClassDeclaration",
+            "[@Abstract = true()]",
+            "//MethodDeclaration",
+            "[@Name = 'foo']"
+        )
+    }
+
+    test("Nested paths and strings are not split") {
+        "//A[.//B/C][@Image = '/[']/D".steps() shouldBe listOf(
+            "//A",
+            "[.//B/C]",
+            "[@Image = '/[']",
+            "/D"
+        )
+    }
+
+    test("Unions are not split") {
+        "//A/B | //C".steps() shouldBe listOf("//A/B | //C")
+    }
+
+    test("Steps are profiled with their context and result counts") {
+        val session = ParseSession(AuxLanguageRegistry.findLanguageVersionByTerseName("java")!!, "", null)
+        val root = session.parse(
+            """
+            class Foo {
+                void a() { }
+                void b() { }
+                void c() { }
+            }
+            """.trimIndent()
+        )
+
+        val profile = XPathProfiler.profile(root, XPathVersion.DEFAULT, "//MethodDeclaration[@Name = 'b']", emptyMap(), emptyList(), 3)
+
+        profile.resultCount shouldBe 1
+        profile.runs shouldBe 3
+        profile.steps.map { Triple(it.text, it.contextSize, it.resultCount) } shouldBe listOf(
+            Triple("//MethodDeclaration", 1, 3),
+            Triple("[@Name = 'b']", 3, 1)
+        )
+        // read once per method, the timed evaluations are not counted
+        profile.attributeReads shouldBe mapOf("Name" to 3L)
+    }
+})
@@ -0,0 +1,88 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.beEmpty
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.should
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNot
+import io.kotest.matchers.shouldNotBe
+import net.sourceforge.pmd.lang.ast.Node
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSession
+import net.sourceforge.pmd.util.fxdesigner.util.AstDiff.EditKind
+
+class AstDiffTest : IntelliMarker, FunSpec({
+
+    val session = ParseSession(AuxLanguageRegistry.findLanguageVersionByTerseName("java")!!, "", null)
+
+    fun parse(code: String): Node = session.parse(code.trimIndent())
+
+    fun Node.methods(): List<Node> = descendants().toList().filter { it.xPathNodeName == "MethodDeclaration" }
+
+    val base = """
+        class Foo {
+            void a() { int x = 1; }
+            void b() { int y = 2; }
+        }
+    """
+
+    test("Identical trees have no edits") {
+        val old = parse(base)
+        val new = parse(base)
+
+        val diff = AstDiff.compute(old, new)
+
+        diff.edits should beEmpty()
+        diff.getNewNode(old) shouldBe new
+        old.descendants().toList().forEach { diff.getNewNode(it) shouldNotBe null }
+    }
+
+    test("Editing a method only changes that method and its ancestors") {
+        val old = parse(base)
+        val new = parse(base.replace("int x = 1;", "int x = 12;"))
+
+        val diff = AstDiff.compute(old, new)
+
+        diff.edits.map { it.kind }.distinct() shouldContainExactly listOf(EditKind.CHANGED)
+
+        val (oldA, oldB) = old.methods()
+        val (newA, newB) = new.methods()
+        diff.getNewNode(oldA) shouldBe newA
+        diff.getNewNode(oldB) shouldBe newB
+
+        val changed = diff.edits.map { it.oldNode!! }
+        changed.filter { it == oldB || AstTraversalUtil.isParent(oldB, it) } should beEmpty()
+        changed.filter { AstTraversalUtil.isParent(oldA, it) } shouldNot beEmpty()
+    }
+
+    test("Adding a method is a single insertion") {
+        val old = parse(base)
+        val new = parse(base.replace("void b()", "void c() { }\n    void b()"))
+
+        val diff = AstDiff.compute(old, new)
+
+        val structural = diff.edits.filter { it.kind != EditKind.CHANGED }
+        structural.map { it.kind } shouldContainExactly listOf(EditKind.INSERTED)
+        structural[0].newNode!!.xPathNodeName shouldBe "MethodDeclaration"
+
+        // the shifted method is still matched
+        diff.getNewNode(old.methods()[1]) shouldBe new.methods()[2]
+    }
+
+    test("Removing a method is a single removal") {
+        val old = parse(base)
+        val new = parse(base.replace("void a() { int x = 1; }", ""))
+
+        val diff = AstDiff.compute(old, new)
+
+        val structural = diff.edits.filter { it.kind != EditKind.CHANGED }
+        structural.map { it.kind } shouldContainExactly listOf(EditKind.REMOVED)
+        structural[0].oldNode shouldBe old.methods()[0]
+        diff.getNewNode(old.methods()[1]) shouldBe new.methods()[0]
+    }
+})
@@ -0,0 +1,60 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.ast.Node
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import net.sourceforge.pmd.util.fxdesigner.app.services.ParseSession
+import net.sourceforge.pmd.util.fxdesigner.model.XPathEvaluator
+
+class NodeKindIndexTest : IntelliMarker, FunSpec({
+
+    val session = ParseSession(AuxLanguageRegistry.findLanguageVersionByTerseName("java")!!, "", null)
+
+    val root: Node = session.parse("""
+        class Foo {
+            void a() { int x = 1; }
+            class Inner {
+                void b() { int y = 2; int z = 3; }
+            }
+            void c() { }
+        }
+    """.trimIndent())
+
+    test("Nodes are indexed by name in document order") {
+        val index = NodeKindIndex.build(root)
+
+        index.getNodes("MethodDeclaration").map { it.getAttributeValue("Name") } shouldContainExactly listOf("a", "b", "c")
+        index.getNodes("NoSuchNode") shouldBe emptyList()
+        index.nodeCount shouldBe root.descendantsOrSelf().count()
+        index.countsByName.values.sum() shouldBe index.nodeCount
+    }
+
+    test("Indexed evaluation returns the same nodes as a full walk") {
+        val index = NodeKindIndex.build(root)
+
+        listOf(
+            "//MethodDeclaration",
+            "//MethodDeclaration[@Name = 'b']",
+            "//MethodDeclaration | //VariableDeclarator",
+            "//VariableDeclarator | //MethodDeclaration/ancestor::ClassDeclaration",
+            "//ClassBody/MethodDeclaration[1]",
+            "//CompilationUnit",
+            "/CompilationUnit/ClassDeclaration",
+        ).forEach { query ->
+            val walked = XPathEvaluator.evaluateQuery(root, XPathVersion.DEFAULT, query, emptyMap(), emptyList(), null, null)
+            val indexed = XPathEvaluator.evaluateQuery(root, XPathVersion.DEFAULT, query, emptyMap(), emptyList(), null, index)
+
+            indexed shouldContainExactly walked
+        }
+    }
+})
+
+private fun Node.getAttributeValue(name: String): Any? =
+    xPathAttributesIterator.asSequence().first { it.name == name }.value
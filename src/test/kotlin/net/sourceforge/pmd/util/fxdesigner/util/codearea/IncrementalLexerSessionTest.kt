@@ -0,0 +1,116 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.ScalaSyntaxHighlighter
+import org.fxmisc.richtext.model.StyleSpans
+import kotlin.random.Random
+
+class IncrementalLexerSessionTest : IntelliMarker, FunSpec({
+
+    val highlighter = ScalaSyntaxHighlighter()
+
+    val source = """
+        package foo
+
+        /* a comment */
+        object Foo {
+          val x = s"interpolated ${'$'}{1 + 2} string"
+          def bar(y: Int): String = ""${'"'}
+            multiline
+          ""${'"'}
+          // line comment
+          val z = 'c'
+        }
+    """.trimIndent()
+
+    fun StyleSpans<Collection<String>>.flatten(): List<Pair<Set<String>, Int>> {
+        val result = mutableListOf<Pair<Set<String>, Int>>()
+        for (span in this) {
+            if (span.length == 0) continue
+            val style = span.style.toSet()
+            if (result.isNotEmpty() && result.last().first == style) {
+                result[result.size - 1] = style to result.last().second + span.length
+            } else {
+                result += style to span.length
+            }
+        }
+        return result
+    }
+
+    fun IncrementalLexerSession.shouldHighlightLikeFromScratch(text: String) {
+        computeHighlighting(text).flatten() shouldBe highlighter.computeHighlighting(text).flatten()
+    }
+
+    test("Edits are highlighted like the whole text") {
+        val session = IncrementalLexerSession(highlighter)
+        val edits = listOf(
+            source,
+            source.replace("bar", "barbaz"),
+            // opens a comment until the end of the first one
+            source.replace("package foo", "package foo /*"),
+            // closes the comment far from where it was opened
+            source.replace("package foo", "package foo /*").replace("val z", "*/ val z"),
+            source.replace("${'$'}{1 + 2}", "${'$'}{1 + {2}"),
+            source.replace("\"\"\"\n", "\"\n"),
+            source + "\nval end = 0",
+            "",
+            source,
+        )
+
+        for (text in edits) {
+            session.shouldHighlightLikeFromScratch(text)
+        }
+    }
+
+    test("Random edits are highlighted like the whole text") {
+        val random = Random(42)
+        val snippets = listOf("\n", " ", "val", "x", "\"", "\"\"\"", "s\"", "${'$'}{", "}", "{", "/*", "*/", "//", "'", "$")
+        val session = IncrementalLexerSession(highlighter)
+        var text = source
+
+        repeat(300) {
+            val pos = random.nextInt(text.length + 1)
+            text = if (random.nextBoolean() && text.isNotEmpty()) {
+                text.removeRange(pos.coerceAtMost(text.length - 1), (pos + random.nextInt(1, 5)).coerceAtMost(text.length))
+            } else {
+                text.substring(0, pos) + snippets.random(random) + text.substring(pos)
+            }
+            session.shouldHighlightLikeFromScratch(text)
+        }
+    }
+
+    test("An edit on a line only lexes a few lines") {
+        val big = (1..500).joinToString("\n") { "val x$it = foo($it) // comment $it" }
+        val session = IncrementalLexerSession(highlighter)
+        session.computeHighlighting(big)
+
+        val edited = big.replace("foo(250)", "foo(250 + 1)")
+        session.shouldHighlightLikeFromScratch(edited)
+        session.lastLexedLength shouldBeLessThan 200
+    }
+
+    test("Only the relexed range is reported as changed") {
+        val big = (1..500).joinToString("\n") { "val x$it = foo($it) // comment $it" }
+        val session = IncrementalLexerSession(highlighter)
+        val before = session.highlight(big).spans
+
+        val edited = big.replace("foo(250)", "foo(250 + 1)")
+        val highlighting = session.highlight(edited)
+        highlighting.previous shouldBeSameInstanceAs before
+        (highlighting.changeEnd - highlighting.changeStart) shouldBeLessThan 200
+
+        val delta = edited.length - big.length
+        highlighting.spans.subView(0, highlighting.changeStart).flatten() shouldBe
+            before.subView(0, highlighting.changeStart).flatten()
+        highlighting.spans.subView(highlighting.changeEnd, edited.length).flatten() shouldBe
+            before.subView(highlighting.changeEnd - delta, big.length).flatten()
+    }
+})
@@ -0,0 +1,133 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldContainAll
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.AvailableSyntaxHighlighters
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses
+import net.sourceforge.pmd.util.fxdesigner.util.codearea.syntaxhighlighting.HighlightClasses.*
+
+class LexerHighlightersTest : IntelliMarker, FunSpec({
+
+    fun SyntaxHighlighter.classesAt(text: String, token: String): Collection<String> {
+        val offset = text.indexOf(token)
+        check(offset >= 0) { "No $token in $text" }
+        var end = 0
+        for (span in computeHighlighting(text)) {
+            end += span.length
+            if (end > offset) return span.style
+        }
+        throw AssertionError("$token is not highlighted")
+    }
+
+    fun SyntaxHighlighter.shouldHighlight(text: String, vararg tokens: Pair<String, HighlightClasses>) {
+        val spans = computeHighlighting(text)
+        spans.length() shouldBe text.length
+        for ((token, type) in tokens) {
+            classesAt(text, token) shouldContainAll type.css + listOf(languageTerseName, "code")
+        }
+    }
+
+    test("Java tokens") {
+        AvailableSyntaxHighlighters.JAVA.shouldHighlight(
+            """
+                @Override // comment
+                public String foo(int i) { /* block */ return "str" + 'c' + 0x1F + null + true; }
+                String block = ""${'"'}
+                    text block
+                ""${'"'};
+            """.trimIndent(),
+            "@Override" to ANNOTATION,
+            "// comment" to SINGLEL_COMMENT,
+            "public" to KEYWORD,
+            "String" to CLASS_IDENTIFIER,
+            "foo" to IDENTIFIER,
+            "/* block */" to MULTIL_COMMENT,
+            "\"str\"" to STRING,
+            "'c'" to CHAR,
+            "0x1F" to NUMBER,
+            "null" to NULL,
+            "true" to BOOLEAN,
+            "text block" to STRING,
+        )
+    }
+
+    test("Apex keywords are case-insensitive") {
+        AvailableSyntaxHighlighters.APEX.shouldHighlight(
+            "@IsTest PUBLIC class Foo { String s = 'str'; } // c",
+            "@IsTest" to ANNOTATION,
+            "PUBLIC" to KEYWORD,
+            "class" to KEYWORD,
+            "Foo" to IDENTIFIER,
+            "'str'" to STRING,
+            "// c" to SINGLEL_COMMENT,
+        )
+    }
+
+    test("XML tokens") {
+        AvailableSyntaxHighlighters.XML.shouldHighlight(
+            """
+                <?xml version="1.0"?>
+                <!-- comment -->
+                <rule name="Foo"><![CDATA[ //a[@b] ]]></rule>
+            """.trimIndent(),
+            "<?xml" to XML_PROLOG,
+            "comment" to MULTIL_COMMENT,
+            "rule" to XML_TAG_NAME,
+            "name" to XML_ATTRIBUTE_NAME,
+            "\"Foo\"" to STRING,
+            "<![CDATA[" to XML_CDATA_TAG,
+            "//a" to XML_CDATA_CONTENT,
+            "</" to XML_LT_GT,
+        )
+    }
+
+    test("XPath tokens") {
+        AvailableSyntaxHighlighters.XPATH.shouldHighlight(
+            "//Foo[@Bar = 'x''y' and child::node() and starts-with(@Name, \"a\")] (: c :) [1.5]",
+            "//" to XPATH_PATH,
+            "Foo" to IDENTIFIER,
+            "@Bar" to XPATH_ATTRIBUTE,
+            "'x''y'" to STRING,
+            "and" to KEYWORD,
+            "child::" to XPATH_AXIS,
+            "node()" to XPATH_KIND_TEST,
+            "starts-with" to XPATH_FUNCTION,
+            "(: c :)" to MULTIL_COMMENT,
+            "1.5" to NUMBER,
+        )
+    }
+
+    test("Modelica tokens") {
+        AvailableSyntaxHighlighters.MODELICA.shouldHighlight(
+            "model Foo \"multi\nline\" Real x = 1.5; // c\nend Foo;",
+            "model" to KEYWORD,
+            "line" to STRING,
+            "Real" to IDENTIFIER,
+            "1.5" to NUMBER,
+            "// c" to SINGLEL_COMMENT,
+        )
+    }
+
+    test("Huge and unterminated tokens do not overflow the stack") {
+        val filler = "a b \\\" c\n".repeat(300_000)
+        val inputs = mapOf(
+            AvailableSyntaxHighlighters.JAVA to listOf("/* $filler", "/* $filler */", "\"\"\"$filler"),
+            AvailableSyntaxHighlighters.APEX to listOf("/* $filler"),
+            AvailableSyntaxHighlighters.XML to listOf("<!-- $filler", "<![CDATA[$filler", "<a b=\"$filler"),
+            AvailableSyntaxHighlighters.XPATH to listOf("(: $filler", "'$filler"),
+            AvailableSyntaxHighlighters.MODELICA to listOf("\"$filler", "/* $filler"),
+        )
+
+        for ((highlighter, texts) in inputs) {
+            for (text in texts) {
+                highlighter.computeHighlighting(text).length() shouldBe text.length
+            }
+        }
+    }
+})
@@ -0,0 +1,84 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util.fxdesigner.util.codearea
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import net.sourceforge.pmd.lang.test.ast.IntelliMarker
+import org.fxmisc.richtext.model.StyleSpans
+import org.fxmisc.richtext.model.StyleSpansBuilder
+import kotlin.random.Random
+
+class StyleSpansMergerTest : IntelliMarker, FunSpec({
+
+    fun spans(vararg spans: Pair<Collection<String>, Int>): StyleSpans<Collection<String>> =
+        StyleSpansBuilder<Collection<String>>().apply {
+            for ((style, length) in spans) add(style, length)
+        }.create()
+
+    /** Style of each character. */
+    fun StyleSpans<Collection<String>>.perChar(total: Int = length()): List<Set<String>> {
+        val result = mutableListOf<Set<String>>()
+        for (span in this) {
+            repeat(span.length) { result += span.style.toSet() }
+        }
+        while (result.size < total) result += emptySet<String>()
+        return result
+    }
+
+    test("Styles of overlapping spans are unioned") {
+        val merged = StyleSpansMerger().merge(
+            listOf(
+                spans(listOf("keyword") to 3, emptyList<String>() to 2, listOf("string") to 5),
+                spans(emptyList<String>() to 2, listOf("xpath-result", "depth-0") to 4),
+                spans(emptyList<String>() to 9, listOf("focus") to 1),
+            )
+        )
+
+        merged.length() shouldBe 10
+        merged.map { it.style.toSet() to it.length } shouldBe listOf(
+            setOf("keyword") to 2,
+            setOf("keyword", "xpath-result", "depth-0") to 1,
+            setOf("xpath-result", "depth-0") to 2,
+            setOf("string", "xpath-result", "depth-0") to 1,
+            setOf("string") to 3,
+            setOf("string", "focus") to 1,
+        )
+    }
+
+    test("Random layers are merged like the union of their styles") {
+        val random = Random(42)
+        val classes = listOf("a", "b", "c", "d")
+        val merger = StyleSpansMerger()
+
+        repeat(100) {
+            val layers = List(random.nextInt(1, 6)) {
+                spans(*Array(random.nextInt(1, 20)) {
+                    classes.filter { random.nextInt(4) == 0 } to random.nextInt(1, 6)
+                })
+            }
+            val length = layers.maxOf { it.length() }
+
+            val expected = layers.map { it.perChar(length) }
+                .reduce { acc, layer -> acc.zip(layer) { x, y -> x + y } }
+
+            val merged = merger.merge(layers)
+            merged.length() shouldBe length
+            merged.perChar() shouldBe expected
+        }
+    }
+
+    test("Equal styles are shared") {
+        val merger = StyleSpansMerger()
+        val layer = spans(listOf("a") to 1, listOf("b") to 1, listOf("a") to 1)
+
+        val first = merger.merge(listOf(layer)).toList()
+        val second = merger.merge(listOf(layer, layer)).toList()
+
+        first[0].style shouldBeSameInstanceAs first[2].style
+        second[0].style shouldBeSameInstanceAs first[0].style
+    }
+})